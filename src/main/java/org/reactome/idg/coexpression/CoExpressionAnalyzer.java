@@ -1,5 +1,6 @@
 package org.reactome.idg.coexpression;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,6 +14,7 @@ import org.apache.commons.math3.stat.inference.TestUtils;
 import org.apache.log4j.Logger;
 import org.junit.Test;
 import org.reactome.fi.util.FileUtility;
+import org.reactome.idg.util.DecompressingInputStream;
 import org.reactome.r3.util.ProcessRunner;
 
 /**
@@ -33,6 +35,8 @@ public class CoExpressionAnalyzer {
             analyzer.plotDistributions(Arrays.copyOfRange(args, 1, args.length));
         else if (args[0].equals("performKSTests"))
             analyzer.performKSTests(Arrays.copyOfRange(args, 1, args.length));
+        else if (args[0].equals("buildNeighborIndices"))
+            new CoExpressionLoader().buildNeighborIndices();
     }
     
     /**
@@ -45,7 +49,7 @@ public class CoExpressionAnalyzer {
                                 .stream()
                                 .map(arg -> new File(arg))
                                 .flatMap(dir -> Arrays.asList(dir.listFiles()).stream())
-                                .filter(file -> file.getName().endsWith("Spearman_Adj.csv"))
+                                .filter(file -> CoExpressionLoader.isCoExpressionFile(file.getName()))
                                 .collect(Collectors.toList());
         // For performance reason, we need to sample values first and then cache them
         Map<File, double[]> fileToValues = new HashMap<>();
@@ -87,7 +91,7 @@ public class CoExpressionAnalyzer {
         File[] files = sourceDir.listFiles();
         for (File file : files) {
             String fileName = file.getName();
-            if (!fileName.endsWith("_Spearman_Adj.csv"))
+            if (!CoExpressionLoader.isCoExpressionFile(fileName))
                 continue;
             logger.info("Processing file " + file.getAbsolutePath());
             File resultFile = new File(resultDir, fileName.split("\\.")[0] + ".pdf");
@@ -165,8 +169,7 @@ public class CoExpressionAnalyzer {
     private double[] sampleCoExpression(String fileName,
                                         int numberOfValues) throws IOException {
         //        logger.info("Loading values in " + fileName + "...");
-        FileUtility fu = new FileUtility();
-        fu.setInput(fileName);
+        BufferedReader fu = DecompressingInputStream.openReader(new File(fileName));
         String line = fu.readLine();
         String[] tokens = line.split(",");
         long totalNumber = (tokens.length - 1) * (tokens.length - 2) / 2;
@@ -1,5 +1,6 @@
 package org.reactome.idg.coexpression;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -7,19 +8,26 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.apache.commons.math3.special.Erf;
 import org.apache.log4j.Logger;
-import org.reactome.fi.util.FileUtility;
 import org.reactome.fi.util.InteractionUtilities;
 import org.reactome.idg.annotations.FeatureDesc;
 import org.reactome.idg.model.FeatureSource;
 import org.reactome.idg.model.FeatureType;
 import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.CodeHistogram;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.FixedPointCodec;
+import org.reactome.idg.util.QuantizedPairMatrix;
+import org.reactome.idg.util.TopKNeighborAccumulator;
 
 /**
  * This class is used to load coexpression data.
@@ -29,6 +37,8 @@ import org.reactome.idg.util.ApplicationConfig;
 public class CoExpressionLoader {
     private static final Logger logger = Logger.getLogger(CoExpressionLoader.class);
     private boolean needNegative = false;
+    // Cached sample sizes for coexpression files
+    private Map<String, Integer> feature2sampleSize;
     
     public CoExpressionLoader() {
     }
@@ -41,12 +51,22 @@ public class CoExpressionLoader {
         this.needNegative = needNegative;
     }
 
+    /**
+     * Check if a file is a coexpression file generated by the gather-app. The file may be compressed
+     * by gzip (.gz) or zstd (.zst).
+     * @param fileName
+     * @return
+     */
+    public static boolean isCoExpressionFile(String fileName) {
+        return DecompressingInputStream.getUncompressedName(fileName).endsWith("_Spearman_Adj.csv");
+    }
+
     private List<File> getGeneCoExpressionFiles(File dir,
                                                 Set<String> excluded) {
         return Arrays.asList(dir.listFiles())
                      .stream()
-                     .filter(file -> file.getName().endsWith("_Spearman_Adj.csv"))
-                     .filter(file -> !excluded.contains(file.getName()))
+                     .filter(file -> isCoExpressionFile(file.getName()))
+                     .filter(file -> !excluded.contains(DecompressingInputStream.getUncompressedName(file.getName())))
                      .collect(Collectors.toList());
     }
     
@@ -98,10 +118,15 @@ public class CoExpressionLoader {
      * @throws IOException
      */
     public double getCutoffValueForRatio(File file, double percentile) throws IOException {
+        QuantizedPairMatrix matrix = getQuantizedMatrix(file);
+        if (matrix != null) {
+            CodeHistogram histogram = matrix.getHistogram();
+            logger.info("All values have been loaded for " + file.getName() + ": " + histogram.getTotal());
+            return histogram.getTopPercentileCutoff(percentile);
+        }
         // Try to load all values into a list
         List<Float> values = new ArrayList<>(); // Use Float to control memory usage.
-        FileUtility fu = new FileUtility();
-        fu.setInput(file.getAbsolutePath());
+        BufferedReader fu = DecompressingInputStream.openReader(file);
         String line = fu.readLine();
         int c = 1;
         while ((line = fu.readLine()) != null) {
@@ -144,6 +169,218 @@ public class CoExpressionLoader {
         return rels;
     }
     
+    /**
+     * Load coexpression pairs that are significant at the passed FDR. Spearman correlations are converted
+     * into p-values via the Fisher z-transform using the sample size of the file, and the Benjamini-Hochberg
+     * procedure is applied on a histogram of quantized correlations so that no sorting of all values is needed.
+     * @param file
+     * @param fdr
+     * @return
+     * @throws IOException
+     */
+    @FeatureDesc(sources = {FeatureSource.GTEx, FeatureSource.TCGA},
+                 type = FeatureType.Gene_Coexpression)
+    public Set<String> loadCoExpressionViaFDR(File file, Double fdr) throws IOException {
+        if (fdr == null)
+            throw new IllegalArgumentException("FDR should not be null!");
+        logger.info("Check " + file.getName() + "...");
+        int sampleSize = getSampleSize(file);
+        double cutoff = getCutoffValueForFDR(file, sampleSize, fdr);
+        logger.info("Found cutoff: " + cutoff + " (sample size: " + sampleSize + ")");
+        Set<String> rels = loadCoExpression(file, cutoff);
+        return rels;
+    }
+    
+    /**
+     * Load coexpression pairs based on mutual ranks. The mutual rank of two genes a and b is
+     * sqrt(rank of b in a's partners * rank of a in b's partners), where partners are ranked by absolute
+     * correlations. Only the top partners (coexpression.mutual.rank.top, default 1000) of each gene are
+     * kept during streaming, so that no full rank matrix is needed. A pair is selected if it is in both
+     * lists and its mutual rank is not larger than the cutoff. This is exact if cutoff^2 <= top since a pair
+     * out of either list must have a mutual rank larger than sqrt(top).
+     * @param file
+     * @param cutoff
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException if cutoff^2 > top so that the result would not be exact
+     */
+    @FeatureDesc(sources = {FeatureSource.GTEx, FeatureSource.TCGA},
+                 type = FeatureType.Gene_Coexpression)
+    public Set<String> loadCoExpressionViaMutualRank(File file, Double cutoff) throws IOException {
+        if (cutoff == null)
+            throw new IllegalArgumentException("Mutual rank cutoff should not be null!");
+        String top = ApplicationConfig.getConfig().getAppConfig("coexpression.mutual.rank.top");
+        if (top == null || top.length() == 0)
+            top = "1000";
+        int k = Integer.parseInt(top);
+        // Pairs would be dropped silently otherwise
+        if (cutoff * cutoff > k)
+            throw new IllegalArgumentException("coexpression.mutual.rank.top (" + k + ") should not be less than " +
+                                               "the square of the mutual rank cutoff (" + cutoff + ").");
+        logger.info("Check " + file.getName() + "...");
+        try (CoExpressionMatrixReader reader = new CoExpressionMatrixReader(file)) {
+            TopKNeighborAccumulator accumulator = new TopKNeighborAccumulator(reader.getGenes().size(), k);
+            reader.scan(accumulator::offerPair);
+            return loadCoExpressionViaMutualRank(reader.getGenes(), accumulator, cutoff);
+        }
+    }
+    
+    Set<String> loadCoExpressionViaMutualRank(List<String> genes,
+                                              TopKNeighborAccumulator accumulator,
+                                              double cutoff) {
+        int size = genes.size();
+        int k = accumulator.getK();
+        int[] partners = new int[k];
+        float[] values = new float[k];
+        // Sparse rank table: partners of gene i sorted by their indices in [i * k, i * k + counts[i])
+        // together with their ranks
+        int[] rankPartners = new int[size * k];
+        int[] ranks = new int[size * k];
+        int[] counts = new int[size];
+        long[] packed = new long[k];
+        for (int i = 0; i < size; i++) {
+            int count = accumulator.getNeighbors(i, partners, values);
+            for (int j = 0; j < count; j++)
+                packed[j] = ((long) partners[j] << 32) | (j + 1);
+            Arrays.sort(packed, 0, count);
+            for (int j = 0; j < count; j++) {
+                rankPartners[i * k + j] = (int) (packed[j] >>> 32);
+                ranks[i * k + j] = (int) packed[j];
+            }
+            counts[i] = count;
+        }
+        double maxProduct = cutoff * cutoff;
+        Set<String> rels = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            int count = accumulator.getNeighbors(i, partners, values);
+            for (int j = 0; j < count; j++) {
+                int partner = partners[j];
+                if (partner < i)
+                    continue; // Check each pair once
+                long rank1 = j + 1;
+                if (rank1 > maxProduct)
+                    break; // Cannot pass even if this gene is ranked first in partner's list
+                int index = Arrays.binarySearch(rankPartners, partner * k, partner * k + counts[partner], i);
+                if (index < 0)
+                    continue;
+                long rank2 = ranks[index];
+                if (rank1 * rank2 > maxProduct)
+                    continue;
+                String gene1 = genes.get(i);
+                String gene2 = genes.get(partner);
+                if (gene1.equals(gene2))
+                    continue;
+                String rel = InteractionUtilities.generateFIFromGene(gene1, gene2);
+                if (needNegative)
+                    rels.add(rel + "\t" + (values[j] > 0 ? "+" : "-"));
+                else
+                    rels.add(rel);
+            }
+        }
+        logger.info("Selected pairs via mutual ranks: " + rels.size());
+        return rels;
+    }
+    
+    /**
+     * Get the absolute coexpression threshold value so that all pairs having absolute values larger than
+     * the returned value are significant at the passed FDR based on the Benjamini-Hochberg procedure.
+     * Since p-values are monotonic to absolute correlations, each bin in the histogram of correlation codes
+     * is a p-value bin. The p-value of a bin is calculated at its lower edge to be conservative.
+     * @param file
+     * @param sampleSize
+     * @param fdr
+     * @return 1.0 if no pair is significant.
+     * @throws IOException
+     */
+    public double getCutoffValueForFDR(File file, 
+                                       int sampleSize,
+                                       double fdr) throws IOException {
+        CodeHistogram histogram = getHistogram(file);
+        return getCutoffValueForFDR(histogram, sampleSize, fdr);
+    }
+    
+    double getCutoffValueForFDR(CodeHistogram histogram,
+                                int sampleSize,
+                                double fdr) {
+        FixedPointCodec codec = histogram.getCodec();
+        long total = histogram.getTotal();
+        long[] counts = histogram.getCounts();
+        double halfStep = codec.getMaximumError();
+        long rank = 0;
+        double cutoff = 1.0d;
+        // Step-up: find the largest rank passing the BH criterion
+        for (int index : codec.getIndicesByAbsoluteValue()) {
+            if (counts[index] == 0)
+                continue;
+            rank += counts[index];
+            double lowerEdge = Math.max(0.0d, Math.abs(codec.decodeIndex(index)) - halfStep);
+            double pvalue = getFisherZPValue(lowerEdge, sampleSize);
+            if (pvalue <= fdr * rank / total)
+                cutoff = lowerEdge;
+        }
+        return cutoff;
+    }
+    
+    /**
+     * Calculate the two-sided p-value of a Spearman correlation using the Fisher z-transform. The
+     * variance 1.06 / (n - 3) is used for Spearman correlations (Fieller et al., 1957).
+     * @param rho
+     * @param sampleSize
+     * @return
+     */
+    public static double getFisherZPValue(double rho, int sampleSize) {
+        if (sampleSize <= 3)
+            throw new IllegalArgumentException("Sample size should be larger than 3: " + sampleSize);
+        double abs = Math.min(Math.abs(rho), 1.0d);
+        if (abs == 1.0d)
+            return 0.0d;
+        double z = 0.5d * Math.log((1.0d + abs) / (1.0d - abs));
+        double stat = z * Math.sqrt((sampleSize - 3) / 1.06d);
+        return Erf.erfc(stat / Math.sqrt(2.0d));
+    }
+    
+    private CodeHistogram getHistogram(File file) throws IOException {
+        QuantizedPairMatrix matrix = getQuantizedMatrix(file);
+        if (matrix != null)
+            return matrix.getHistogram();
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(16);
+        CodeHistogram histogram = new CodeHistogram(codec);
+        try (CoExpressionMatrixReader reader = new CoExpressionMatrixReader(file)) {
+            reader.scan((row, col, value) -> histogram.add(codec.encode(value)));
+        }
+        logger.info("All values have been loaded for " + file.getName() + ": " + histogram.getTotal());
+        return histogram;
+    }
+    
+    /**
+     * Get the number of samples used to calculate the correlations in the passed file. The sample sizes
+     * are listed in a tab-delimited file configured by coexpression.sample.size.file: the feature name
+     * (i.e. the first part of the file name before "_", e.g. Adipose-Subcutaneous or TCGA-BRCA) and the
+     * sample size.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public int getSampleSize(File file) throws IOException {
+        if (feature2sampleSize == null) {
+            String fileName = ApplicationConfig.getConfig().getAppConfig("coexpression.sample.size.file");
+            if (fileName == null || fileName.length() == 0)
+                throw new IllegalStateException("coexpression.sample.size.file is not configured.");
+            Map<String, Integer> map = new HashMap<>();
+            try (Stream<String> lines = Files.lines(Paths.get(fileName))) {
+                lines.filter(line -> line.length() > 0 && !line.startsWith("#"))
+                     .map(line -> line.split("\t"))
+                     .forEach(tokens -> map.put(tokens[0], new Integer(tokens[1])));
+            }
+            feature2sampleSize = map;
+        }
+        String feature = file.getName().split("_")[0];
+        Integer size = feature2sampleSize.get(feature);
+        if (size == null)
+            throw new IllegalStateException("Cannot find the sample size for " + feature);
+        return size;
+    }
+    
     /**
      * Some of the code below was copied from org.reactome.idg.pairwise.main.GTExDataProcessor.java.
      * @param file
@@ -151,8 +388,10 @@ public class CoExpressionLoader {
      * @throws IOException
      */
     public Set<String> loadCoExpression(File file, double cutoff) throws IOException {
-        FileUtility fu = new FileUtility();
-        fu.setInput(file.getAbsolutePath());
+        QuantizedPairMatrix matrix = getQuantizedMatrix(file);
+        if (matrix != null)
+            return matrix.loadPairs(cutoff, needNegative);
+        BufferedReader fu = DecompressingInputStream.openReader(file);
         String line = fu.readLine();
         Set<String> rels = new HashSet<>();
         String[] genes = line.split(",");
@@ -186,4 +425,101 @@ public class CoExpressionLoader {
         return rels;
     }
     
+    /**
+     * Get the quantized binary cache for a coexpression file. The cache will be generated if it
+     * doesn't exist, is older than the file, or was generated for another gene list in the header
+     * of the file. If coexpression.cache.dir is not configured, null will be returned so that the 
+     * text file is used directly.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public QuantizedPairMatrix getQuantizedMatrix(File file) throws IOException {
+        String dirName = ApplicationConfig.getConfig().getAppConfig("coexpression.cache.dir");
+        if (dirName == null || dirName.length() == 0)
+            return null;
+        String bits = ApplicationConfig.getConfig().getAppConfig("coexpression.cache.bits");
+        if (bits == null || bits.length() == 0)
+            bits = "16";
+        File dir = new File(dirName);
+        if (!dir.exists())
+            dir.mkdirs();
+        File cacheFile = new File(dir, file.getName() + ".q" + bits);
+        if (cacheFile.lastModified() >= file.lastModified()) {
+            long universe = 0L;
+            try (CoExpressionMatrixReader reader = new CoExpressionMatrixReader(file)) {
+                universe = QuantizedPairMatrix.hashGenes(reader.getGenes());
+            }
+            QuantizedPairMatrix matrix = QuantizedPairMatrix.openCache(cacheFile, universe);
+            if (matrix != null)
+                return matrix;
+        }
+        logger.info("Generating quantized cache for " + file.getName() + "...");
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(Integer.parseInt(bits));
+        quantize(file, cacheFile, codec);
+        logger.info("Saved into " + cacheFile.getAbsolutePath() + 
+                    " (maximum error: " + codec.getMaximumError() + ")");
+        return QuantizedPairMatrix.open(cacheFile);
+    }
+    
+    /**
+     * Get the top-k neighbor index for a coexpression file. The index will be built if it doesn't exist,
+     * is older than the file, or cannot be opened. If coexpression.neighbor.index.dir is not configured, null will be returned.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public CoExpressionNeighborIndex getNeighborIndex(File file) throws IOException {
+        String dirName = ApplicationConfig.getConfig().getAppConfig("coexpression.neighbor.index.dir");
+        if (dirName == null || dirName.length() == 0)
+            return null;
+        String k = ApplicationConfig.getConfig().getAppConfig("coexpression.neighbor.k");
+        if (k == null || k.length() == 0)
+            k = "100";
+        File dir = new File(dirName);
+        if (!dir.exists())
+            dir.mkdirs();
+        File indexFile = new File(dir, file.getName() + ".top" + k);
+        if (indexFile.exists() && indexFile.lastModified() >= file.lastModified()) {
+            try {
+                return CoExpressionNeighborIndex.open(indexFile);
+            }
+            catch(IOException e) {
+                logger.warn("Rebuilding the neighbor index " + indexFile.getName() + ": " + e.getMessage());
+            }
+        }
+        CoExpressionNeighborIndex.build(file, Integer.parseInt(k), indexFile);
+        return CoExpressionNeighborIndex.open(indexFile);
+    }
+    
+    /**
+     * Build the neighbor indices for all GTEx and TCGA coexpression files so that they can be queried
+     * without touching the original files.
+     * @throws IOException
+     */
+    public void buildNeighborIndices() throws IOException {
+        List<File> files = new ArrayList<>();
+        files.addAll(getGTExCoExpressionFiles());
+        files.addAll(getTCGACoExpressionFiles());
+        for (File file : files) {
+            if (getNeighborIndex(file) == null) {
+                logger.error("coexpression.neighbor.index.dir is not configured.");
+                return;
+            }
+        }
+    }
+    
+    private void quantize(File file, 
+                          File cacheFile,
+                          FixedPointCodec codec) throws IOException {
+        try (CoExpressionMatrixReader reader = new CoExpressionMatrixReader(file);
+             QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(cacheFile,
+                                                                                reader.getGenes(),
+                                                                                codec,
+                                                                                QuantizedPairMatrix.hashGenes(reader.getGenes()))) {
+            reader.scan((row, col, value) -> writer.set(row, col, value));
+            writer.finish();
+        }
+    }
+    
 }
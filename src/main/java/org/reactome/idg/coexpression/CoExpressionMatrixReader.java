@@ -0,0 +1,83 @@
+package org.reactome.idg.coexpression;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.reactome.idg.util.DecompressingInputStream;
+
+/**
+ * This class is used to stream the top-right triangle values in a coexpression file generated by the
+ * gather-app (e.g. XXX_Spearman_Adj.csv). The first line lists genes with an empty first token and
+ * each following line starts with a gene and then its correlations with all genes. NA and TRUE values
+ * are skipped. The file may be compressed by gzip (.gz) or zstd (.zst).
+ * @author wug
+ *
+ */
+public class CoExpressionMatrixReader implements Closeable {
+    private final File file;
+    private final BufferedReader fu;
+    private final List<String> genes;
+
+    public static interface ValueVisitor {
+        /**
+         * @param row the index of the row gene in the gene list
+         * @param col the index of the column gene in the gene list (col > row)
+         * @param value
+         */
+        public void visit(int row, int col, double value) throws IOException;
+    }
+
+    public CoExpressionMatrixReader(File file) throws IOException {
+        this.file = file;
+        fu = DecompressingInputStream.openReader(file);
+        String line = fu.readLine();
+        String[] tokens = line.split(",");
+        // The first token will be empty
+        genes = Collections.unmodifiableList(Arrays.asList(tokens).subList(1, tokens.length));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<String> getGenes() {
+        return genes;
+    }
+
+    /**
+     * Visit all values in the top-right triangle. This method should be called once only.
+     * @param visitor
+     * @throws IllegalStateException if rows are not in the order of the genes in the header
+     * @throws IOException
+     */
+    public void scan(ValueVisitor visitor) throws IOException {
+        String line = null;
+        int c = 1;
+        while ((line = fu.readLine()) != null) {
+            String[] tokens = line.split(",");
+            // Rows are indexed by the header genes. Make sure they are in the same order.
+            if (c > genes.size() || !tokens[0].equals(genes.get(c - 1)))
+                throw new IllegalStateException("Row " + c + " in " + file.getName() + " is " + tokens[0] +
+                                                ", which doesn't match the header" +
+                                                (c > genes.size() ? "." : ": " + genes.get(c - 1)));
+            // We want to look at the top-right triangle values
+            for (int i = c + 1; i < tokens.length; i++) {
+                if (tokens[i].equals("NA") || tokens[i].equals("TRUE"))
+                    continue; // Just ignore NA
+                visitor.visit(c - 1, i - 1, Double.parseDouble(tokens[i]));
+            }
+            c ++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fu.close();
+    }
+
+}
@@ -0,0 +1,186 @@
+package org.reactome.idg.coexpression;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.AtomicFileOutputStream;
+import org.reactome.idg.util.FixedPointCodec;
+import org.reactome.idg.util.TopKNeighborAccumulator;
+
+/**
+ * This class is used to build and query an index of the top k co-expressed partners for each gene in one
+ * coexpression file (i.e. one tissue or one cancer type). The index is built in one pass over the file using
+ * bounded heaps for both the row and column genes. Each gene has a fixed-size record in the index file so that
+ * a query is a lookup in a memory-mapped buffer. Correlations are saved as 16-bit codes.
+ * The layout of the file: magic, k, number of genes, genes, and then a record for each gene: number of
+ * partners (short), partner indices (k ints) and correlation codes (k shorts).
+ * @author wug
+ *
+ */
+public class CoExpressionNeighborIndex {
+    private static final Logger logger = Logger.getLogger(CoExpressionNeighborIndex.class);
+    private static final int MAGIC = 0x434E4931; // CNI1
+    private static final FixedPointCodec CODEC = FixedPointCodec.forCorrelation(16);
+    private final int k;
+    private final List<String> genes;
+    private final Map<String, Integer> geneToIndex;
+    private final MappedByteBuffer records;
+
+    private CoExpressionNeighborIndex(int k,
+                                      List<String> genes,
+                                      MappedByteBuffer records) {
+        this.k = k;
+        this.genes = genes;
+        this.records = records;
+        geneToIndex = new HashMap<>();
+        for (int i = 0; i < genes.size(); i++)
+            geneToIndex.put(genes.get(i), i);
+    }
+
+    /**
+     * Build an index for a coexpression file.
+     * @param file a coexpression file
+     * @param k the number of partners to be kept for each gene
+     * @param indexFile
+     * @throws IOException
+     */
+    public static void build(File file,
+                             int k,
+                             File indexFile) throws IOException {
+        logger.info("Building the neighbor index for " + file.getName() + " (k = " + k + ")...");
+        long time1 = System.currentTimeMillis();
+        List<String> genes = null;
+        TopKNeighborAccumulator accumulator = null;
+        try (CoExpressionMatrixReader reader = new CoExpressionMatrixReader(file)) {
+            genes = reader.getGenes();
+            accumulator = new TopKNeighborAccumulator(genes.size(), k);
+            reader.scan(accumulator::offerPair);
+        }
+        try (AtomicFileOutputStream os = new AtomicFileOutputStream(indexFile)) {
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            dos.writeInt(k);
+            dos.writeInt(genes.size());
+            for (String gene : genes) {
+                byte[] bytes = gene.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            }
+            int[] partners = new int[k];
+            float[] values = new float[k];
+            for (int i = 0; i < genes.size(); i++) {
+                int count = accumulator.getNeighbors(i, partners, values);
+                dos.writeShort(count);
+                for (int j = 0; j < k; j++)
+                    dos.writeInt(j < count ? partners[j] : -1);
+                for (int j = 0; j < k; j++)
+                    dos.writeShort(j < count ? CODEC.encode(values[j]) : CODEC.getMissingCode());
+            }
+            dos.flush();
+            os.commit();
+        }
+        long time2 = System.currentTimeMillis();
+        logger.info("Saved into " + indexFile.getName() + ": " + (time2 - time1) / 1000.0d + " seconds.");
+    }
+
+    /**
+     * Read a count, which cannot be larger than the file length in a valid file.
+     */
+    private static int readCount(DataInputStream dis, long length) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > length)
+            throw new IOException("Invalid count in the index file: " + count);
+        return count;
+    }
+
+    /**
+     * Open an index file. The records are memory-mapped. The magic number, counts in the header and the file
+     * length are checked so that a truncated or corrupted file is reported by an IOException.
+     * @param indexFile
+     * @return
+     * @throws IOException
+     */
+    public static CoExpressionNeighborIndex open(File indexFile) throws IOException {
+        int k;
+        List<String> genes;
+        long offset;
+        long length = indexFile.length();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (length < 12 || dis.readInt() != MAGIC)
+                throw new IOException(indexFile.getName() + " is not a coexpression neighbor index file.");
+            k = dis.readInt();
+            // The number of partners is saved as a short
+            if (k <= 0 || k > Short.MAX_VALUE)
+                throw new IOException("Invalid k in " + indexFile.getName() + ": " + k);
+            int size = readCount(dis, length);
+            genes = new ArrayList<>(size);
+            offset = 12;
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[readCount(dis, length)];
+                dis.readFully(bytes);
+                genes.add(new String(bytes, StandardCharsets.UTF_8));
+                offset += 4 + bytes.length;
+            }
+        }
+        long expected = offset + (long) genes.size() * getRecordSize(k);
+        if (expected != length)
+            throw new IOException(indexFile.getName() + " should have " + expected + 
+                                  " bytes but has " + length + " bytes.");
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                   offset,
+                                                   (long) genes.size() * getRecordSize(k));
+            return new CoExpressionNeighborIndex(k, Collections.unmodifiableList(genes), records);
+        }
+    }
+
+    private static int getRecordSize(int k) {
+        return 2 + k * (Integer.BYTES + Short.BYTES);
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public List<String> getGenes() {
+        return genes;
+    }
+
+    /**
+     * Get the top co-expressed partners of a gene sorted by the absolute correlations.
+     * @param gene
+     * @return partner genes to their correlations. An empty map will be returned if the gene is not
+     * in the index.
+     */
+    public Map<String, Double> getNeighbors(String gene) {
+        Map<String, Double> rtn = new LinkedHashMap<>();
+        Integer index = geneToIndex.get(gene);
+        if (index == null)
+            return rtn;
+        int base = index * getRecordSize(k);
+        int count = records.getShort(base);
+        int codeBase = base + 2 + k * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            int partner = records.getInt(base + 2 + i * Integer.BYTES);
+            int code = records.getShort(codeBase + i * Short.BYTES);
+            rtn.put(genes.get(partner), CODEC.decode(code));
+        }
+        return rtn;
+    }
+
+}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -12,6 +13,11 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -35,6 +41,8 @@ import org.reactome.idg.util.ApplicationConfig;
  */
 public class FeatureFileGenerator {
     private static final Logger logger = Logger.getLogger(FeatureFileGenerator.class);
+    // The first one is the default
+    private static final List<String> COEXPRESSION_THRESHOLD_MODES = Arrays.asList("percentile", "fdr", "mutual.rank");
     // Control if some features should be generated according postive and negative
     private boolean needNegative = false;
     // Originally Harmonizome- is not added to features for ML. However, for the 
@@ -400,11 +408,54 @@ public class FeatureFileGenerator {
         return new Double(coexpPercentile);
     }
     
+    /**
+     * Get how coexpression pairs are selected: percentile (default), fdr or mutual.rank.
+     * @return
+     */
+    public String getCoExpressionThresholdMode() {
+        String mode = checkCoExpressionThresholdMode(ApplicationConfig.getConfig().getAppConfig("coexpression.threshold.mode"));
+        logger.info("Coexpression threshold mode: " + mode);
+        return mode;
+    }
+    
+    /**
+     * Only an empty value is treated as the default mode so that a typo is not ignored silently.
+     * @param mode
+     * @return
+     */
+    static String checkCoExpressionThresholdMode(String mode) {
+        if (mode == null || mode.trim().length() == 0)
+            return COEXPRESSION_THRESHOLD_MODES.get(0);
+        mode = mode.trim();
+        if (!COEXPRESSION_THRESHOLD_MODES.contains(mode))
+            throw new IllegalArgumentException("Unknown coexpression.threshold.mode: " + mode + 
+                                               ". It should be one of " + COEXPRESSION_THRESHOLD_MODES + ".");
+        return mode;
+    }
+    
+    public Double getCoExpressionFDR() {
+        String fdr = ApplicationConfig.getConfig().getAppConfig("coexpression.fdr");
+        if (fdr == null || fdr.length() == 0)
+            fdr = "0.01";
+        logger.info("Coexpression FDR: " + fdr);
+        return new Double(fdr);
+    }
+    
+    public Double getCoExpressionMutualRankCutoff() {
+        String cutoff = ApplicationConfig.getConfig().getAppConfig("coexpression.mutual.rank.cutoff");
+        if (cutoff == null || cutoff.length() == 0)
+            cutoff = "30";
+        logger.info("Coexpression mutual rank cutoff: " + cutoff);
+        return new Double(cutoff);
+    }
+    
     public void loadTCGACoExpressions(Map<String, Set<String>> feature2pairs) throws IOException {
         loadTCGACoExpressions(feature2pairs, null, null);
     }
 
-    @FeatureLoader(methods = {"org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaPercentile"},
+    @FeatureLoader(methods = {"org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaPercentile",
+                             "org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaFDR",
+                             "org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaMutualRank"},
                    source = FeatureSource.TCGA)
     private void loadTCGACoExpressions(Map<String, Set<String>> feature2pairs,
                                       Comparator<File> fileSorter,
@@ -429,7 +480,9 @@ public class FeatureFileGenerator {
         loadGTExCoExpressions(feature2pairs, null, null);
     }
     
-    @FeatureLoader(methods = {"org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaPercentile"},
+    @FeatureLoader(methods = {"org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaPercentile",
+                             "org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaFDR",
+                             "org.reactome.idg.coexpression.CoExpressionLoader.loadCoExpressionViaMutualRank"},
                    source = FeatureSource.GTEx)
     private void loadGTExCoExpressions(Map<String, Set<String>> feature2pairs,
                                       Comparator<File> fileSorter,
@@ -456,13 +509,22 @@ public class FeatureFileGenerator {
                                    String featureType,
                                    double percentile,
                                    Map<String, Set<String>> feature2pairs) throws IOException {
+        String mode = getCoExpressionThresholdMode();
+        Double fdr = mode.equals("fdr") ? getCoExpressionFDR() : null;
+        Double mutualRankCutoff = mode.equals("mutual.rank") ? getCoExpressionMutualRankCutoff() : null;
         for (File file : files) {
             logger.info("Loading " + file.getName() + "...");
             String feature = file.getName();
             feature = feature.split("_")[0];
             if (featureType != null)
                 feature = featureType + "-" + feature;
-            Set<String> pairs = loader.loadCoExpressionViaPercentile(file, percentile);
+            Set<String> pairs = null;
+            if (fdr != null)
+                pairs = loader.loadCoExpressionViaFDR(file, fdr);
+            else if (mutualRankCutoff != null)
+                pairs = loader.loadCoExpressionViaMutualRank(file, mutualRankCutoff);
+            else
+                pairs = loader.loadCoExpressionViaPercentile(file, percentile);
             feature2pairs.put(feature, pairs);
             logger.info("Done.");
         }
@@ -485,18 +547,18 @@ public class FeatureFileGenerator {
                 .stream()
                 .sorted(fileSorter)
                 .collect(Collectors.toList());
-        for (File file : files) {
-            logger.info("Loading " + file.getName() + "...");
-            Double percentile = file2percentile.get(file);
+        // Files are independent and loaded at the same time. Results are added in the sorted order.
+        Map<File, Set<String>> file2pairs = harmonizomeHandler.loadPairwisesFromDownloads(files,
+                                                                                          file2percentile,
+                                                                                          harmonizomeHandler.getLoadingThreads(file2percentile));
+        for (File file : file2pairs.keySet()) {
             // Get the feature name from the file name
             String feature = file.getName();
             feature = feature.split("\\.")[0]; // We only need the first part as our feature name
-            Set<String> pairs = harmonizomeHandler.loadPairwisesFromDownload(file, percentile);
             // Make sure the feature name starting with Harmonizome to downstream analysis
             if (prefixHarmonizomeInFeature)
                 feature = "Harmonizome-" + feature;
-            feature2pairs.put(feature, pairs);
-            logger.info("Done.");
+            feature2pairs.put(feature, file2pairs.get(file));
         }
         logger.info("Harmonizome features loading is done.");
     }
@@ -526,26 +588,48 @@ public class FeatureFileGenerator {
     public void loadPPIFeatures(Map<String, Set<String>> feature2pairs) throws IOException {
         // PPI first
         MappedPPIDataHandler ppiHandler = new MappedPPIDataHandler();
-        logger.info("Loading HumanPPIs...");
-        Set<String> humanPPIs = ppiHandler.loadHumanPPIs();
-        feature2pairs.put("HumanPPI", humanPPIs);
-        logger.info("Done.");
-        logger.info("Loading MousePPIs...");
-        Set<String> mousePPIs = ppiHandler.loadMousePPIs();
-        feature2pairs.put("MousePPI", mousePPIs);
-        logger.info("Done.");
-        logger.info("Loading FlyPPIs...");
-        Set<String> flyPPIs = ppiHandler.loadFlyPPIs();
-        feature2pairs.put("FlyPPI", flyPPIs);
-        logger.info("Done.");
-        logger.info("Loading WormPPIs...");
-        Set<String> wormPPIs = ppiHandler.loadWormPPIs();
-        feature2pairs.put("WormPPI", wormPPIs);
-        logger.info("Done.");
-        logger.info("Loading YeastPPIs...");
-        Set<String> yeastPPIs = ppiHandler.loadYeastPPIs();
-        feature2pairs.put("YeastPPI", yeastPPIs);
-        logger.info("Done.");
+        // Species are independent and loaded at the same time. Results are added in the original order.
+        Map<String, Callable<Set<String>>> featureToLoader = new LinkedHashMap<>();
+        featureToLoader.put("HumanPPI", ppiHandler::loadHumanPPIs);
+        featureToLoader.put("MousePPI", ppiHandler::loadMousePPIs);
+        featureToLoader.put("FlyPPI", ppiHandler::loadFlyPPIs);
+        featureToLoader.put("WormPPI", ppiHandler::loadWormPPIs);
+        featureToLoader.put("YeastPPI", ppiHandler::loadYeastPPIs);
+        ExecutorService executor = Executors.newFixedThreadPool(featureToLoader.size());
+        Map<String, Future<Set<String>>> featureToFuture = new LinkedHashMap<>();
+        featureToLoader.forEach((feature, loader) -> {
+            featureToFuture.put(feature, executor.submit(() -> {
+                logger.info("Loading " + feature + "s...");
+                Set<String> pairs = loader.call();
+                logger.info("Done " + feature + "s.");
+                return pairs;
+            }));
+        });
+        executor.shutdown();
+        try {
+            for (String feature : featureToFuture.keySet()) {
+                try {
+                    feature2pairs.put(feature, featureToFuture.get(feature).get());
+                }
+                catch(ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new IOException(e.getCause());
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            // Extra StringDB channels have been collected in the scan for HumanPPI
+            ppiHandler.loadStringDBChannelPPIs().forEach((channel, pairs) -> {
+                feature2pairs.put("StringDB_" + channel, pairs);
+            });
+        }
+        finally {
+            executor.shutdownNow();
+            ppiHandler.shutdown();
+        }
     }
     
 }
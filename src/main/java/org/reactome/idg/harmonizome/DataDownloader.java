@@ -1,29 +1,32 @@
 package org.reactome.idg.harmonizome;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.Test;
 import org.reactome.idg.model.Provenance;
+import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.BlockArchive;
+import org.reactome.idg.util.BlockGzip;
 
 /**
  * This class is modified from the Python script provided by the Harmonizome project:
@@ -35,7 +38,11 @@ public class DataDownloader {
     private final Logger logger = LogManager.getLogger(DataDownloader.class);
     public final String SOURCE = "Harmonizome";
     public final String URL = "https://amp.pharm.mssm.edu/static/hdfs/harmonizome/data/%s/%s";
-    public final String SELECTED_DATA_TYPE = "gene_similarity_matrix_cosine.txt.gz";
+    public final String SELECTED_DATA_TYPE = getSelectedDataType();
+    public static final String ATTRIBUTE_MATRIX_TYPE = "gene_attribute_matrix.txt.gz";
+    // Archives generated by cleanupDir()
+    public static final String PROCESSED_ARCHIVE = "harmonizome_processed.rba";
+    public static final String FILTERED_ARCHIVE = "harmonizome_filtered.rba";
 
     public DataDownloader() {
     }
@@ -49,6 +56,11 @@ public class DataDownloader {
     public static void main(String[] args) throws Exception {
         if (args.length == 0) {
             System.err.println("Usage java org.reactome.harmonizome.DataDownloader dirName cleanupFolder{true|false}");
+            System.err.println("Or java org.reactome.harmonizome.DataDownloader recompress dirName");
+            return;
+        }
+        if (args[0].equals("recompress")) {
+            new DataDownloader().recompressDownloads(args[1]);
             return;
         }
         if (args.length == 1) {
@@ -63,55 +75,70 @@ public class DataDownloader {
     }
     
     /**
-     * All original download files ending with .tgz will be deleted. All processed
-     * files will be zipped and then deleted. 
+     * All processed files will be archived into BlockArchive files and then deleted. After that, all original 
+     * download files ending with .tgz will be deleted. HarmonizomePairwiseLoader reads the archived files
+     * when the original files are gone.
      * @param dir
      * @throws Exception
      */
-    private void cleanupDir(String dirName) throws Exception {
+    void cleanupDir(String dirName) throws Exception {
         logger.info("Cleaning up the download directory...");
         long time1 = System.currentTimeMillis();
         File dir = new File(dirName);
         File[] list = dir.listFiles();
         List<File> processedFiles = new ArrayList<>();
         List<File> filteredFiles = new ArrayList<>();
-        // Delete all downloaded tgz file
+        List<File> downloadFiles = new ArrayList<>();
         for (File file : list) {
             if (file.getName().endsWith("_processed.txt"))
                 processedFiles.add(file);
             else if (file.getName().endsWith("_filtered.txt")) 
                 filteredFiles.add(file);
             else if (file.getName().endsWith(".txt.tgz"))
-                file.delete();
+                downloadFiles.add(file);
         }
-        // Zip all processed files and then delete them.
-        File dest = new File(dirName, "harmonizome_processed.zip");
-        zipFiles(processedFiles, dest);
-        dest = new File(dirName, "harmonizome_filtered.zip");
-        zipFiles(filteredFiles, dest);
+        // Archive all processed files and then delete them.
+        File dest = new File(dirName, PROCESSED_ARCHIVE);
+        archiveFiles(processedFiles, dest);
+        dest = new File(dirName, FILTERED_ARCHIVE);
+        archiveFiles(filteredFiles, dest);
+        // Delete all downloaded tgz files only after their processed files have been archived
+        for (File file : downloadFiles)
+            file.delete();
         long time2 = System.currentTimeMillis();
         logger.info("Cleaning up is done: " + (time2 - time1) / (60.0d * 1000) + " minutes.");
     }
 
-    private void zipFiles(List<File> processedFiles, File dest) throws FileNotFoundException, IOException {
-        FileOutputStream fos = new FileOutputStream(dest);
-        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(fos));
-        int buffer = 100 * 1024;
-        byte[] data = new byte[buffer];
-        int read;
-        for (File file : processedFiles) {
-            FileInputStream fis = new FileInputStream(file);
-            BufferedInputStream bis = new BufferedInputStream(fis, buffer);
-            ZipEntry entry = new ZipEntry(file.getName());
-            zos.putNextEntry(entry);
-            while ((read = bis.read(data, 0, buffer)) > 0) {
-                zos.write(data, 0, read);
+    /**
+     * Archive files into a BlockArchive so that a dataset (or some rows of it) can be read without
+     * inflating the whole archive. Entries in an existing archive are kept unless they are replaced by
+     * the passed files. Archived files are deleted after the archive is saved.
+     */
+    private void archiveFiles(List<File> files, File dest) throws IOException {
+        if (files.size() == 0)
+            return;
+        files.sort((f1, f2) -> f1.getName().compareTo(f2.getName()));
+        Set<String> names = files.stream().map(File::getName).collect(Collectors.toSet());
+        BlockArchive existing = dest.exists() ? BlockArchive.open(dest) : null;
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(dest, Runtime.getRuntime().availableProcessors())) {
+            if (existing != null) {
+                for (String name : existing.getEntryNames()) {
+                    if (names.contains(name))
+                        continue;
+                    try (InputStream is = existing.openEntry(name)) {
+                        writer.addEntry(name, is);
+                    }
+                }
             }
-            bis.close();
-            fis.close();
-            file.delete();
+            for (File file : files)
+                writer.addEntry(file.getName(), file);
+        }
+        finally {
+            if (existing != null)
+                existing.close();
         }
-        zos.close();
+        for (File file : files)
+            file.delete();
     }
     
     /**
@@ -174,7 +201,12 @@ public class DataDownloader {
     
     /**
      * The method is used to perform downloading. Currently only gene_similarity_matrix_cosine.txt.gz
-     * files are downloaded. The downloaded files will be unzipped automatically.
+     * files are downloaded unless harmonizome.download.type is gene_attribute_matrix.txt.gz. The downloaded
+     * similarity files will be unzipped automatically, while attribute matrices are kept as they are to be
+     * loaded by GeneAttributeSimilarityCalculator. Files are downloaded by
+     * several threads (harmonizome.download.threads) and processed in this thread as soon as they are
+     * ready so that processing overlaps the following downloads. An interrupted download is resumed in
+     * a new run.
      * @param dirName the directory to hold all downloaded files.
      * @throws Exception
      */
@@ -186,8 +218,7 @@ public class DataDownloader {
         logger.info("Download directory: " + dirName);
         Map<String, String> datasetToPath = getDataSet2Path();
         List<String> datasets = loadReactomeIDGDatasets();
-        int c = 0;
-        DataProcessor processor = new DataProcessor();
+        Map<String, String> fileNameToUrl = new LinkedHashMap<>();
         for (String dataset : datasets) {
             String path = datasetToPath.get(dataset);
             if (path == null)
@@ -196,15 +227,82 @@ public class DataDownloader {
                 logger.info("Escape epigenomicsdnaaccessibility. Nothing is there!");
                 continue; 
             }
-            c ++;
-            String fileName = download(path, dirName);
-            process(new File(fileName), dirName, processor);
-            // download 2 for test. For production, we will parse these files directly
-            // into a database
-//            if (c == 2)
-//                break;
+            fileNameToUrl.put(path + ".txt.tgz", String.format(URL, path, SELECTED_DATA_TYPE));
+        }
+        DataProcessor processor = new DataProcessor();
+        ResumableDownloader downloader = createDownloader();
+        if (isAttributeMatrixType()) {
+            // The header of an attribute matrix lists attributes, not genes
+            downloader.downloadAll(fileNameToUrl, dir, (fileName, gzFile) -> {});
+            System.out.println("Total download: " + fileNameToUrl.size());
+            return;
         }
-        System.out.println("Total download: " + c); // We should get 66 data sets
+        downloader.setFilter((fileName, url) -> probeDataset(url, processor));
+        downloader.downloadAll(fileNameToUrl, dir, (fileName, gzFile) -> {
+            File txtFile = new File(dirName, fileName.substring(0, fileName.length() - ".tgz".length()));
+            unzipDownload(gzFile, txtFile);
+            process(txtFile, dirName, processor);
+        });
+        System.out.println("Total download: " + fileNameToUrl.size()); // We should get 66 data sets
+    }
+    
+    /**
+     * Check if a dataset has enough genes by decoding its header line from the first compressed bytes
+     * (harmonizome.probe.bytes, 0 to disable) so that a dataset to be rejected by DataProcessor is not
+     * downloaded at all.
+     * @param url
+     * @param processor
+     * @return false if the dataset doesn't have enough genes. True if it has or its header line cannot 
+     * be probed.
+     * @throws Exception
+     */
+    public boolean probeDataset(String url, DataProcessor processor) throws Exception {
+        int probeBytes = getProbeBytes();
+        if (probeBytes <= 0)
+            return true;
+        String header = createDownloader().readGzipFirstLine(url, probeBytes);
+        if (header == null) {
+            logger.info("Cannot probe the header line in the first " + probeBytes + " bytes: " + url);
+            return true;
+        }
+        if (processor.hasEnoughGenes(header))
+            return true;
+        logger.info("Not enough genes in the similarity file. Skip downloading: " + url);
+        return false;
+    }
+    
+    private int getProbeBytes() {
+        String probeBytes = ApplicationConfig.getConfig().getAppConfig("harmonizome.probe.bytes");
+        if (probeBytes == null || probeBytes.length() == 0)
+            return 1024 * 1024;
+        return Integer.parseInt(probeBytes);
+    }
+    
+    /**
+     * Get the type of files to be downloaded from harmonizome.download.type. The default is
+     * gene_similarity_matrix_cosine.txt.gz.
+     * @return
+     */
+    public static String getSelectedDataType() {
+        String type = ApplicationConfig.getConfig().getAppConfig("harmonizome.download.type");
+        if (type == null || type.length() == 0)
+            return "gene_similarity_matrix_cosine.txt.gz";
+        return type;
+    }
+    
+    public static boolean isAttributeMatrixType() {
+        return getSelectedDataType().equals(ATTRIBUTE_MATRIX_TYPE);
+    }
+    
+    private ResumableDownloader createDownloader() {
+        ResumableDownloader downloader = new ResumableDownloader();
+        String threads = ApplicationConfig.getConfig().getAppConfig("harmonizome.download.threads");
+        if (threads != null && threads.length() > 0)
+            downloader.setThreads(Integer.parseInt(threads));
+        String attempts = ApplicationConfig.getConfig().getAppConfig("harmonizome.download.attempts");
+        if (attempts != null && attempts.length() > 0)
+            downloader.setMaxAttempts(Integer.parseInt(attempts));
+        return downloader;
     }
     
     public String download(String path, 
@@ -212,28 +310,8 @@ public class DataDownloader {
         String url = String.format(URL, path, SELECTED_DATA_TYPE);
         logger.info("Starting download: " + url);
         long time1 = System.currentTimeMillis();
-        java.net.URL urlObj = new java.net.URL(url);
-        InputStream is = urlObj.openStream();
-        // Try to download the zipped file first
-        int size = 1000 * 1024;  // Assign 1000k for buffer
-        BufferedInputStream bis = new BufferedInputStream(is, size);
         File gzFile = new File(dirName + "/" + path + ".txt.tgz");
-        FileOutputStream fos = new FileOutputStream(gzFile);
-        BufferedOutputStream bos = new BufferedOutputStream(fos);
-        byte[] content = new byte[size];
-        int read = bis.read(content, 0, size);
-        while (read > 0) {
-            bos.write(content, 0, read);
-            read = bis.read(content, 0, size);
-        }
-        bos.close();
-        bis.close();
-        is.close();
-        
-//        if (true) {
-//            is.close();
-//            return;
-//        }
+        createDownloader().download(url, gzFile);
         String fileName = dirName + "/" + path + ".txt";
         unzipDownload(gzFile, new File(fileName));
         long time2 = System.currentTimeMillis();
@@ -241,23 +319,61 @@ public class DataDownloader {
         return fileName;
     }
     
+    /**
+     * Unzip a downloaded gzip file. The bytes are copied directly without decoding lines. A file in
+     * the BGZF format (see recompressDownload()) is inflated by all cores. Other gzip
+     * files, including multi-member ones, are inflated sequentially.
+     * @param gzFile
+     * @param outFile
+     * @throws IOException
+     */
     public void unzipDownload(File gzFile,
                               File outFile) throws IOException {
+        if (BlockGzip.isBlockGzip(gzFile)) {
+            BlockGzip.decompress(gzFile, outFile, BlockGzip.getDefaultThreads());
+            return;
+        }
         // Assign 1000K as the buffer to increase the performance
-        FileInputStream fis = new FileInputStream(gzFile);
-        GZIPInputStream zis = new GZIPInputStream(fis, 1000 * 1024);
-        // There should be only one entry in the file
-        Scanner scanner = new Scanner(zis);
-        PrintWriter pw = new PrintWriter(outFile);
-        String line = null;
-        while (scanner.hasNext()) {
-           line = scanner.nextLine();
-           pw.println(line);
+        try (InputStream zis = new GZIPInputStream(new FileInputStream(gzFile), 1000 * 1024);
+             BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(outFile), 1000 * 1024)) {
+            byte[] buffer = new byte[1000 * 1024];
+            int read = 0;
+            while ((read = zis.read(buffer)) > 0)
+                bos.write(buffer, 0, read);
+        }
+    }
+    
+    /**
+     * Recompress a downloaded gzip file into the BGZF format so that it can be decompressed on all
+     * cores afterwards. The original file is replaced.
+     * @param gzFile
+     * @throws IOException
+     */
+    public void recompressDownload(File gzFile) throws IOException {
+        if (BlockGzip.isBlockGzip(gzFile)) {
+            logger.info(gzFile.getName() + " has been recompressed.");
+            return;
+        }
+        logger.info("Recompressing " + gzFile.getName() + "...");
+        long time1 = System.currentTimeMillis();
+        File tmpFile = new File(gzFile.getAbsolutePath() + ".tmp");
+        BlockGzip.compress(gzFile, tmpFile, BlockGzip.getDefaultThreads());
+        Files.move(tmpFile.toPath(), gzFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        long time2 = System.currentTimeMillis();
+        logger.info("Total time for recompressing: " + (time2 - time1) / (60.0d * 1000) + " minutes.");
+    }
+    
+    /**
+     * Recompress all downloaded gzip files in a directory.
+     * @param dirName
+     * @throws IOException
+     */
+    public void recompressDownloads(String dirName) throws IOException {
+        File[] files = new File(dirName).listFiles();
+        for (File file : files) {
+            if (file.isFile() && BlockGzip.isGzip(file))
+                recompressDownload(file);
         }
-        pw.close();
-        scanner.close();
-        zis.close();
-        fis.close();
     }
     
     @Test
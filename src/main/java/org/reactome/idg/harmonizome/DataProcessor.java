@@ -1,13 +1,18 @@
 package org.reactome.idg.harmonizome;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -19,6 +24,7 @@ import org.gk.model.ReactomeJavaConstants;
 import org.gk.persistence.MySQLAdaptor;
 import org.reactome.fi.util.InteractionUtilities;
 import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.DelimitedLineScanner;
 
 /**
  * This class is used to process a download similarity data and generate a set of selected
@@ -29,16 +35,50 @@ import org.reactome.idg.util.ApplicationConfig;
 public class DataProcessor {
     private final static Logger logger = LogManager.getLogger(DataProcessor.class);
     public static final int FIRST_INDEX = 3;
+    // Default thresholds used by instances whose thresholds are not set
     public static double VALUE_THRESHOLD = 0.50d;
     public static int GENE_NUMBER_THRESHOLD = 12000; // Make sure a similarity file has more than 12,000 genes
 
     // Keep the target genes we want to investiage
     private Set<String> allGenes;
+    // Per-instance thresholds so that multiple files can be processed at the same time
+    private Double valueThreshold;
+    private Integer geneNumberThreshold;
     
     public DataProcessor() {
     }
+    
+    public double getValueThreshold() {
+        return valueThreshold == null ? VALUE_THRESHOLD : valueThreshold;
+    }
+
+    public void setValueThreshold(double valueThreshold) {
+        this.valueThreshold = valueThreshold;
+    }
+
+    public int getGeneNumberThreshold() {
+        return geneNumberThreshold == null ? GENE_NUMBER_THRESHOLD : geneNumberThreshold;
+    }
+
+    public void setGeneNumberThreshold(int geneNumberThreshold) {
+        this.geneNumberThreshold = geneNumberThreshold;
+    }
+   
+    /**
+     * Set the gene universe so that it is not loaded from the configuration (e.g. for tests).
+     * @param allGenes
+     */
+    public synchronized void setAllGenes(Set<String> allGenes) {
+        this.allGenes = allGenes;
+    }
    
-    public Set<String> getAllGenes() throws Exception {
+    /**
+     * This method is synchronized since it is called by download threads (via probeDataset()) and the
+     * processing thread at the same time.
+     * @return
+     * @throws Exception
+     */
+    public synchronized Set<String> getAllGenes() throws Exception {
         if (allGenes != null)
             return allGenes;
         // Need to load all human genes from a Reactome database
@@ -81,12 +121,15 @@ public class DataProcessor {
      * Process the download similarity file and generate two files: processed for
      * a smaller zipped file with decimal downed to .3f, filtered for a pair-wise
      * similarity file after thresholding. The src file will be checked. If the total
-     * number of genes in src is less than the GENE_NUMBER_THRESHOLD, the file will be not
+     * number of genes in src is less than the gene number threshold, the file will be not
      * processed. Also it is possible that a similarity file doesn't provide any score
      * higher (absolute value) than the threshold, then no file will be generated.
      * Note: Don't use Scanner, which is much slower than using FileReader and BufferedReader.
      * Also don't zip on the fly, which is also slower than a pure write. We should zip
      * all files after the processing.
+     * The indices of columns for genes we want are resolved from the header once so that
+     * no gene is looked up for a cell. Rows are scanned at the byte level and only cells
+     * in kept columns above the diagonal are decoded.
      * @param src
      * @param processed 
      * @param filterd
@@ -95,70 +138,87 @@ public class DataProcessor {
     public boolean processCorrelations(File src,
                                        File processed,
                                        File filtered) throws Exception {
-        FileReader fileReader = new FileReader(src);
-        BufferedReader br = new BufferedReader(fileReader);
-        String line = br.readLine();
-        int currentRow = 0;
-        String[] geneHeaders = line.split("\t");
+        DelimitedLineScanner scanner = new DelimitedLineScanner(new FileInputStream(src), '\t');
+        if (!scanner.nextLine()) {
+            scanner.close();
+            throw new IllegalStateException("Empty similarity file: " + src.getName());
+        }
+        List<String> headerList = new ArrayList<>();
+        while (scanner.nextField())
+            headerList.add(scanner.getField());
+        String[] geneHeaders = headerList.toArray(new String[0]);
         Set<String> allGenes = getAllGenes();
-        int totalGenes = getTotalGenes(geneHeaders, allGenes);
-        if (totalGenes < GENE_NUMBER_THRESHOLD) {
-            br.close();
+        double valueThreshold = getValueThreshold();
+        if (!hasEnoughGenes(geneHeaders, allGenes)) {
+            scanner.close();
             logger.info("Not enough genes in the similariy file: " + src.getName());
             return false; // We don't want this download
         }
+        int currentRow = 0;
         // Need to escape two more line
         for (int i = 1; i < FIRST_INDEX; i++) {
-            br.readLine();
+            scanner.nextLine();
             currentRow ++;
         }
         long time1 = System.currentTimeMillis();
-        PrintWriter processedWriter = new PrintWriter(processed);
+        // Cells are copied as bytes into the processed file, which is the same as PrintWriter for
+        // text in the default charset.
+        Charset charset = Charset.defaultCharset();
+        byte[] lineSeparator = System.lineSeparator().getBytes(charset);
+        OutputStream processedWriter = new BufferedOutputStream(new FileOutputStream(processed), 1024 * 1024);
         PrintWriter filteredWriter = new PrintWriter(filtered);
         StringBuilder builder = new StringBuilder();
-        // Generate the header
+        // Generate the header and resolve the columns we want
         builder.append("Gene");
+        int[] keptColumns = new int[geneHeaders.length];
+        int totalKept = 0;
         for (int i = FIRST_INDEX; i < geneHeaders.length; i++) {
             if (!allGenes.contains(geneHeaders[i]))
                 continue;
             builder.append("\t").append(geneHeaders[i]);
+            keptColumns[totalKept ++] = i;
         }
-        processedWriter.println(builder.toString());
+        processedWriter.write(builder.toString().getBytes(charset));
+        processedWriter.write(lineSeparator);
         builder.setLength(0);
-        String[] tokens = null;
         boolean hasValue = false;
         int currentPrintLine = 1;
-        while ((line = br.readLine()) != null) {
+        int firstKept = 0; // The first kept column above the diagonal
+        while (scanner.nextLine()) {
             currentRow ++;
-//            if (currentRow == 10000)
-//                break;
-            tokens = line.split("\t");
-            if (!allGenes.contains(tokens[0]))
+            while (firstKept < totalKept && keptColumns[firstKept] <= currentRow)
+                firstKept ++;
+            if (!scanner.nextField())
+                continue;
+            String gene = scanner.getField();
+            if (!allGenes.contains(gene))
                 continue;
-            builder.append(tokens[0]);
+            processedWriter.write(gene.getBytes(charset));
             // All empty cells
             for (int i = 0; i < currentPrintLine; i++)
-                builder.append("\t");
+                processedWriter.write('\t');
             // The matrix is square, therefore, we only need to handle the top-right half of the matrix
-            for (int i = currentRow + 1; i < tokens.length; i++) {
-                if (!allGenes.contains(geneHeaders[i]))
-                    continue;
-                Double value = new Double(tokens[i]);
-                if (Math.abs(value) >= VALUE_THRESHOLD) { // Make sure it is absolute
-                    String fi = generateFI(tokens[0], geneHeaders[i]);
-                    filteredWriter.println(fi + "\t" + (value > 0 ? "+" : "-"));
+            int column = 0;
+            for (int k = firstKept; k < totalKept; k++) {
+                int keptColumn = keptColumns[k];
+                if (scanner.skipFields(keptColumn - column - 1) < keptColumn - column - 1 || !scanner.nextField())
+                    break; // A short line
+                column = keptColumn;
+                if (scanner.isFieldAbsoluteValueAtLeast(valueThreshold)) { // Make sure it is absolute
+                    String fi = generateFI(gene, geneHeaders[keptColumn]);
+                    boolean positive = valueThreshold > 0.0d ? !scanner.isFieldNegative() : scanner.getFieldAsDouble() > 0;
+                    filteredWriter.println(fi + "\t" + (positive ? "+" : "-"));
                     hasValue = true;
                 }
-                builder.append("\t").append(tokens[i]);
+                processedWriter.write('\t');
                 // Don't bother to format. We should reduce the file size a lot.
                 // Format itself costs a lot of time!
-//                builder.append("\t").append(String.format("%.3f", value));
+                scanner.writeField(processedWriter);
             }
-            processedWriter.println(builder.toString());
-            builder.setLength(0);
+            processedWriter.write(lineSeparator);
             currentPrintLine ++;
         }
-        br.close();
+        scanner.close();
         filteredWriter.close();
         processedWriter.close();
         long time2 = System.currentTimeMillis();
@@ -177,6 +237,21 @@ public class DataProcessor {
         return InteractionUtilities.generateFIFromGene(gene1, gene2);
     }
 
+    /**
+     * Check if the header line of a similarity file has at least the threshold number of genes
+     * we want. This can be used to check a dataset before it is downloaded.
+     * @param headerLine
+     * @return
+     * @throws Exception
+     */
+    public boolean hasEnoughGenes(String headerLine) throws Exception {
+        return hasEnoughGenes(headerLine.split("\t"), getAllGenes());
+    }
+    
+    private boolean hasEnoughGenes(String[] geneHeaders, Set<String> allGenes) {
+        return getTotalGenes(geneHeaders, allGenes) >= getGeneNumberThreshold();
+    }
+
     private int getTotalGenes(String[] geneHeaders, Set<String> needed) {
         int count = 0;
         for (int i = FIRST_INDEX; i < geneHeaders.length; i++) {
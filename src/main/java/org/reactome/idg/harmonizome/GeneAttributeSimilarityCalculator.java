@@ -0,0 +1,375 @@
+package org.reactome.idg.harmonizome;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.BlockGzip;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.DelimitedLineScanner;
+import org.reactome.idg.util.PercentilePairSelector;
+import org.reactome.idg.util.TopKNeighborAccumulator;
+
+/**
+ * This class is used to calculate cosine similarities between genes from a Harmonizome gene_attribute_matrix
+ * file, which is much smaller than the gene_similarity_matrix_cosine file calculated from it. The attribute
+ * matrix is loaded in the CSR (compressed sparse row) format, rows are L2-normalized, and the top-right triangle
+ * of the product of the matrix and its transpose is calculated by blocks of rows in parallel. Only pairs that may
+ * pass the top percentile are kept by a PercentilePairSelector: pairs without any shared attribute are counted
+ * as zeros without being generated.
+ * @author wug
+ *
+ */
+public class GeneAttributeSimilarityCalculator {
+    private static final Logger logger = Logger.getLogger(GeneAttributeSimilarityCalculator.class);
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // Number of rows calculated by a task
+    private int blockSize = 256;
+
+    /**
+     * A sparse matrix in the CSR format. The values in row i are in values[rowStarts[i]] to
+     * values[rowStarts[i + 1] - 1] with their column indices in columns. Column indices in a
+     * row are in the ascending order.
+     */
+    public static class SparseMatrix {
+        private final List<String> rowNames;
+        private final int numberOfColumns;
+        private final int[] rowStarts;
+        private final int[] columns;
+        private final float[] values;
+
+        public SparseMatrix(List<String> rowNames,
+                            int numberOfColumns,
+                            int[] rowStarts,
+                            int[] columns,
+                            float[] values) {
+            this.rowNames = rowNames;
+            this.numberOfColumns = numberOfColumns;
+            this.rowStarts = rowStarts;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        public List<String> getRowNames() {
+            return rowNames;
+        }
+
+        public int getNumberOfRows() {
+            return rowStarts.length - 1;
+        }
+
+        public int getNumberOfColumns() {
+            return numberOfColumns;
+        }
+
+        public int getNumberOfValues() {
+            return rowStarts[rowStarts.length - 1];
+        }
+
+        public float[] getDenseRow(int row) {
+            float[] rtn = new float[numberOfColumns];
+            for (int k = rowStarts[row]; k < rowStarts[row + 1]; k++)
+                rtn[columns[k]] = values[k];
+            return rtn;
+        }
+
+        /**
+         * Scale each row to have L2 norm 1. A row having no non-zero value is not changed.
+         */
+        public void normalizeRows() {
+            for (int i = 0; i < getNumberOfRows(); i++) {
+                double sum = 0.0d;
+                for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++)
+                    sum += (double) values[k] * values[k];
+                if (sum == 0.0d)
+                    continue;
+                double norm = Math.sqrt(sum);
+                for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++)
+                    values[k] = (float) (values[k] / norm);
+            }
+        }
+
+        /**
+         * @return the transpose in the CSR format (i.e. this matrix in the CSC format). Column indices in
+         * each row of the transpose are in the ascending order.
+         */
+        public SparseMatrix transpose() {
+            int[] starts = new int[numberOfColumns + 1];
+            for (int k = 0; k < getNumberOfValues(); k++)
+                starts[columns[k] + 1] ++;
+            for (int i = 0; i < numberOfColumns; i++)
+                starts[i + 1] += starts[i];
+            int[] next = Arrays.copyOf(starts, numberOfColumns);
+            int[] tColumns = new int[getNumberOfValues()];
+            float[] tValues = new float[getNumberOfValues()];
+            for (int i = 0; i < getNumberOfRows(); i++) {
+                for (int k = rowStarts[i]; k < rowStarts[i + 1]; k++) {
+                    int index = next[columns[k]] ++;
+                    tColumns[index] = i;
+                    tValues[index] = values[k];
+                }
+            }
+            return new SparseMatrix(null, getNumberOfRows(), starts, tColumns, tValues);
+        }
+    }
+
+    // Non-zero products calculated for a block of rows
+    private static class Block {
+        private int[] rows;
+        private int[] cols;
+        private double[] values;
+        private int size;
+        private long zeros;
+
+        Block(int capacity) {
+            rows = new int[capacity];
+            cols = new int[capacity];
+            values = new double[capacity];
+        }
+
+        void add(int row, int col, double value) {
+            if (size == rows.length) {
+                int capacity = rows.length * 2;
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            values[size] = value;
+            size ++;
+        }
+    }
+
+    public GeneAttributeSimilarityCalculator() {
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Load a gene_attribute_matrix file (gzipped or not). As in the similarity matrix files, attributes
+     * start at DataProcessor.FIRST_INDEX in each line and the first token is the gene symbol. Lines whose
+     * genes are not in the gene universe (including metadata lines) are skipped. Empty cells, "na" and
+     * zeros are not stored.
+     * @param file
+     * @param allGenes
+     * @return
+     * @throws IOException
+     */
+    public SparseMatrix loadAttributeMatrix(File file, Set<String> allGenes) throws IOException {
+        logger.info("Loading " + file.getName() + "...");
+        List<String> genes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int[] rowStarts = new int[1024];
+        int[] columns = new int[1024 * 1024];
+        float[] values = new float[columns.length];
+        int size = 0;
+        int numberOfColumns = 0;
+        // Downloaded files are gzipped but named .txt.tgz
+        InputStream is = BlockGzip.isGzip(file) ? DecompressingInputStream.openGzip(file) : DecompressingInputStream.open(file);
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(is, '\t')) {
+            while (scanner.nextLine()) {
+                if (!scanner.nextField())
+                    continue;
+                String gene = scanner.getField();
+                if (!allGenes.contains(gene))
+                    continue;
+                if (!seen.add(gene)) {
+                    logger.warn("Duplicated gene in " + file.getName() + ": " + gene);
+                    continue;
+                }
+                scanner.skipFields(DataProcessor.FIRST_INDEX - 1);
+                for (int col = 0; scanner.nextField(); col++) {
+                    numberOfColumns = Math.max(numberOfColumns, col + 1);
+                    if (scanner.isFieldEmpty())
+                        continue;
+                    double value = 0.0d;
+                    try {
+                        value = scanner.getFieldAsDouble();
+                    }
+                    catch(NumberFormatException e) {
+                        if (scanner.getField().equalsIgnoreCase("na"))
+                            continue;
+                        throw e;
+                    }
+                    if (value == 0.0d || Double.isNaN(value))
+                        continue;
+                    if (size == columns.length) {
+                        columns = Arrays.copyOf(columns, size * 2);
+                        values = Arrays.copyOf(values, size * 2);
+                    }
+                    columns[size] = col;
+                    values[size] = (float) value;
+                    size ++;
+                }
+                genes.add(gene);
+                if (genes.size() == rowStarts.length)
+                    rowStarts = Arrays.copyOf(rowStarts, rowStarts.length * 2);
+                rowStarts[genes.size()] = size;
+            }
+        }
+        SparseMatrix matrix = new SparseMatrix(genes,
+                                               numberOfColumns,
+                                               Arrays.copyOf(rowStarts, genes.size() + 1),
+                                               Arrays.copyOf(columns, size),
+                                               Arrays.copyOf(values, size));
+        logger.info("Loaded " + genes.size() + " genes, " + numberOfColumns + " attributes and " + size + " values.");
+        return matrix;
+    }
+
+    /**
+     * Calculate cosine similarities for all pairs in the top-right triangle of the gene by gene matrix and
+     * feed them into a PercentilePairSelector. Row and column indices in the selector are row indices in the
+     * matrix. The passed matrix is normalized in place.
+     * @param matrix
+     * @param percentile
+     * @param maximumCutoff
+     * @return
+     * @throws Exception
+     */
+    public PercentilePairSelector calculateSimilarities(SparseMatrix matrix,
+                                                        double percentile,
+                                                        double maximumCutoff) throws Exception {
+        int size = matrix.getNumberOfRows();
+        long expectedTotal = (long) size * (size - 1) / 2;
+        PercentilePairSelector selector = new PercentilePairSelector(percentile, expectedTotal, maximumCutoff);
+        long zeros = calculateSimilarities(matrix, selector::add);
+        selector.addZeros(zeros);
+        return selector;
+    }
+    
+    /**
+     * Calculate cosine similarities as in calculateSimilarities() and keep the top k partners of each gene.
+     * Genes in the accumulator are row indices in the matrix. Genes without any shared attribute are never
+     * partners. The passed matrix is normalized in place.
+     * @param matrix
+     * @param k
+     * @return
+     * @throws Exception
+     */
+    public TopKNeighborAccumulator calculateNeighbors(SparseMatrix matrix, int k) throws Exception {
+        TopKNeighborAccumulator accumulator = new TopKNeighborAccumulator(matrix.getNumberOfRows(), k);
+        calculateSimilarities(matrix, accumulator::offerPair);
+        return accumulator;
+    }
+
+    /**
+     * Visit all non-zero similarities in the top-right triangle in the order of rows.
+     * @return the number of pairs having zero similarities, which are not visited
+     */
+    private long calculateSimilarities(SparseMatrix matrix,
+                                       PercentilePairSelector.PairVisitor visitor) throws Exception {
+        long time1 = System.currentTimeMillis();
+        matrix.normalizeRows();
+        SparseMatrix transpose = matrix.transpose();
+        int size = matrix.getNumberOfRows();
+        long zeros = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // Blocks are consumed in order. The number of blocks in flight is bounded to limit memory.
+            Deque<Future<Block>> futures = new ArrayDeque<>();
+            int nextRow = 0;
+            while (nextRow < size || futures.size() > 0) {
+                while (nextRow < size && futures.size() < threads * 2) {
+                    int start = nextRow;
+                    int end = Math.min(size, start + blockSize);
+                    futures.add(executor.submit(() -> multiply(matrix, transpose, start, end)));
+                    nextRow = end;
+                }
+                Block block = null;
+                try {
+                    block = futures.poll().get();
+                }
+                catch(ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                for (int i = 0; i < block.size; i++)
+                    visitor.visit(block.rows[i], block.cols[i], block.values[i]);
+                zeros += block.zeros;
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        long time2 = System.currentTimeMillis();
+        logger.info("Time for calculating similarities: " + (time2 - time1) / (60.0d * 1000) + " minutes.");
+        return zeros;
+    }
+
+    /**
+     * Calculate the products between rows in [start, end) and all rows after them. A dense accumulator
+     * is used for each row with a list of touched columns.
+     */
+    private Block multiply(SparseMatrix matrix,
+                           SparseMatrix transpose,
+                           int start,
+                           int end) {
+        int size = matrix.getNumberOfRows();
+        double[] accumulator = new double[size];
+        int[] touched = new int[size];
+        // The last row touching a column plus 1
+        int[] touchedBy = new int[size];
+        Block block = new Block(1024);
+        for (int i = start; i < end; i++) {
+            int totalTouched = 0;
+            for (int k = matrix.rowStarts[i]; k < matrix.rowStarts[i + 1]; k++) {
+                int attribute = matrix.columns[k];
+                double value = matrix.values[k];
+                int tStart = transpose.rowStarts[attribute];
+                int tEnd = transpose.rowStarts[attribute + 1];
+                // Rows having this attribute are sorted: only rows after i are needed
+                int from = Arrays.binarySearch(transpose.columns, tStart, tEnd, i + 1);
+                if (from < 0)
+                    from = -from - 1;
+                for (int t = from; t < tEnd; t++) {
+                    int j = transpose.columns[t];
+                    if (touchedBy[j] != i + 1) {
+                        touchedBy[j] = i + 1;
+                        touched[totalTouched ++] = j;
+                    }
+                    accumulator[j] += value * transpose.values[t];
+                }
+            }
+            Arrays.sort(touched, 0, totalTouched);
+            int nonZeros = 0;
+            for (int t = 0; t < totalTouched; t++) {
+                int j = touched[t];
+                double value = accumulator[j];
+                accumulator[j] = 0.0d;
+                if (value == 0.0d)
+                    continue; // Cancelled
+                block.add(i, j, value);
+                nonZeros ++;
+            }
+            block.zeros += (size - 1 - i) - nonZeros;
+        }
+        return block;
+    }
+
+}
@@ -2,6 +2,9 @@ package org.reactome.idg.harmonizome;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -10,12 +13,19 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.log4j.Logger;
 import org.reactome.fi.util.FileUtility;
@@ -24,6 +34,14 @@ import org.reactome.idg.annotations.FeatureDesc;
 import org.reactome.idg.model.FeatureSource;
 import org.reactome.idg.model.FeatureType;
 import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.BlockArchive;
+import org.reactome.idg.util.CodeHistogram;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.DelimitedLineScanner;
+import org.reactome.idg.util.FixedPointCodec;
+import org.reactome.idg.util.PercentilePairSelector;
+import org.reactome.idg.util.QuantizedPairMatrix;
+import org.reactome.idg.util.TopKNeighborAccumulator;
 
 /**
  * This class is used to load pre-processed pairwise relationships. The files are quite large and
@@ -35,10 +53,22 @@ public class HarmonizomePairwiseLoader {
     private final static Logger logger = Logger.getLogger(HarmonizomePairwiseLoader.class);
     private final String DIR = ApplicationConfig.getConfig().getAppConfig("harmonizome.filtered.dir");
     private boolean needNegative = false;
+    // The gene universe used to filter genes in downloaded files
+    private Set<String> allGenes;
     
     public HarmonizomePairwiseLoader() {
     }
     
+    public synchronized Set<String> getAllGenes() throws Exception {
+        if (allGenes == null)
+            allGenes = new DataProcessor().getAllGenes();
+        return allGenes;
+    }
+
+    public synchronized void setAllGenes(Set<String> allGenes) {
+        this.allGenes = allGenes;
+    }
+    
     public boolean isNeedNegative() {
         return needNegative;
     }
@@ -47,15 +77,34 @@ public class HarmonizomePairwiseLoader {
         this.needNegative = needNegative;
     }
 
-    public List<File> getPairwiseFiles() {
+    public List<File> getPairwiseFiles() throws IOException {
         return getPairwiseFiles(new File(DIR));
     }
     
-    public List<File> getPairwiseFiles(File dir) {
-        return getFiles(dir, "_filtered.txt");
+    /**
+     * Get filtered files in a directory. Files moved into the archive by DataDownloader.cleanupDir() are
+     * listed as files in the directory too, which can be loaded by loadPairwises(File).
+     * @param dir
+     * @return
+     * @throws IOException
+     */
+    public List<File> getPairwiseFiles(File dir) throws IOException {
+        return getFiles(dir, "_filtered.txt", DataDownloader.FILTERED_ARCHIVE);
     }
     
+    /**
+     * Load pairwise relationships from a filtered file. If the file has been moved into the archive by
+     * DataDownloader.cleanupDir(), the entry in the archive is loaded.
+     * @param file
+     * @return
+     * @throws IOException
+     */
     public Set<String> loadPairwises(File file) throws IOException {
+        if (!file.exists()) {
+            try (BlockArchive archive = openArchive(file, DataDownloader.FILTERED_ARCHIVE)) {
+                return loadPairwises(archive, file.getName());
+            }
+        }
         try (Stream<String> lines = Files.lines(Paths.get(file.getAbsolutePath()))) {
             return lines.map(line -> line.split("\t"))
                         .map(tokens -> tokens[0] + "\t" + tokens[1])
@@ -63,16 +112,45 @@ public class HarmonizomePairwiseLoader {
         }
     }
     
-    public List<File> getProcessedFiles() {
+    /**
+     * Load pairwise relationships from a filtered file saved as an entry in a BlockArchive generated
+     * by DataDownloader.cleanupDir(). Only the blocks of this entry are inflated.
+     * @param archive
+     * @param entry
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadPairwises(BlockArchive archive, String entry) throws IOException {
+        Set<String> rels = new HashSet<>();
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(archive.openEntry(entry), '\t')) {
+            while (scanner.nextLine()) {
+                if (!scanner.nextField())
+                    continue;
+                String gene1 = scanner.getField();
+                if (!scanner.nextField())
+                    continue;
+                rels.add(gene1 + "\t" + scanner.getField());
+            }
+        }
+        return rels;
+    }
+    
+    /**
+     * Get processed files. Files moved into the archive by DataDownloader.cleanupDir() are listed as files
+     * in the directory too, which can be loaded by loadPairwisesFromProcessed(File, double).
+     * @return
+     * @throws IOException
+     */
+    public List<File> getProcessedFiles() throws IOException {
         String dirName = ApplicationConfig.getConfig().getAppConfig("harmonizome.processed.dir");
         File file = new File(dirName);
-        return getFiles(file, "_processed.txt");
+        return getFiles(file, "_processed.txt", DataDownloader.PROCESSED_ARCHIVE);
     }
     
-    public List<File> getDownloadedFiles() {
+    public List<File> getDownloadedFiles() throws IOException {
         String dirName = ApplicationConfig.getConfig().getAppConfig("harmonizome.downloaded.dir");
         File dir = new File(dirName);
-        return getFiles(dir, ".txt.tgz");
+        return getFiles(dir, ".txt.tgz", null);
     }
     
     public Map<File, Double> getSelectedDownloadFiles() throws IOException {
@@ -89,11 +167,53 @@ public class HarmonizomePairwiseLoader {
         }
     }
     
-    private List<File> getFiles(File dir, String ext) {
-        return Arrays.asList(dir.listFiles())
+    private List<File> getFiles(File dir, String ext, String archiveName) throws IOException {
+        List<File> files = Arrays.asList(dir.listFiles())
                 .stream()
                 .filter(file -> file.getName().endsWith(ext))
                 .collect(Collectors.toList());
+        File archiveFile = archiveName == null ? null : new File(dir, archiveName);
+        if (archiveFile == null || !archiveFile.exists())
+            return files;
+        // Files in the archive are listed by their original paths
+        Set<File> fileSet = new HashSet<>(files);
+        try (BlockArchive archive = BlockArchive.open(archiveFile)) {
+            for (String name : archive.getEntryNames()) {
+                File file = new File(dir, name);
+                if (name.endsWith(ext) && !fileSet.contains(file))
+                    files.add(file);
+            }
+        }
+        return files;
+    }
+    
+    /**
+     * Open the archive generated by DataDownloader.cleanupDir() that holds a file as an entry.
+     * @param file the original path of the file before archiving
+     * @param archiveName
+     * @return
+     * @throws IOException if the file cannot be found in the archive
+     */
+    private BlockArchive openArchive(File file, String archiveName) throws IOException {
+        File archiveFile = new File(file.getAbsoluteFile().getParentFile(), archiveName);
+        if (archiveFile.exists()) {
+            BlockArchive archive = BlockArchive.open(archiveFile);
+            if (archive.hasEntry(file.getName()))
+                return archive;
+            archive.close();
+        }
+        throw new FileNotFoundException("Cannot find " + file.getName() + " as a file or in " + archiveFile.getAbsolutePath());
+    }
+    
+    /**
+     * Get the processed file generated by DataDownloader for a downloaded file, e.g. achilles_processed.txt for 
+     * achilles.txt.tgz, which may have been moved into the archive.
+     * @param download
+     * @return
+     */
+    private File getProcessedFile(File download) {
+        String name = download.getName().split("\\.")[0] + "_processed.txt";
+        return new File(download.getAbsoluteFile().getParentFile(), name);
     }
     
     /**
@@ -106,6 +226,28 @@ public class HarmonizomePairwiseLoader {
     @FeatureDesc(sources = {FeatureSource.Harmonizome},
                  type = FeatureType.Gene_Similarity)
     public Set<String> loadPairwisesFromDownload(File file, double percentile) throws Exception {
+        int k = getNeighborK();
+        if (k > 0)
+            return loadPairwisesViaNeighbors(file, k);
+        File cacheFile = getCacheFile(file);
+        if (cacheFile != null && cacheFile.lastModified() >= file.lastModified()) {
+            QuantizedPairMatrix matrix = QuantizedPairMatrix.openCache(cacheFile, getGeneUniverse());
+            if (matrix != null) {
+                logger.info("Loading from the quantized cache " + cacheFile.getName() + "...");
+                return loadPairwisesFromMatrix(matrix, percentile);
+            }
+        }
+        if (!file.exists() && !DataDownloader.isAttributeMatrixType()) {
+            // The download has been removed by DataDownloader.cleanupDir(). Its processed file has the same
+            // values for genes in the universe.
+            File processed = getProcessedFile(file);
+            logger.info(file.getName() + " doesn't exist. Loading " + processed.getName() + "...");
+            return loadPairwisesFromProcessedViaSelector(processed, percentile);
+        }
+        if (DataDownloader.isAttributeMatrixType())
+            return loadPairwisesFromAttributeMatrix(file, percentile);
+        if (isStreaming())
+            return loadPairwisesFromStream(file, percentile, cacheFile);
         File dir = file.getParentFile();
         logger.info("Handling " + file.getName() + "...");
         // Unzip the file first
@@ -117,15 +259,23 @@ public class HarmonizomePairwiseLoader {
         new DataDownloader().unzipDownload(file, unzipped);
         logger.info("Processing the file ...");
         DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(getAllGenes());
         // To avoid code duplication, we will generate two files: processed and filtered
         // and then delete them after the use
         // By resetting the following two values, we will process all files
-        DataProcessor.GENE_NUMBER_THRESHOLD = 0;
-        DataProcessor.VALUE_THRESHOLD = 0.0d;
+        processor.setGeneNumberThreshold(0);
+        processor.setValueThreshold(0.0d);
         File processed = new File(dir, fileName + ".processed");
         File filtered = new File(dir, fileName + ".filtered");
         processor.processCorrelations(unzipped, processed, filtered);
-        Set<String> rtn = loadPairwisesFromProcessed(processed, percentile);
+        Set<String> rtn = null;
+        if (cacheFile != null) {
+            logger.info("Generating the quantized cache " + cacheFile.getName() + "...");
+            quantizeProcessed(processed, cacheFile);
+            rtn = loadPairwisesFromMatrix(QuantizedPairMatrix.open(cacheFile), percentile);
+        }
+        else
+            rtn = loadPairwisesFromProcessed(processed, percentile);
         // Clean up all temporary files
         unzipped.delete();
         processed.delete();
@@ -133,6 +283,534 @@ public class HarmonizomePairwiseLoader {
         return rtn;
     }
     
+    /**
+     * Estimate the memory needed by loadPairwisesFromDownload() for a file in the path that is actually used.
+     * For streaming or via a quantized cache, the memory is dominated by the candidates kept in 
+     * PercentilePairSelector and the returned relationships, both of which are proportional to the number of 
+     * pairs in the percentile. Without streaming and caching, all values in the processed file are loaded 
+     * as boxed Floats and sorted, which is proportional to the number of all pairs. The number of kept genes 
+     * is counted from the header line only.
+     * @param file
+     * @param percentile
+     * @return estimated bytes
+     * @throws Exception
+     */
+    public long estimateMemory(File file, double percentile) throws Exception {
+        return estimateMemory(file, percentile, isStreaming() || getCacheFile(file) != null);
+    }
+    
+    /**
+     * @param file
+     * @param percentile
+     * @param isSelected true if pairs are selected by PercentilePairSelector or via a quantized cache
+     * @return
+     * @throws Exception
+     */
+    long estimateMemory(File file, double percentile, boolean isSelected) throws Exception {
+        Set<String> allGenes = getAllGenes();
+        long genes = 0;
+        if (!file.exists() && !DataDownloader.isAttributeMatrixType()) {
+            // Loaded from the processed file, whose header has kept genes only
+            isSelected = true;
+            try (DelimitedLineScanner scanner = new DelimitedLineScanner(openProcessed(getProcessedFile(file)), '\t')) {
+                scanner.nextLine();
+                scanner.nextField(); // Gene
+                while (scanner.nextField())
+                    genes ++;
+            }
+        }
+        else {
+            try (DelimitedLineScanner scanner = new DelimitedLineScanner(new GZIPInputStream(new FileInputStream(file)), '\t')) {
+                scanner.nextLine();
+                int column = 0;
+                while (scanner.nextField()) {
+                    if (column ++ >= DataProcessor.FIRST_INDEX && allGenes.contains(scanner.getField()))
+                        genes ++;
+                }
+            }
+        }
+        int k = getNeighborK();
+        long allPairs = genes * (genes - 1) / 2;
+        long pairs = k > 0 ? genes * k : (long) (allPairs * percentile);
+        // Buffers for decompression and lines, 2 * 16 bytes for each candidate and about 200 bytes for 
+        // each relationship in a HashSet
+        long rtn = 32L * 1024 * 1024 + pairs * (2 * 16 + 200);
+        if (k == 0 && !isSelected) {
+            // loadPairwisesFromProcessed(): 16 bytes for a boxed Float plus 8 bytes for its reference in
+            // the list and another 8 bytes in the array copied for sorting
+            rtn += allPairs * (16 + 8 + 8);
+        }
+        return rtn;
+    }
+    
+    /**
+     * Load downloaded files at the same time by the passed number of threads.
+     * @param files
+     * @param file2percentile
+     * @param threads
+     * @return file to loaded pairs in the order of the passed files regardless of which file is done first
+     * @throws Exception
+     */
+    public Map<File, Set<String>> loadPairwisesFromDownloads(List<File> files,
+                                                             Map<File, Double> file2percentile,
+                                                             int threads) throws Exception {
+        getAllGenes(); // Load it once before threading
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Set<String>>> futures = new ArrayList<>();
+        for (File file : files) {
+            Double percentile = file2percentile.get(file);
+            futures.add(executor.submit(() -> {
+                logger.info("Loading " + file.getName() + "...");
+                Set<String> pairs = loadPairwisesFromDownload(file, percentile);
+                logger.info("Done " + file.getName() + ".");
+                return pairs;
+            }));
+        }
+        executor.shutdown();
+        Map<File, Set<String>> file2pairs = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    file2pairs.put(files.get(i), futures.get(i).get());
+                }
+                catch(ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return file2pairs;
+    }
+    
+    /**
+     * Get the number of threads to load downloaded files at the same time. If harmonizome.loading.threads
+     * is not configured, the number is picked so that the estimated memory of the same number of the largest
+     * files fits into half of the available heap.
+     * @param file2percentile
+     * @return
+     * @throws Exception
+     */
+    public int getLoadingThreads(Map<File, Double> file2percentile) throws Exception {
+        String threads = ApplicationConfig.getConfig().getAppConfig("harmonizome.loading.threads");
+        if (threads != null && threads.length() > 0)
+            return Integer.parseInt(threads);
+        if (DataDownloader.isAttributeMatrixType())
+            return 1; // Similarities are calculated by all cores for each file
+        List<Long> estimates = new ArrayList<>();
+        for (File file : file2percentile.keySet())
+            estimates.add(estimateMemory(file, file2percentile.get(file)));
+        estimates.sort(Comparator.reverseOrder());
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long budget = available / 2;
+        int rtn = 0;
+        long total = 0;
+        for (Long estimate : estimates) {
+            total += estimate;
+            if (total > budget)
+                break;
+            rtn ++;
+        }
+        rtn = Math.min(rtn, runtime.availableProcessors());
+        rtn = Math.max(rtn, 1);
+        logger.info("Threads for loading Harmonizome files: " + rtn + " (largest estimate: " + 
+                    (estimates.size() == 0 ? 0 : estimates.get(0) / (1024 * 1024)) + " MB, budget: " + 
+                    budget / (1024 * 1024) + " MB)");
+        return rtn;
+    }
+    
+    private boolean isStreaming() {
+        String streaming = ApplicationConfig.getConfig().getAppConfig("harmonizome.streaming");
+        return streaming == null || streaming.length() == 0 || Boolean.parseBoolean(streaming);
+    }
+    
+    /**
+     * Load a set of pairwise relationships from a downloaded harmonizome file by reading the gzipped
+     * file once without writing any intermediate file. Columns and rows are filtered by the gene universe
+     * as in DataProcessor, and values are fed into a PercentilePairSelector so that the same pairs as in
+     * loadPairwisesFromProcessed() are selected. If the cache file is not null, the quantized cache is
+     * generated at the same time and then used to load pairs.
+     * @param file
+     * @param percentile
+     * @param cacheFile
+     * @return
+     * @throws Exception
+     */
+    public Set<String> loadPairwisesFromStream(File file, 
+                                               double percentile,
+                                               File cacheFile) throws Exception {
+        logger.info("Streaming " + file.getName() + "...");
+        long time1 = System.currentTimeMillis();
+        Set<String> allGenes = getAllGenes();
+        InputStream is = DecompressingInputStream.openGzip(file);
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(is, '\t')) {
+            scanner.nextLine();
+            // Map columns to the indices of kept genes
+            List<String> keptGenes = new ArrayList<>();
+            List<Integer> columnToKept = new ArrayList<>();
+            int column = 0;
+            while (scanner.nextField()) {
+                String gene = scanner.getField();
+                if (column >= DataProcessor.FIRST_INDEX && allGenes.contains(gene)) {
+                    columnToKept.add(keptGenes.size());
+                    keptGenes.add(gene);
+                }
+                else
+                    columnToKept.add(-1);
+                column ++;
+            }
+            int[] colToKept = columnToKept.stream().mapToInt(Integer::intValue).toArray();
+            logger.info("Total kept genes: " + keptGenes.size());
+            // Need to escape two more lines
+            for (int i = 1; i < DataProcessor.FIRST_INDEX; i++)
+                scanner.nextLine();
+            long expectedTotal = (long) keptGenes.size() * (keptGenes.size() - 1) / 2;
+            PercentilePairSelector selector = new PercentilePairSelector(percentile,
+                                                                         expectedTotal,
+                                                                         ApplicationConfig.getConfig().getMaximumCutoff());
+            List<String> rowGenes = new ArrayList<>();
+            // A null writer is skipped by try-with-resources
+            try (QuantizedPairMatrix.Writer writer = cacheFile == null ? null :
+                    new QuantizedPairMatrix.Writer(cacheFile,
+                                                   keptGenes,
+                                                   FixedPointCodec.forCorrelation(getCacheBits()),
+                                                   getGeneUniverse())) {
+                int currentRow = DataProcessor.FIRST_INDEX - 1;
+                while (scanner.nextLine()) {
+                    currentRow ++;
+                    scanner.nextField();
+                    String gene = scanner.getField();
+                    if (!allGenes.contains(gene))
+                        continue;
+                    int row = rowGenes.size();
+                    rowGenes.add(gene);
+                    // The matrix is square, therefore, we only need to handle the top-right half of the matrix
+                    scanner.skipFields(currentRow);
+                    for (int i = currentRow + 1; scanner.nextField(); i++) {
+                        if (i >= colToKept.length || colToKept[i] < 0 || scanner.isFieldEmpty())
+                            continue;
+                        double value = scanner.getFieldAsDouble();
+                        selector.add(row, colToKept[i], value);
+                        if (writer != null)
+                            writer.set(row, colToKept[i], value);
+                    }
+                }
+                if (writer != null)
+                    writer.finish();
+            }
+            long time2 = System.currentTimeMillis();
+            logger.info("Time for streaming: " + (time2 - time1) / (60.0d * 1000) + " minutes.");
+            if (cacheFile != null)
+                return loadPairwisesFromMatrix(QuantizedPairMatrix.open(cacheFile), percentile);
+            return selectPairs(selector, rowGenes, keptGenes);
+        }
+    }
+    
+    private int getNeighborK() {
+        String k = ApplicationConfig.getConfig().getAppConfig("harmonizome.knn");
+        if (k == null || k.length() == 0)
+            return 0;
+        return Integer.parseInt(k);
+    }
+    
+    /**
+     * Load a set of pairwise relationships from a downloaded harmonizome file by keeping the top k partners
+     * (by absolute values) of each gene, instead of the top percentile of all pairs, so that a few dense genes
+     * don't dominate. The returned set is the union of pairs between all genes and their partners. The file
+     * is scanned once and the memory usage is O(genes * k) regardless of the size of the matrix.
+     * @param file
+     * @param k
+     * @return
+     * @throws Exception
+     */
+    @FeatureDesc(sources = {FeatureSource.Harmonizome},
+                 type = FeatureType.Gene_Similarity)
+    public Set<String> loadPairwisesViaNeighbors(File file, int k) throws Exception {
+        if (DataDownloader.isAttributeMatrixType()) {
+            GeneAttributeSimilarityCalculator calculator = new GeneAttributeSimilarityCalculator();
+            GeneAttributeSimilarityCalculator.SparseMatrix matrix = calculator.loadAttributeMatrix(file, getAllGenes());
+            return selectNeighbors(calculator.calculateNeighbors(matrix, k), matrix.getRowNames());
+        }
+        logger.info("Streaming " + file.getName() + " for top " + k + " neighbors...");
+        long time1 = System.currentTimeMillis();
+        Set<String> allGenes = getAllGenes();
+        InputStream is = DecompressingInputStream.openGzip(file);
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(is, '\t')) {
+            scanner.nextLine();
+            // Map columns to the indices of kept genes, which are also used for rows
+            List<String> keptGenes = new ArrayList<>();
+            Map<String, Integer> geneToKept = new HashMap<>();
+            List<Integer> columnToKept = new ArrayList<>();
+            int column = 0;
+            while (scanner.nextField()) {
+                String gene = scanner.getField();
+                if (column >= DataProcessor.FIRST_INDEX && allGenes.contains(gene) && !geneToKept.containsKey(gene)) {
+                    columnToKept.add(keptGenes.size());
+                    geneToKept.put(gene, keptGenes.size());
+                    keptGenes.add(gene);
+                }
+                else
+                    columnToKept.add(-1);
+                column ++;
+            }
+            int[] colToKept = columnToKept.stream().mapToInt(Integer::intValue).toArray();
+            logger.info("Total kept genes: " + keptGenes.size());
+            for (int i = 1; i < DataProcessor.FIRST_INDEX; i++)
+                scanner.nextLine();
+            TopKNeighborAccumulator accumulator = new TopKNeighborAccumulator(keptGenes.size(), k);
+            int currentRow = DataProcessor.FIRST_INDEX - 1;
+            while (scanner.nextLine()) {
+                currentRow ++;
+                scanner.nextField();
+                Integer row = geneToKept.get(scanner.getField());
+                if (row == null)
+                    continue;
+                // The matrix is square, therefore, we only need to handle the top-right half of the matrix
+                scanner.skipFields(currentRow);
+                for (int i = currentRow + 1; scanner.nextField(); i++) {
+                    if (i >= colToKept.length || colToKept[i] < 0 || colToKept[i] == row || scanner.isFieldEmpty())
+                        continue;
+                    accumulator.offerPair(row, colToKept[i], scanner.getFieldAsDouble());
+                }
+            }
+            long time2 = System.currentTimeMillis();
+            logger.info("Time for streaming: " + (time2 - time1) / (60.0d * 1000) + " minutes.");
+            return selectNeighbors(accumulator, keptGenes);
+        }
+    }
+    
+    private Set<String> selectNeighbors(TopKNeighborAccumulator accumulator,
+                                        List<String> genes) {
+        int[] partners = new int[accumulator.getK()];
+        float[] values = new float[accumulator.getK()];
+        Set<String> rels = new HashSet<>();
+        for (int i = 0; i < accumulator.getSize(); i++) {
+            int count = accumulator.getNeighbors(i, partners, values);
+            for (int j = 0; j < count; j++) {
+                String rel = InteractionUtilities.generateFIFromGene(genes.get(i), genes.get(partners[j]));
+                if (rel == null)
+                    continue;
+                if (needNegative)
+                    rels.add(rel + "\t" + (values[j] > 0.0f ? "+" : "-"));
+                else
+                    rels.add(rel);
+            }
+        }
+        logger.info("Total collected relationships from top " + accumulator.getK() + " neighbors: " + rels.size());
+        return rels;
+    }
+    
+    private Set<String> selectPairs(PercentilePairSelector selector,
+                                    List<String> rowGenes,
+                                    List<String> colGenes) {
+        logger.info("Total values: " + selector.getTotal());
+        logger.info("Cutoff value: " + selector.getCutoff());
+        Set<String> rels = new HashSet<>();
+        selector.select((row, col, value) -> {
+            String rel = InteractionUtilities.generateFIFromGene(rowGenes.get(row), colGenes.get(col));
+            if (rel == null) 
+                return;
+            if (needNegative)
+                rels.add(rel + "\t" + (value > 0.0d ? "+" : "-"));
+            else
+                rels.add(rel);
+        });
+        logger.info("Total collected relationships: " + rels.size());
+        return rels;
+    }
+    
+    /**
+     * Load a set of pairwise relationships from a downloaded gene_attribute_matrix file by calculating the
+     * cosine similarities locally, which are the same as in the gene_similarity_matrix_cosine file.
+     * @param file
+     * @param percentile
+     * @return
+     * @throws Exception
+     */
+    @FeatureDesc(sources = {FeatureSource.Harmonizome},
+                 type = FeatureType.Gene_Similarity)
+    public Set<String> loadPairwisesFromAttributeMatrix(File file, double percentile) throws Exception {
+        GeneAttributeSimilarityCalculator calculator = new GeneAttributeSimilarityCalculator();
+        GeneAttributeSimilarityCalculator.SparseMatrix matrix = calculator.loadAttributeMatrix(file, getAllGenes());
+        PercentilePairSelector selector = calculator.calculateSimilarities(matrix,
+                                                                           percentile,
+                                                                           ApplicationConfig.getConfig().getMaximumCutoff());
+        return selectPairs(selector, matrix.getRowNames(), matrix.getRowNames());
+    }
+    
+    /**
+     * Get the quantized cache file for a downloaded file. If harmonizome.cache.dir is not configured,
+     * null will be returned.
+     * @param file
+     * @return
+     */
+    private File getCacheFile(File file) {
+        String dirName = ApplicationConfig.getConfig().getAppConfig("harmonizome.cache.dir");
+        if (dirName == null || dirName.length() == 0)
+            return null;
+        File dir = new File(dirName);
+        if (!dir.exists())
+            dir.mkdirs();
+        String fileName = file.getName();
+        int index = fileName.lastIndexOf(".");
+        if (index > 0)
+            fileName = fileName.substring(0, index);
+        return new File(dir, fileName + ".q" + getCacheBits());
+    }
+    
+    /**
+     * @return the hash of all genes used to filter Harmonizome matrices, which is saved in caches
+     * @throws Exception
+     */
+    private long getGeneUniverse() throws Exception {
+        return QuantizedPairMatrix.hashGenes(getAllGenes());
+    }
+    
+    private int getCacheBits() {
+        String bits = ApplicationConfig.getConfig().getAppConfig("harmonizome.cache.bits");
+        if (bits == null || bits.length() == 0)
+            return 16;
+        return Integer.parseInt(bits);
+    }
+    
+    /**
+     * Convert a processed file generated by DataProcessor into a quantized cache file.
+     * @param processed
+     * @param cacheFile
+     * @throws IOException
+     */
+    private void quantizeProcessed(File processed, File cacheFile) throws Exception {
+        long universe = getGeneUniverse();
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(getCacheBits());
+        try (BufferedReader reader = Files.newBufferedReader(processed.toPath())) {
+            String line = reader.readLine();
+            String[] genes = line.split("\t");
+            // The first token is "Gene"
+            List<String> geneList = Arrays.asList(genes).subList(1, genes.length);
+            try (QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(cacheFile, geneList, codec, universe)) {
+                int lineIndex = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineIndex ++;
+                    String[] tokens = line.split("\t");
+                    for (int i = lineIndex + 1; i < tokens.length; i++) {
+                        if (tokens[i].length() == 0)
+                            continue;
+                        writer.set(lineIndex - 1, i - 1, Double.parseDouble(tokens[i]));
+                    }
+                }
+                writer.finish();
+            }
+        }
+    }
+    
+    /**
+     * Load the pairwise relationships from the top percentile stored in a quantized matrix. The
+     * cutoff is picked from the histogram saved in the matrix file so that only one scan is needed.
+     * @param matrix
+     * @param percentile
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadPairwisesFromMatrix(QuantizedPairMatrix matrix, double percentile) throws IOException {
+        CodeHistogram histogram = matrix.getHistogram();
+        double cutoff = histogram.getTopPercentileCutoff(percentile);
+        logger.info("Total values: " + histogram.getTotal());
+        logger.info("Cutoff value: " + cutoff);
+        if (cutoff > ApplicationConfig.getConfig().getMaximumCutoff()) {
+            cutoff = ApplicationConfig.getConfig().getMaximumCutoff();
+            logger.info("Cutoff adjusted to: " + cutoff);
+        }
+        Set<String> rels = matrix.loadPairs(cutoff, needNegative);
+        logger.info("Total collected relationships: " + rels.size());
+        return rels;
+    }
+    
+    /**
+     * Load the pairwise relationships from the top percentile stored in a processed file saved as an entry
+     * in a BlockArchive generated by DataDownloader.cleanupDir(). The entry is read once and only blocks of
+     * this entry are inflated.
+     * @param archive
+     * @param entry
+     * @param percentile
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadPairwisesFromProcessed(BlockArchive archive,
+                                                  String entry,
+                                                  double percentile) throws IOException {
+        logger.info("Loading all values for " + entry + " in " + archive.getFile().getName() + "...");
+        return loadPairwisesFromProcessed(archive.openEntry(entry), percentile);
+    }
+    
+    /**
+     * Load the pairwise relationships from the top percentile stored in a processed file by reading it once
+     * via PercentilePairSelector. If the file has been moved into the archive by DataDownloader.cleanupDir(),
+     * only the blocks of its entry are inflated.
+     * @param file
+     * @param percentile
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadPairwisesFromProcessedViaSelector(File file, double percentile) throws IOException {
+        return loadPairwisesFromProcessed(openProcessed(file), percentile);
+    }
+    
+    /**
+     * Open a processed file, which may have been moved into the archive. The archive is closed together with
+     * the returned stream.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    private InputStream openProcessed(File file) throws IOException {
+        if (file.exists())
+            return new FileInputStream(file);
+        BlockArchive archive = openArchive(file, DataDownloader.PROCESSED_ARCHIVE);
+        return new FilterInputStream(archive.openEntry(file.getName())) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                }
+                finally {
+                    archive.close();
+                }
+            }
+        };
+    }
+    
+    private Set<String> loadPairwisesFromProcessed(InputStream is, double percentile) throws IOException {
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(is, '\t')) {
+            scanner.nextLine();
+            // The first token is "Gene"
+            scanner.nextField();
+            List<String> genes = new ArrayList<>();
+            while (scanner.nextField())
+                genes.add(scanner.getField());
+            long expectedTotal = (long) genes.size() * (genes.size() - 1) / 2;
+            PercentilePairSelector selector = new PercentilePairSelector(percentile,
+                                                                         expectedTotal,
+                                                                         ApplicationConfig.getConfig().getMaximumCutoff());
+            List<String> rowGenes = new ArrayList<>(genes.size());
+            int lineIndex = 0;
+            while (scanner.nextLine()) {
+                lineIndex ++;
+                if (!scanner.nextField())
+                    continue;
+                rowGenes.add(scanner.getField());
+                scanner.skipFields(lineIndex);
+                for (int i = lineIndex + 1; scanner.nextField(); i++) {
+                    if (scanner.isFieldEmpty())
+                        continue;
+                    selector.add(lineIndex - 1, i - 1, scanner.getFieldAsDouble());
+                }
+            }
+            return selectPairs(selector, rowGenes, genes);
+        }
+    }
+    
     /**
      * Load the pairwise relationships from the top percentile stored in a processed file.
      * @param file
@@ -141,6 +819,11 @@ public class HarmonizomePairwiseLoader {
      * @throws IOException
      */
     public Set<String> loadPairwisesFromProcessed(File file, double percentile) throws IOException {
+        if (!file.exists()) {
+            try (BlockArchive archive = openArchive(file, DataDownloader.PROCESSED_ARCHIVE)) {
+                return loadPairwisesFromProcessed(archive, file.getName(), percentile);
+            }
+        }
         logger.info("Loading all values for " + file.getName() + "...");
         // Need to find the threshold first
         List<Float> values = new ArrayList<>();
@@ -0,0 +1,378 @@
+package org.reactome.idg.harmonizome;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.reactome.idg.util.BlockGzip;
+
+/**
+ * This class is used to download large files via HTTP. A file is downloaded into a .part file first, which
+ * is resumed via a Range request after a dropped connection. A downloaded file is verified by its size
+ * reported by the server and, for a gzip file, the CRC32 and size saved in its trailer(s), and then renamed
+ * to the target file. Multiple files can be downloaded by a bounded number of threads while the downloaded
+ * files are handed off to the calling thread for processing, so that processing overlaps the next downloads.
+ * A file may be checked before its bulk transfer starts by a DownloadFilter, e.g. via its first line.
+ * @author wug
+ *
+ */
+public class ResumableDownloader {
+    private static final Logger logger = LogManager.getLogger(ResumableDownloader.class);
+    private int threads = 3;
+    private int maxAttempts = 5;
+    private long retryWait = 1000L; // in milliseconds
+    private int timeout = 60 * 1000;
+    private DownloadFilter filter;
+
+    /**
+     * Used to process a downloaded file.
+     */
+    public static interface DownloadHandler {
+        public void handle(String fileName, File file) throws Exception;
+    }
+
+    /**
+     * Used to check a file before its bulk transfer starts.
+     */
+    public static interface DownloadFilter {
+        public boolean accept(String fileName, String url) throws Exception;
+    }
+
+    /**
+     * Thrown if a downloaded file is corrupted. The .part file should be discarded.
+     */
+    private static class VerificationException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        VerificationException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    // Used to hand off a download
+    private static class Download {
+        private String fileName;
+        private File file;
+        private Exception error;
+    }
+
+    public ResumableDownloader() {
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getRetryWait() {
+        return retryWait;
+    }
+
+    public void setRetryWait(long retryWait) {
+        this.retryWait = retryWait;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public DownloadFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Set a filter to skip files before downloading. The filter is not applied to a file that
+     * exists already.
+     * @param filter
+     */
+    public void setFilter(DownloadFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Download a list of files with a bounded number of threads. Each downloaded file is passed to the
+     * handler in the calling thread as soon as it is ready. A file that exists already in the directory
+     * is not downloaded again. A failed download doesn't stop others, but an IOException listing all
+     * failed files is thrown at the end.
+     * @param fileNameToUrl target file names to their URLs
+     * @param dir
+     * @param handler
+     * @throws Exception
+     */
+    public void downloadAll(Map<String, String> fileNameToUrl,
+                            File dir,
+                            DownloadHandler handler) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Bounded so that downloads stop when processing lags behind
+        BlockingQueue<Download> downloads = new ArrayBlockingQueue<>(threads);
+        for (String fileName : fileNameToUrl.keySet()) {
+            String url = fileNameToUrl.get(fileName);
+            executor.submit(() -> {
+                Download download = new Download();
+                download.fileName = fileName;
+                try {
+                    File dest = new File(dir, fileName);
+                    if (filter == null || dest.exists() || filter.accept(fileName, url))
+                        download.file = download(url, dest);
+                }
+                catch(Exception e) {
+                    download.error = e;
+                }
+                downloads.put(download);
+                return null;
+            });
+        }
+        executor.shutdown();
+        List<String> failed = new ArrayList<>();
+        try {
+            for (int i = 0; i < fileNameToUrl.size(); i++) {
+                Download download = downloads.take();
+                if (download.error != null) {
+                    logger.error("Cannot download " + download.fileName + ": " + download.error.getMessage(), download.error);
+                    failed.add(download.fileName);
+                    continue;
+                }
+                if (download.file == null) {
+                    logger.info("Skipped " + download.fileName + ".");
+                    continue;
+                }
+                handler.handle(download.fileName, download.file);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        if (failed.size() > 0)
+            throw new IOException("Failed downloads: " + String.join(", ", failed));
+    }
+
+    /**
+     * Download a file. If the file exists, it will not be downloaded again.
+     * @param url
+     * @param dest
+     * @return
+     * @throws IOException
+     */
+    public File download(String url, File dest) throws IOException {
+        if (dest.exists()) {
+            logger.info(dest.getName() + " exists already.");
+            return dest;
+        }
+        File part = new File(dest.getAbsolutePath() + ".part");
+        IOException error = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                logger.info("Downloading " + url + (part.exists() ? " from byte " + part.length() : "") + "...");
+                long total = fetch(url, part);
+                verify(part, total);
+                Files.move(part.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                logger.info("Downloaded " + dest.getName() + ": " + dest.length() + " bytes.");
+                return dest;
+            }
+            catch(VerificationException e) {
+                // Start from zero in the next attempt
+                part.delete();
+                error = e;
+            }
+            catch(IOException e) {
+                error = e;
+            }
+            logger.warn("Attempt " + attempt + " failed for " + url + ": " + error.getMessage());
+            try {
+                Thread.sleep(retryWait * attempt);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading " + url, e);
+            }
+        }
+        throw new IOException("Cannot download " + url + " after " + maxAttempts + " attempts.", error);
+    }
+
+    /**
+     * Read the first line of a remote gzip file by fetching no more than the first maxBytes compressed
+     * bytes via a Range request.
+     * @param url
+     * @param maxBytes
+     * @return the first line or null if it cannot be decoded from the first maxBytes bytes.
+     * @throws IOException
+     */
+    public String readGzipFirstLine(String url, int maxBytes) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setRequestProperty("Range", "bytes=0-" + (maxBytes - 1));
+            int code = connection.getResponseCode();
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK)
+                throw new IOException("Unexpected HTTP response " + code + " for " + url);
+            // Limit the compressed bytes in case Range is not supported
+            InputStream is = new BoundedInputStream(connection.getInputStream(), maxBytes);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            try (InputStream zis = new GZIPInputStream(is, 64 * 1024)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read = 0;
+                while ((read = zis.read(buffer)) > 0) {
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            line.write(buffer, 0, i);
+                            return new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+                        }
+                    }
+                    line.write(buffer, 0, read);
+                }
+            }
+            catch(EOFException e) {
+                // The first line is longer than maxBytes compressed
+            }
+            return null;
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream is, long maxBytes) {
+            super(is);
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int value = super.read();
+            if (value >= 0)
+                remaining --;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0)
+                return -1;
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+    }
+
+    /**
+     * Fetch the bytes into the part file, resuming from its current length.
+     * @return the total size of the file reported by the server, or -1 if it is not known.
+     */
+    private long fetch(String url, File part) throws IOException {
+        long offset = part.exists() ? part.length() : 0L;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            if (offset > 0)
+                connection.setRequestProperty("Range", "bytes=" + offset + "-");
+            int code = connection.getResponseCode();
+            long total = -1L;
+            boolean append = false;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                total = getTotalFromContentRange(connection.getHeaderField("Content-Range"));
+                append = true;
+            }
+            else if (code == 416 && offset > 0) {
+                // The part file is complete already
+                return getTotalFromContentRange(connection.getHeaderField("Content-Range"));
+            }
+            else if (code == HttpURLConnection.HTTP_OK)
+                total = connection.getContentLengthLong(); // Range is not supported: start from zero
+            else
+                throw new IOException("Unexpected HTTP response " + code + " for " + url);
+            try (InputStream is = new BufferedInputStream(connection.getInputStream(), 1024 * 1024);
+                 OutputStream os = new BufferedOutputStream(new FileOutputStream(part, append), 1024 * 1024)) {
+                byte[] buffer = new byte[1024 * 1024];
+                int read = 0;
+                while ((read = is.read(buffer)) > 0)
+                    os.write(buffer, 0, read);
+            }
+            return total;
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Parse the total size in a Content-Range header like "bytes 100-199/200" or "bytes *&#47;200".
+     */
+    private long getTotalFromContentRange(String contentRange) {
+        if (contentRange == null)
+            return -1L;
+        int index = contentRange.lastIndexOf("/");
+        if (index < 0)
+            return -1L;
+        String total = contentRange.substring(index + 1).trim();
+        if (total.equals("*"))
+            return -1L;
+        return Long.parseLong(total);
+    }
+
+    private void verify(File part, long total) throws IOException {
+        if (total >= 0) {
+            if (part.length() < total)
+                throw new IOException("Incomplete download: " + part.length() + " < " + total);
+            if (part.length() > total)
+                throw new VerificationException("Wrong size: " + part.length() + " > " + total, null);
+        }
+        if (!BlockGzip.isGzip(part))
+            return;
+        // GZIPInputStream checks the CRC32 and size in the trailer of each member
+        try (InputStream is = new GZIPInputStream(new FileInputStream(part), 1024 * 1024)) {
+            byte[] buffer = new byte[1024 * 1024];
+            while (is.read(buffer) > 0)
+                ;
+        }
+        catch(IOException e) {
+            throw new VerificationException("Corrupted gzip file: " + e.getMessage(), e);
+        }
+    }
+
+}
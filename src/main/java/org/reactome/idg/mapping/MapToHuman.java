@@ -8,7 +8,6 @@ import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -22,8 +21,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reactome.idg.model.Protein;
 import org.reactome.idg.model.ProteinIdentifierType;
+import org.reactome.idg.model.ProteinIdInterner;
 import org.reactome.idg.model.ProteinProteinInteraction;
 import org.reactome.idg.util.Species;
+import org.reactome.idg.util.StringDBLinksScanner;
+import org.reactome.idg.util.StringDBUtil;
 
 public class MapToHuman
 {
@@ -43,7 +45,7 @@ public class MapToHuman
 		mapper.generateOtherSpeciesToHumanPPIs(Species.SCHPO);
 	}
 
-	private Set<ProteinProteinInteraction> getBindingPPIs(String stringDBActionsFile)
+	private Set<ProteinProteinInteraction> getBindingPPIs(String stringDBActionsFile, ProteinIdInterner interner)
 	{
 		Set<ProteinProteinInteraction> ppis = new HashSet<>();
 		String bindingPPIs = outputPath + this.stringDBSpeciesCode + "_binding_PPIs.tsv";
@@ -53,15 +55,20 @@ public class MapToHuman
 				.withFirstRecordAsHeader());
 			FileWriter writer = new FileWriter(bindingPPIs);)
 		{
-			List<CSVRecord> records = parser.getRecords();
-			for (CSVRecord record : records)
+			// Resolve columns once and stream records instead of loading the whole actions file
+			Map<String, Integer> headerMap = parser.getHeaderMap();
+			int modeIndex = headerMap.get("mode");
+			int itemAIndex = headerMap.get("item_id_a");
+			int itemBIndex = headerMap.get("item_id_b");
+			Map<String, Protein> idToProtein = new HashMap<>();
+			for (CSVRecord record : parser)
 			{
 				// Only extract records where mode==binding
-				if (record.get("mode").equals("binding"))
+				if (record.get(modeIndex).equals("binding"))
 				{
-					Protein protein1 = new Protein(record.get("item_id_a"), ProteinIdentifierType.STRINGDB);
-					Protein protein2 = new Protein(record.get("item_id_b"), ProteinIdentifierType.STRINGDB);
-					ProteinProteinInteraction ppi = new ProteinProteinInteraction(protein1, protein2);
+					Protein protein1 = StringDBUtil.getStringDBProtein(idToProtein, record.get(itemAIndex));
+					Protein protein2 = StringDBUtil.getStringDBProtein(idToProtein, record.get(itemBIndex));
+					ProteinProteinInteraction ppi = new ProteinProteinInteraction(protein1, protein2, interner);
 					ppis.add(ppi);
 					writer.write(ppi.toString()+"\n");
 				}
@@ -74,33 +81,33 @@ public class MapToHuman
 		return ppis;
 	}
 
-	private Set<ProteinProteinInteraction> getPPIsWithExperiments(String stringDBProteinLinksFile)
+	private Set<ProteinProteinInteraction> getPPIsWithExperiments(String stringDBProteinLinksFile, ProteinIdInterner interner)
 	{
 		Set<ProteinProteinInteraction> ppis = new HashSet<>();
 		String ppisWithExperimentsScoreFile = outputPath + this.stringDBSpeciesCode + "_PPIs_with_experiments.tsv";
 		// First we have to filter for interactions in protein.links.full where experiment > 0
-		try (FileReader reader = new FileReader(stringDBProteinLinksFile);
-				CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT
-										.withDelimiter(' ')
-										.withFirstRecordAsHeader());
+		// Only protein1, protein2 and experiments are parsed from each line of protein.links.full
+		try (StringDBLinksScanner scanner = StringDBLinksScanner.open(stringDBProteinLinksFile, "experiments");
 				FileWriter writer = new FileWriter(ppisWithExperimentsScoreFile);)
 		{
-			List<CSVRecord> records = parser.getRecords();
-			logger.info("Reading StringDB \"links\" file; {} records will be parsed.", records.size());
-			for (CSVRecord  record : records)
+			logger.info("Reading StringDB \"links\" file...");
+			Map<String, Protein> idToProtein = new HashMap<>();
+			int records = 0;
+			while (scanner.nextLine())
 			{
-				int experiments = Integer.parseInt(record.get("experiments"));
-//				int dbScore = Integer.parseInt(record.get("database"));
+				records++;
+				int experiments = scanner.getScore(0);
 				// Only extract data for records where "experiments > 0"
-				if (experiments > 0 /*|| dbScore > 0*/)
+				if (experiments > 0)
 				{
-					Protein protein1 = new Protein (record.get("protein1") , ProteinIdentifierType.STRINGDB);
-					Protein protein2 = new Protein (record.get("protein2"), ProteinIdentifierType.STRINGDB);
-					ProteinProteinInteraction ppi = new ProteinProteinInteraction(protein1, protein2);
+					Protein protein1 = StringDBUtil.getStringDBProtein(idToProtein, scanner.getProtein1());
+					Protein protein2 = StringDBUtil.getStringDBProtein(idToProtein, scanner.getProtein2());
+					ProteinProteinInteraction ppi = new ProteinProteinInteraction(protein1, protein2, interner);
 					ppis.add(ppi);
 					writer.write(ppi.toString()+"\n");
 				}
 			}
+			logger.info("{} records parsed from StringDB \"links\" file.", records);
 		}
 		catch (IOException e)
 		{
@@ -111,9 +118,11 @@ public class MapToHuman
 
 	private Set<ProteinProteinInteraction> getBindingPPIsWithExperiments(String stringDBActionsFile, String stringDBProteinLinksFile)
 	{
-		Set<ProteinProteinInteraction> ppisWithExperiments = getPPIsWithExperiments(stringDBProteinLinksFile);
+		// Both sets share one interner so that the intersection compares ids
+		ProteinIdInterner interner = new ProteinIdInterner();
+		Set<ProteinProteinInteraction> ppisWithExperiments = getPPIsWithExperiments(stringDBProteinLinksFile, interner);
 		logger.info("{} PPIs with experiments > 0", ppisWithExperiments.size());
-		Set<ProteinProteinInteraction> ppisBinding = getBindingPPIs(stringDBActionsFile);
+		Set<ProteinProteinInteraction> ppisBinding = getBindingPPIs(stringDBActionsFile, interner);
 		logger.info("{} PPIs with mode==binding", ppisBinding.size());
 		Set<ProteinProteinInteraction> ppisBindingAndExperiments = ppisBinding;
 		// this will calculate the intersection of "PPIs with experiments > 0" and "Binding PPIs"
@@ -243,6 +252,7 @@ public class MapToHuman
 		Set<String> ppiLines = new TreeSet<>();
 
 		Map<ProteinProteinInteraction, Set<String>> orthologMap = new HashMap<>(ppisFromStringDB.size());
+		ProteinIdInterner uniProtInterner = new ProteinIdInterner();
 		// If a PPI from StringDB (with experiments > 0 && mode==binding) has both proteins in the mapping, then it's OK! ...and should be written to output file.
 		try(FileWriter writer = new FileWriter(pathToOutputPPIFile);
 			FileWriter unMappedIdentifiers = new FileWriter(this.outputPath + species + "_unmapped_proteins.txt"))
@@ -288,17 +298,15 @@ public class MapToHuman
 									{
 										sb = new StringBuilder();
 										// Create a new Ortholog PPI
-										ProteinProteinInteraction orthologPPI = new ProteinProteinInteraction(new Protein(p1Ortholog, ProteinIdentifierType.UNIPROT_ACCESSION), new Protein(p2Ortholog, ProteinIdentifierType.UNIPROT_ACCESSION));
-										// Create a PPI based on the UniProt identifiers.
-										ProteinProteinInteraction ppiAsUniProt = new ProteinProteinInteraction(new Protein(p1AsUniProt, ProteinIdentifierType.UNIPROT_ACCESSION), new Protein(p2AsUniProt, ProteinIdentifierType.UNIPROT_ACCESSION));
+										ProteinProteinInteraction orthologPPI = new ProteinProteinInteraction(new Protein(p1Ortholog, ProteinIdentifierType.UNIPROT_ACCESSION), new Protein(p2Ortholog, ProteinIdentifierType.UNIPROT_ACCESSION), uniProtInterner);
 										// build up the list of reasons that this PPI is in the output: for orthologPPI, what are its proteins orthologs of? That goes in the output
-										// to make it easier to trace why the PPI is there.
+										// to make it easier to trace why the PPI is there. The local values are used since the PPI keeps its proteins in the canonical order.
 										Set<String> reasons = orthologMap.computeIfAbsent(orthologPPI, x -> new TreeSet<>());
-										sb.append(orthologPPI.getProtein1()).append(" ortholog of ").append(ppiAsUniProt.getProtein1());
+										sb.append(p1Ortholog).append(" ortholog of ").append(p1AsUniProt);
 										reasons.add(sb.toString());
 										// Now a new reason for Protein 2 (each protein should be a separate reason).
 										sb = new StringBuilder();
-										sb.append(orthologPPI.getProtein2()).append(" ortholog of ").append(ppiAsUniProt.getProtein2());
+										sb.append(p2Ortholog).append(" ortholog of ").append(p2AsUniProt);
 										reasons.add(sb.toString());
 										// Use the new Ortholog PPI as the *key* in orthologMap - that way we can build up a list of "reasons" for this PPI.
 										orthologMap.put(orthologPPI, reasons);
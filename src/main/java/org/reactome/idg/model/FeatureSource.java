@@ -11,6 +11,8 @@ public enum FeatureSource {
     StringDB,
     BioGrid,
     BioPlex,
+    IntAct,
+    MINT,
     GO,
     Harmonizome,
     pFam,
@@ -25,7 +25,8 @@ public class Protein implements Comparable<Protein>
 	@Override
 	public int hashCode()
 	{
-		return this.toDetailedString().hashCode();
+		// The same as equals(): values and types
+		return 31 * this.identifierValue.hashCode() + (this.identifierType == null ? 0 : this.identifierType.ordinal());
 	}
 
 	@Override
@@ -37,7 +38,7 @@ public class Protein implements Comparable<Protein>
 		}
 		if (other instanceof Protein)
 		{
-			return (this.identifierValue == ((Protein)other).identifierValue && this.identifierType == ((Protein)other).identifierType);
+			return (this.identifierValue.equals(((Protein)other).identifierValue) && this.identifierType == ((Protein)other).identifierType);
 		}
 		return other.equals(this);
 	}
@@ -57,4 +58,4 @@ public class Protein implements Comparable<Protein>
 	{
 		return identifierType;
 	}
-}
\ No newline at end of file
+}
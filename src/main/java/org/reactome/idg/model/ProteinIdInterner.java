@@ -0,0 +1,62 @@
+package org.reactome.idg.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns proteins by their identifier values for one load (e.g. the PPIs of a StringDB file). Each distinct
+ * value is given an int id and one Protein is kept for it, so that a ProteinProteinInteraction is saved as a
+ * pair of ids and its proteins are resolved on demand. Create one interner for the PPIs that are compared with
+ * each other, and drop it (or clear() it) after the load. This class is not thread-safe.
+ */
+public class ProteinIdInterner
+{
+	private final Map<String, Integer> valueToId = new HashMap<>();
+	private final List<Protein> proteins = new ArrayList<>();
+
+	public ProteinIdInterner()
+	{
+	}
+
+	/**
+	 * @param protein
+	 * @return the id of the identifier value of the protein. The protein is kept if its value is new.
+	 */
+	public int intern(Protein protein)
+	{
+		Integer id = valueToId.get(protein.getIdentifierValue());
+		if (id != null)
+		{
+			return id;
+		}
+		id = proteins.size();
+		valueToId.put(protein.getIdentifierValue(), id);
+		proteins.add(protein);
+		return id;
+	}
+
+	/**
+	 * @param id
+	 * @return the first protein interned with the identifier value of the id
+	 */
+	public Protein getProtein(int id)
+	{
+		return proteins.get(id);
+	}
+
+	public int size()
+	{
+		return proteins.size();
+	}
+
+	/**
+	 * Release all interned proteins. PPIs created with this interner cannot be used after this call.
+	 */
+	public void clear()
+	{
+		valueToId.clear();
+		proteins.clear();
+	}
+}
@@ -1,53 +1,120 @@
 package org.reactome.idg.model;
 
 
+/**
+ * An undirected interaction between two proteins. Only the ids of the two proteins in a ProteinIdInterner are
+ * saved, packed in one long with the smaller id first, and the proteins are resolved from the interner on demand.
+ * The canonical order (by identifier values) and the hash code are fixed at construction. Two PPIs are equal if
+ * they have the same pair of identifier values regardless of identifier types and order. PPIs from the same
+ * interner are compared by ids only.
+ */
 public class ProteinProteinInteraction implements Comparable<ProteinProteinInteraction>
 {
-	private Protein protein1;
-	private Protein protein2;
+	private final ProteinIdInterner interner;
+	// The smaller id in the high 32 bits
+	private final long ids;
+	private final int hash;
+	// True if the value of the larger id goes first in the canonical order
+	private final boolean swapped;
 
-	public ProteinProteinInteraction(Protein protein1, Protein protein2)
+	public ProteinProteinInteraction(Protein protein1, Protein protein2, ProteinIdInterner interner)
 	{
-		this.protein1 = protein1;
-		this.protein2 = protein2;
+		this.interner = interner;
+		int id1 = interner.intern(protein1);
+		int id2 = interner.intern(protein2);
+		this.ids = ((long) Math.min(id1, id2) << 32) | Math.max(id1, id2);
+		String value1 = interner.getProtein(getMinId()).getIdentifierValue();
+		String value2 = interner.getProtein(getMaxId()).getIdentifierValue();
+		this.swapped = value1.compareTo(value2) > 0;
+		// Symmetric in the two values so that PPIs from different interners have the same hash
+		int hash1 = value1.hashCode();
+		int hash2 = value2.hashCode();
+		this.hash = 31 * (hash1 + hash2) + hash1 * hash2;
+	}
+
+	private int getMinId()
+	{
+		return (int) (ids >>> 32);
+	}
+
+	private int getMaxId()
+	{
+		return (int) ids;
+	}
+
+	private String getValue1()
+	{
+		return getProtein1().getIdentifierValue();
+	}
+
+	private String getValue2()
+	{
+		return getProtein2().getIdentifierValue();
 	}
 
 	@Override public String toString()
 	{
-		return this.protein1.compareTo(this.protein2) < 0
-				? this.protein1 + "\t" + this.protein2
-				: this.protein2 + "\t" + this.protein1;
+		return getValue1() + "\t" + getValue2();
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return this.toString().hashCode();
+		return this.hash;
 	}
 
 	@Override
 	public boolean equals(Object other)
 	{
-		if (other == null)
+		if (other == this)
+		{
+			return true;
+		}
+		if (!(other instanceof ProteinProteinInteraction))
+		{
+			return false;
+		}
+		ProteinProteinInteraction ppi = (ProteinProteinInteraction) other;
+		if (this.hash != ppi.hash)
 		{
 			return false;
 		}
-		return this.toString().equals(other.toString());
+		if (this.interner == ppi.interner)
+		{
+			return this.ids == ppi.ids;
+		}
+		return getValue1().equals(ppi.getValue1()) && getValue2().equals(ppi.getValue2());
 	}
 
+	/**
+	 * @return the protein going first in the canonical order, whose identifier value is not larger
+	 */
 	public Protein getProtein1()
 	{
-		return protein1;
+		return interner.getProtein(swapped ? getMaxId() : getMinId());
 	}
 
+	/**
+	 * @return the protein going second in the canonical order
+	 */
 	public Protein getProtein2()
 	{
-		return protein2;
+		return interner.getProtein(swapped ? getMinId() : getMaxId());
 	}
 
 	@Override
 	public int compareTo(ProteinProteinInteraction other)
 	{
-		return this.toString().compareTo(other.toString());
+		if (this.interner == other.interner && this.ids == other.ids)
+		{
+			return 0;
+		}
+		// The same order as comparing toString() since the tab sorts before any character in identifiers
+		int rtn = getValue1().compareTo(other.getValue1());
+		if (rtn != 0)
+		{
+			return rtn;
+		}
+		return getValue2().compareTo(other.getValue2());
 	}
 }
@@ -18,6 +18,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reactome.idg.model.Protein;
 import org.reactome.idg.model.ProteinIdentifierType;
+import org.reactome.idg.model.ProteinIdInterner;
 import org.reactome.idg.model.ProteinProteinInteraction;
 import org.reactome.idg.util.StringDBUtil;
 
@@ -40,8 +41,10 @@ public class StringDBBioGridOverlapAnalysis
 		// Step 2: get PPIs from BioGrid
 		// Step 3: map BioGrid PPIs to StringDB
 		// Step 4: calculate overlap
-		Set<ProteinProteinInteraction> interactionsWithExperiments = StringDBUtil.getPPIsWithExperiments(0, stringDBProteinLinksFile);
-		Set<ProteinProteinInteraction> bindingInteractionsWithExperiments = StringDBUtil.getBindingPPIs(stringDBProteinActionsFile, interactionsWithExperiments);
+		// StringDB PPIs and BioGrid PPIs mapped to StringDB share one interner so that they are compared by ids
+		ProteinIdInterner stringDBInterner = new ProteinIdInterner();
+		Set<ProteinProteinInteraction> interactionsWithExperiments = StringDBUtil.getPPIsWithExperiments(0, stringDBProteinLinksFile, stringDBInterner);
+		Set<ProteinProteinInteraction> bindingInteractionsWithExperiments = StringDBUtil.getBindingPPIs(stringDBProteinActionsFile, interactionsWithExperiments, stringDBInterner);
 		logger.info("Number of PPIs from StringDB: {}", bindingInteractionsWithExperiments.size());
 		// Get BioGrid data
 		Set<ProteinProteinInteraction> ppisFromBioGrid = new HashSet<>();
@@ -52,7 +55,7 @@ public class StringDBBioGridOverlapAnalysis
 		logger.info("Number of EntrezGene -> StringDB identifier mappings: {}", entrezGeneToString.size());
 
 		Set<ProteinProteinInteraction> mappedPPIsFromBioGrid = new HashSet<>();
-		mappedPPIsFromBioGrid = mapBioGridPPIs(ppisFromBioGrid, entrezGeneToString);
+		mappedPPIsFromBioGrid = mapBioGridPPIs(ppisFromBioGrid, entrezGeneToString, stringDBInterner);
 
 		logger.info("Number of MAPPED (to StringDB) BioGrid PPIs: {}", mappedPPIsFromBioGrid.size());
 
@@ -121,7 +124,7 @@ public class StringDBBioGridOverlapAnalysis
 		}
 	}
 
-	private static Set<ProteinProteinInteraction> mapBioGridPPIs(Set<ProteinProteinInteraction> ppisFromBioGrid, final Map<String, Set<String>> entrezGeneToString)
+	private static Set<ProteinProteinInteraction> mapBioGridPPIs(Set<ProteinProteinInteraction> ppisFromBioGrid, final Map<String, Set<String>> entrezGeneToString, ProteinIdInterner stringDBInterner)
 	{
 		Set<ProteinProteinInteraction> mappedPPIsFromBioGrid = new HashSet<>();
 		AtomicInteger selfInteractionCount = new AtomicInteger(0);
@@ -141,7 +144,7 @@ public class StringDBBioGridOverlapAnalysis
 						{
 							if (!mappedProtein1.equals(mappedProtein2))
 							{
-								mappedPPIsFromBioGrid.add(new ProteinProteinInteraction(new Protein(mappedProtein1, ProteinIdentifierType.STRINGDB), new Protein(mappedProtein2, ProteinIdentifierType.STRINGDB)));
+								mappedPPIsFromBioGrid.add(new ProteinProteinInteraction(new Protein(mappedProtein1, ProteinIdentifierType.STRINGDB), new Protein(mappedProtein2, ProteinIdentifierType.STRINGDB), stringDBInterner));
 							}
 							else
 							{
@@ -219,6 +222,7 @@ public class StringDBBioGridOverlapAnalysis
 	{
 		int selfInteractions = 0;
 		Set<ProteinProteinInteraction> ppisFromBioGrid = new HashSet<>();
+		ProteinIdInterner entrezGeneInterner = new ProteinIdInterner();
 		try(FileReader reader = new FileReader(bioGridPPIFile))
 		{
 			CSVFormat format = CSVFormat.DEFAULT
@@ -250,7 +254,7 @@ public class StringDBBioGridOverlapAnalysis
 							// avoid self-interactions
 							if (!entrezGeneA.equals(entrezGeneB))
 							{
-								ppisFromBioGrid.add(new ProteinProteinInteraction(new Protein(entrezGeneA, ProteinIdentifierType.ENTREZ_GENE), new Protein(entrezGeneB, ProteinIdentifierType.ENTREZ_GENE)));
+								ppisFromBioGrid.add(new ProteinProteinInteraction(new Protein(entrezGeneA, ProteinIdentifierType.ENTREZ_GENE), new Protein(entrezGeneB, ProteinIdentifierType.ENTREZ_GENE), entrezGeneInterner));
 							}
 							else
 							{
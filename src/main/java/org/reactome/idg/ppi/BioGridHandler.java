@@ -4,13 +4,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.apache.log4j.Logger;
 import org.gk.util.FileUtilities;
 import org.junit.Test;
 import org.reactome.idg.util.ApplicationConfig;
@@ -23,6 +23,10 @@ import org.reactome.idg.util.ApplicationConfig;
 public class BioGridHandler extends PPIDataHandler {
     private final String BIOGRID_DIR = ApplicationConfig.getConfig().getAppConfig("biogrid.dir");
     private ApplicationConfig config = ApplicationConfig.getConfig();
+    private static final Logger logger = Logger.getLogger(BioGridHandler.class);
+    // Index of BioGrid ids to other ids in all namespaces, which is shared by all species
+    private static BioGridIdentifierIndex idIndex;
+    private static String idIndexKey;
     
     public BioGridHandler() {
     }
@@ -86,25 +90,50 @@ public class BioGridHandler extends PPIDataHandler {
     }
 
     private Map<String, String> loadBioGridIdToOther(String otherType) throws IOException {
+        return getIdentifierIndex().getIdMap(otherType);
+    }
+    
+    /**
+     * Get the index of the selected BioGrid identifier file, which is shared by all species. The index file
+     * is configured by biogrid.id.index. If it is not configured, the index is built into a temporary file for
+     * this run so that nothing is written into the dataset directory. An index older than the identifier file
+     * or failing the check in open() is rebuilt.
+     * @return
+     * @throws IOException
+     */
+    private static synchronized BioGridIdentifierIndex getIdentifierIndex() throws IOException {
+        ApplicationConfig config = ApplicationConfig.getConfig();
         String fileName = config.getAppConfig("biogrid.id.file.selected");
-        boolean isInData = false;
-        Map<String, String> bIdToOther = new HashMap<>();
-        FileUtilities fu = new FileUtilities();
-        fu.setInput(fileName);
-        String line = null;
-        while ((line = fu.readLine()) != null) {
-            if (isInData) {
-                String[] tokens = line.split("\t");
-                if (tokens[2].equals(otherType)) {
-                    bIdToOther.put(tokens[0], tokens[1]);
+        String indexName = config.getAppConfig("biogrid.id.index");
+        // Make sure the cached index is for the current configuration
+        String key = fileName + "@" + indexName;
+        if (idIndex != null && key.equals(idIndexKey))
+            return idIndex;
+        File idFile = new File(fileName);
+        File indexFile = null;
+        idIndex = null;
+        if (indexName == null || indexName.length() == 0) {
+            indexFile = File.createTempFile(idFile.getName() + ".", ".idx");
+            indexFile.deleteOnExit();
+        }
+        else {
+            indexFile = new File(indexName);
+            if (indexFile.exists() && indexFile.lastModified() >= idFile.lastModified()) {
+                try {
+                    idIndex = BioGridIdentifierIndex.open(indexFile);
+                    logger.info("Using the BioGrid identifier index " + indexFile.getName());
+                }
+                catch(IOException e) {
+                    logger.warn("Rebuilding the BioGrid identifier index: " + e.getMessage());
                 }
-            }
-            else if (line.startsWith("BIOGRID_ID")) {
-                isInData = true;
             }
         }
-        fu.close();
-        return bIdToOther;
+        if (idIndex == null) {
+            BioGridIdentifierIndex.build(idFile, indexFile);
+            idIndex = BioGridIdentifierIndex.open(indexFile);
+        }
+        idIndexKey = key;
+        return idIndex;
     }
 
     private Set<String> loadBioGridPPIs(String fileName, 
@@ -0,0 +1,266 @@
+package org.reactome.idg.ppi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.AtomicFileOutputStream;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.DelimitedLineScanner;
+
+/**
+ * This class is used to index a BIOGRID-IDENTIFIERS file for all identifier types (namespaces) in one pass.
+ * Entries (BioGrid id, value) are sorted by namespaces and then BioGrid ids, and saved into a binary file,
+ * which is memory-mapped when it is opened. Entries with the same BioGrid id in a namespace keep the order in
+ * the original file. The layout of the file: magic, number of namespaces, then for each namespace: name, the
+ * first entry and the number of entries, total entries, total value bytes, and then BioGrid ids (ints),
+ * value offsets (total entries + 1 ints) and value bytes.
+ * @author wug
+ *
+ */
+public class BioGridIdentifierIndex {
+    private static final Logger logger = Logger.getLogger(BioGridIdentifierIndex.class);
+    private static final int MAGIC = 0x42474931; // BGI1
+    private final Map<String, int[]> namespaceToRange;
+    private final int totalEntries;
+    private final MappedByteBuffer buffer;
+
+    private BioGridIdentifierIndex(Map<String, int[]> namespaceToRange,
+                                   int totalEntries,
+                                   MappedByteBuffer buffer) {
+        this.namespaceToRange = namespaceToRange;
+        this.totalEntries = totalEntries;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Build an index file from a BIOGRID-IDENTIFIERS file.
+     * @param idFile
+     * @param indexFile
+     * @throws IOException
+     */
+    public static void build(File idFile, File indexFile) throws IOException {
+        logger.info("Building the BioGrid identifier index for " + idFile.getName() + "...");
+        long time1 = System.currentTimeMillis();
+        Map<String, Integer> namespaceToIndex = new LinkedHashMap<>();
+        int size = 0;
+        long[] keys = new long[1024 * 1024];
+        int[] valueStarts = new int[keys.length + 1];
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        boolean isInData = false;
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(DecompressingInputStream.open(idFile), '\t')) {
+            while (scanner.nextLine()) {
+                scanner.nextField();
+                if (!isInData) {
+                    if (scanner.getField().startsWith("BIOGRID_ID"))
+                        isInData = true;
+                    continue;
+                }
+                if (scanner.isFieldEmpty())
+                    continue;
+                long id = scanner.getFieldAsInt();
+                if (!scanner.nextField())
+                    continue;
+                byte[] value = scanner.getField().getBytes(StandardCharsets.UTF_8);
+                if (!scanner.nextField())
+                    continue;
+                String namespace = scanner.getField();
+                Integer namespaceIndex = namespaceToIndex.get(namespace);
+                if (namespaceIndex == null) {
+                    namespaceIndex = namespaceToIndex.size();
+                    namespaceToIndex.put(namespace, namespaceIndex);
+                }
+                // Sort keys: namespace (9 bits), BioGrid id (28 bits) and the line (27 bits) for a stable order
+                if (namespaceIndex >= (1 << 9) || id < 0 || id >= (1L << 28) || size >= (1 << 27))
+                    throw new IllegalStateException("Too many namespaces, entries or a too large BioGrid id: " + id);
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    valueStarts = Arrays.copyOf(valueStarts, size * 2 + 1);
+                }
+                keys[size] = ((long) namespaceIndex << 55) | (id << 27) | size;
+                values.write(value, 0, value.length);
+                size ++;
+                valueStarts[size] = values.size();
+            }
+        }
+        Arrays.sort(keys, 0, size);
+        byte[] valueBytes = values.toByteArray();
+        // Entries of each namespace
+        int[] firsts = new int[namespaceToIndex.size()];
+        int[] counts = new int[namespaceToIndex.size()];
+        for (int i = size - 1; i >= 0; i--) {
+            int namespace = (int) (keys[i] >>> 55);
+            firsts[namespace] = i;
+            counts[namespace] ++;
+        }
+        try (AtomicFileOutputStream os = new AtomicFileOutputStream(indexFile)) {
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            dos.writeInt(namespaceToIndex.size());
+            for (String namespace : namespaceToIndex.keySet()) {
+                byte[] bytes = namespace.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+                int index = namespaceToIndex.get(namespace);
+                dos.writeInt(firsts[index]);
+                dos.writeInt(counts[index]);
+            }
+            dos.writeInt(size);
+            dos.writeInt(valueBytes.length);
+            for (int i = 0; i < size; i++)
+                dos.writeInt((int) ((keys[i] >>> 27) & ((1L << 28) - 1)));
+            int offset = 0;
+            dos.writeInt(offset);
+            for (int i = 0; i < size; i++) {
+                int line = (int) (keys[i] & ((1L << 27) - 1));
+                offset += valueStarts[line + 1] - valueStarts[line];
+                dos.writeInt(offset);
+            }
+            for (int i = 0; i < size; i++) {
+                int line = (int) (keys[i] & ((1L << 27) - 1));
+                dos.write(valueBytes, valueStarts[line], valueStarts[line + 1] - valueStarts[line]);
+            }
+            dos.flush();
+            os.commit();
+        }
+        long time2 = System.currentTimeMillis();
+        logger.info("Saved " + size + " identifiers in " + namespaceToIndex.size() + " namespaces into " +
+                    indexFile.getName() + ": " + (time2 - time1) / 1000.0d + " seconds.");
+    }
+
+    /**
+     * Read a count, which cannot be larger than the file length in a valid file.
+     */
+    private static int readCount(DataInputStream dis, long length) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > length)
+            throw new IOException("Invalid count in the index file: " + count);
+        return count;
+    }
+
+    /**
+     * Open an index file. Entries are memory-mapped. The magic number, counts in the header and the file length
+     * are checked so that a truncated or corrupted file is reported by an IOException.
+     * @param indexFile
+     * @return
+     * @throws IOException
+     */
+    public static BioGridIdentifierIndex open(File indexFile) throws IOException {
+        Map<String, int[]> namespaceToRange = new LinkedHashMap<>();
+        long length = indexFile.length();
+        int totalEntries;
+        long offset;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (length < 8 || dis.readInt() != MAGIC)
+                throw new IOException(indexFile.getName() + " is not a BioGrid identifier index file.");
+            int total = readCount(dis, length);
+            offset = 8;
+            for (int i = 0; i < total; i++) {
+                byte[] bytes = new byte[readCount(dis, length)];
+                dis.readFully(bytes);
+                int first = readCount(dis, length);
+                int count = readCount(dis, length);
+                namespaceToRange.put(new String(bytes, StandardCharsets.UTF_8), new int[]{first, first + count});
+                offset += 4 + bytes.length + 8;
+            }
+            totalEntries = readCount(dis, length);
+            int totalValueBytes = readCount(dis, length);
+            offset += 8;
+            for (String namespace : namespaceToRange.keySet()) {
+                if (namespaceToRange.get(namespace)[1] > totalEntries)
+                    throw new IOException("Invalid entries for " + namespace + " in " + indexFile.getName());
+            }
+            long expected = offset + (totalEntries * 2L + 1) * 4 + totalValueBytes;
+            if (expected != length)
+                throw new IOException(indexFile.getName() + " should have " + expected + 
+                                      " bytes but has " + length + " bytes.");
+        }
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                  offset,
+                                                  channel.size() - offset);
+            return new BioGridIdentifierIndex(namespaceToRange, totalEntries, buffer);
+        }
+    }
+
+    public Set<String> getNamespaces() {
+        return namespaceToRange.keySet();
+    }
+
+    private int getBioGridId(int entry) {
+        return buffer.getInt(entry * 4);
+    }
+
+    private String getValue(int entry) {
+        int offsetBase = totalEntries * 4;
+        int start = buffer.getInt(offsetBase + entry * 4);
+        int end = buffer.getInt(offsetBase + (entry + 1) * 4);
+        int valueBase = offsetBase + (totalEntries + 1) * 4;
+        byte[] bytes = new byte[end - start];
+        // Use a duplicate so that the shared buffer can be read by multiple threads
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(valueBase + start);
+        duplicate.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get values of a BioGrid id in a namespace in the order of the original file.
+     * @param namespace
+     * @param bioGridId
+     * @return
+     */
+    public List<String> getValues(String namespace, int bioGridId) {
+        List<String> rtn = new ArrayList<>();
+        int[] range = namespaceToRange.get(namespace);
+        if (range == null)
+            return rtn;
+        // The first entry not less than bioGridId
+        int low = range[0];
+        int high = range[1];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getBioGridId(middle) < bioGridId)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        for (int i = low; i < range[1] && getBioGridId(i) == bioGridId; i++)
+            rtn.add(getValue(i));
+        return rtn;
+    }
+
+    /**
+     * Get the map from BioGrid ids to values in a namespace. If a BioGrid id has more than one value,
+     * the last one in the original file is used.
+     * @param namespace
+     * @return
+     */
+    public Map<String, String> getIdMap(String namespace) {
+        Map<String, String> rtn = new HashMap<>();
+        int[] range = namespaceToRange.get(namespace);
+        if (range == null)
+            return rtn;
+        for (int i = range[0]; i < range[1]; i++)
+            rtn.put(String.valueOf(getBioGridId(i)), getValue(i));
+        return rtn;
+    }
+
+}
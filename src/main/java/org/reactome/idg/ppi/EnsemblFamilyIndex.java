@@ -0,0 +1,189 @@
+package org.reactome.idg.ppi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.DelimitedLineScanner;
+
+/**
+ * This class is used to index an Ensembl protein family file, in which each line has a family id and a protein
+ * in the format of taxon:id (e.g. 9606:P12345). Proteins are grouped by taxon, and in each group they are sorted
+ * by family so that the mapping from any taxon to human is a merge of two sorted groups. An index is built once
+ * for a file in a JVM and shared.
+ * @author wug
+ *
+ */
+public class EnsemblFamilyIndex {
+    private static final Logger logger = Logger.getLogger(EnsemblFamilyIndex.class);
+    public static final String HUMAN_TAXON_ID = "9606";
+    // Built indices for files
+    private static final Map<String, EnsemblFamilyIndex> fileToIndex = new HashMap<>();
+    private final Map<String, TaxonGroup> taxonToGroup;
+    private final int numberOfFamilies;
+
+    /**
+     * Proteins of one taxon sorted by family indices.
+     */
+    private static class TaxonGroup {
+        // Distinct family indices in the ascending order
+        private int[] families;
+        // Proteins of families[i] are in proteins[starts[i]] to proteins[starts[i + 1] - 1]
+        private int[] starts;
+        private String[] proteins;
+    }
+
+    private EnsemblFamilyIndex(Map<String, TaxonGroup> taxonToGroup, int numberOfFamilies) {
+        this.taxonToGroup = taxonToGroup;
+        this.numberOfFamilies = numberOfFamilies;
+    }
+
+    /**
+     * Get the index for a protein family file. The file is loaded once in a JVM unless it is updated.
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static EnsemblFamilyIndex getIndex(String fileName) throws IOException {
+        File file = new File(fileName);
+        String key = file.getAbsolutePath() + "@" + file.lastModified();
+        synchronized (fileToIndex) {
+            EnsemblFamilyIndex index = fileToIndex.get(key);
+            if (index == null) {
+                index = build(file);
+                fileToIndex.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Build an index for a protein family file.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static EnsemblFamilyIndex build(File file) throws IOException {
+        logger.info("Indexing protein families in " + file.getName() + "...");
+        long time1 = System.currentTimeMillis();
+        Map<String, Integer> familyToIndex = new HashMap<>();
+        // Taxon -> family indices and proteins in the file order
+        Map<String, int[]> taxonToFamilies = new HashMap<>();
+        Map<String, List<String>> taxonToProteins = new HashMap<>();
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(DecompressingInputStream.open(file), '\t')) {
+            while (scanner.nextLine()) {
+                if (!scanner.nextField())
+                    continue;
+                String family = scanner.getField();
+                if (!scanner.nextField())
+                    continue;
+                String protein = scanner.getField();
+                int index = protein.indexOf(":");
+                if (index < 0)
+                    continue;
+                String taxon = protein.substring(0, index);
+                Integer familyIndex = familyToIndex.get(family);
+                if (familyIndex == null) {
+                    familyIndex = familyToIndex.size();
+                    familyToIndex.put(family, familyIndex);
+                }
+                List<String> proteins = taxonToProteins.computeIfAbsent(taxon, key -> new ArrayList<>());
+                int[] families = taxonToFamilies.computeIfAbsent(taxon, key -> new int[16]);
+                if (proteins.size() == families.length) {
+                    families = Arrays.copyOf(families, families.length * 2);
+                    taxonToFamilies.put(taxon, families);
+                }
+                families[proteins.size()] = familyIndex;
+                proteins.add(protein.substring(index + 1));
+            }
+        }
+        Map<String, TaxonGroup> taxonToGroup = new HashMap<>();
+        for (String taxon : taxonToProteins.keySet())
+            taxonToGroup.put(taxon, createGroup(taxonToFamilies.get(taxon), taxonToProteins.get(taxon)));
+        long time2 = System.currentTimeMillis();
+        logger.info("Indexed " + familyToIndex.size() + " families for " + taxonToGroup.size() + " taxa: " +
+                    (time2 - time1) / 1000.0d + " seconds.");
+        return new EnsemblFamilyIndex(taxonToGroup, familyToIndex.size());
+    }
+
+    private static TaxonGroup createGroup(int[] families, List<String> proteins) {
+        int size = proteins.size();
+        // Sort positions by families. The family index is in the high bits.
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++)
+            packed[i] = ((long) families[i] << 32) | i;
+        Arrays.sort(packed);
+        TaxonGroup group = new TaxonGroup();
+        int[] groupFamilies = new int[size];
+        int[] starts = new int[size + 1];
+        List<String> groupProteins = new ArrayList<>(size);
+        Set<String> seen = new HashSet<>();
+        int total = 0;
+        int previous = -1;
+        for (int i = 0; i < size; i++) {
+            int family = (int) (packed[i] >>> 32);
+            String protein = proteins.get((int) packed[i]);
+            if (family != previous) {
+                seen.clear();
+                groupFamilies[total] = family;
+                starts[total] = groupProteins.size();
+                total ++;
+                previous = family;
+            }
+            if (seen.add(protein)) // Duplicated lines
+                groupProteins.add(protein);
+        }
+        starts[total] = groupProteins.size();
+        group.families = Arrays.copyOf(groupFamilies, total);
+        group.starts = Arrays.copyOf(starts, total + 1);
+        group.proteins = groupProteins.toArray(new String[0]);
+        return group;
+    }
+
+    public int getNumberOfFamilies() {
+        return numberOfFamilies;
+    }
+
+    public Set<String> getTaxonIds() {
+        return taxonToGroup.keySet();
+    }
+
+    /**
+     * Map proteins of a taxon to human proteins in the same families. A protein in a family without any
+     * human protein is mapped to an empty set.
+     * @param taxonId
+     * @return
+     */
+    public Map<String, Set<String>> getToHumanMap(String taxonId) {
+        Map<String, Set<String>> map = new HashMap<>();
+        TaxonGroup other = taxonToGroup.get(taxonId);
+        if (other == null)
+            return map;
+        TaxonGroup human = taxonToGroup.get(HUMAN_TAXON_ID);
+        int h = 0;
+        for (int i = 0; i < other.families.length; i++) {
+            int family = other.families[i];
+            // Both groups are sorted by families
+            while (human != null && h < human.families.length && human.families[h] < family)
+                h ++;
+            boolean hasHuman = human != null && h < human.families.length && human.families[h] == family;
+            for (int j = other.starts[i]; j < other.starts[i + 1]; j++) {
+                Set<String> humanSet = map.computeIfAbsent(other.proteins[j], key -> new HashSet<>());
+                if (!hasHuman)
+                    continue;
+                for (int k = human.starts[h]; k < human.starts[h + 1]; k++)
+                    humanSet.add(human.proteins[k]);
+            }
+        }
+        return map;
+    }
+
+}
@@ -1,13 +1,8 @@
 package org.reactome.idg.ppi;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Stream;
 
 import org.reactome.idg.util.ApplicationConfig;
 
@@ -46,59 +41,10 @@ public class EnsemblOrthologousMapper implements OrthologousMapper {
         return loadToHumanMapInUniProt("10090");
     }
     
-    private Map<String, Set<String>> loadProteinFamilies() throws IOException {
-        String fileName = ApplicationConfig.getConfig().getAppConfig("ensebml.protein.family.file");
-        Map<String, Set<String>> idToFamilies = new HashMap<>();
-        try (Stream<String> lines = Files.lines(Paths.get(fileName))) {
-            lines.map(line -> line.split("\t"))
-                 .forEach(tokens -> {
-                     idToFamilies.compute(tokens[0], (key, set) -> {
-                         if (set == null)
-                             set = new HashSet<>();
-                         set.add(tokens[1]);
-                         return set;
-                     });
-                 });
-            return idToFamilies;
-        }
-    }
-
     private Map<String, Set<String>> loadToHumanMapInUniProt(String taxonId) throws IOException {
-        Map<String, Set<String>> familyToProteins = loadProteinFamilies();
-        Set<String> humanIds = new HashSet<String>();
-        Set<String> otherIds = new HashSet<String>();
-        // To be returned
-        Map<String, Set<String>> map = new HashMap<String, Set<String>>();
-        for (String family : familyToProteins.keySet()) {
-            Set<String> proteins = familyToProteins.get(family);
-            humanIds.clear();
-            otherIds.clear();
-            splitIds(proteins, humanIds, otherIds, taxonId);
-            for (String otherId : otherIds) {
-                Set<String> humanSet = map.get(otherId);
-                if (humanSet == null) {
-                    humanSet = new HashSet<String>();
-                    map.put(otherId, humanSet);
-                }
-                humanSet.addAll(humanIds);
-            }
-        }
-        return map;
-    }
-
-    private void splitIds(Set<String> proteins,
-                          Set<String> humanIds,
-                          Set<String> otherIds,
-                          String taxonId) {
-        for (String protein : proteins) {
-            if (protein.startsWith("9606:")) {
-                // This is a human protein
-                humanIds.add(protein.substring(5));
-            }
-            else if (protein.startsWith(taxonId)) {
-                otherIds.add(protein.substring(taxonId.length() + 1)); // 1 for ":".
-            }
-        }
+        String fileName = ApplicationConfig.getConfig().getAppConfig("ensebml.protein.family.file");
+        // The family file is indexed once and shared by all taxa
+        return EnsemblFamilyIndex.getIndex(fileName).getToHumanMap(taxonId);
     }
 
 }
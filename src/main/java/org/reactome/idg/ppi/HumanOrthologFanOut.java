@@ -0,0 +1,186 @@
+package org.reactome.idg.ppi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+import org.reactome.idg.util.ConcurrentLongSet;
+
+/**
+ * This class is used to map MOD PPIs to human PPIs via orthologs. Human targets (genes or UniProt ids) are
+ * sorted and referred by int indices, and each MOD id is mapped to the sorted distinct indices of its targets
+ * once. A MOD PPI is then mapped as the cross product of two int arrays, and a human PPI is encoded as a long
+ * (smaller index << 32 | larger index). Since indices follow the order of targets, a decoded PPI is the same as
+ * generated by PPIDataHandler.getPPI(). MOD PPIs are mapped in chunks by multiple threads into a ConcurrentLongSet.
+ * The threads may come from an executor shared by several objects (e.g. for species mapped at the same time) so
+ * that the total number of threads is bounded.
+ * @author wug
+ *
+ */
+public class HumanOrthologFanOut {
+    // Number of MOD PPIs mapped by a task
+    private static final int CHUNK_SIZE = 10000;
+    private static final int[] EMPTY = new int[0];
+    private final String[] targets;
+    private final Map<String, int[]> modIdToTargets;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    // Shared executor, which is not shut down by this object
+    private ExecutorService executor;
+
+    /**
+     * @param modIdToHumanUniProtMap
+     * @param uniprotToGene
+     * @param useUniProt true to map to human UniProt ids. Otherwise, map to human genes.
+     */
+    public HumanOrthologFanOut(Map<String, Set<String>> modIdToHumanUniProtMap,
+                               Map<String, String> uniprotToGene,
+                               boolean useUniProt) {
+        // MOD id -> targets. Human UniProt ids without genes are dropped as getPPI() for null.
+        Map<String, Set<String>> modIdToTargetSet = new HashMap<>();
+        Set<String> allTargets = new TreeSet<>();
+        modIdToHumanUniProtMap.forEach((modId, humanIds) -> {
+            Set<String> targetSet = new HashSet<>();
+            for (String humanId : humanIds) {
+                String target = useUniProt ? humanId : uniprotToGene.get(humanId);
+                if (target != null)
+                    targetSet.add(target);
+            }
+            if (targetSet.size() == 0)
+                return;
+            modIdToTargetSet.put(modId, targetSet);
+            allTargets.addAll(targetSet);
+        });
+        targets = allTargets.toArray(new String[0]);
+        Map<String, Integer> targetToIndex = new HashMap<>();
+        for (int i = 0; i < targets.length; i++)
+            targetToIndex.put(targets[i], i);
+        modIdToTargets = new HashMap<>();
+        modIdToTargetSet.forEach((modId, targetSet) -> {
+            int[] indices = targetSet.stream().mapToInt(targetToIndex::get).sorted().toArray();
+            modIdToTargets.put(modId, indices);
+        });
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set a shared executor used by map(Collection). If no executor is set, a pool of getThreads() threads is
+     * created for each call.
+     * @param executor
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    private int[] getTargets(String modId) {
+        int[] indices = modIdToTargets.get(modId);
+        return indices == null ? EMPTY : indices;
+    }
+
+    private void map(String modPPI, LongConsumer humanPairs) {
+        int index = modPPI.indexOf('\t');
+        if (index < 0)
+            return;
+        int[] targets1 = getTargets(modPPI.substring(0, index));
+        if (targets1.length == 0)
+            return;
+        int[] targets2 = getTargets(modPPI.substring(index + 1));
+        for (int target1 : targets1) {
+            for (int target2 : targets2) {
+                if (target1 == target2)
+                    continue; // Self interaction
+                if (target1 < target2)
+                    humanPairs.accept(((long) target1 << 32) | target2);
+                else
+                    humanPairs.accept(((long) target2 << 32) | target1);
+            }
+        }
+    }
+
+    private String decode(long code) {
+        return targets[(int) (code >>> 32)] + "\t" + targets[(int) code];
+    }
+
+    private Set<String> decode(ConcurrentLongSet humanPairs) {
+        long[] codes = humanPairs.toSortedArray();
+        Set<String> rtn = new HashSet<>(codes.length * 4 / 3 + 1);
+        for (long code : codes)
+            rtn.add(decode(code));
+        return rtn;
+    }
+
+    /**
+     * Map one MOD PPI to human PPIs.
+     * @param modPPI
+     * @return
+     */
+    public Set<String> map(String modPPI) {
+        Set<String> rtn = new HashSet<>();
+        map(modPPI, code -> rtn.add(decode(code)));
+        return rtn;
+    }
+
+    /**
+     * Map a collection of MOD PPIs to human PPIs in parallel by the shared executor if it is set.
+     * @param modPPIs
+     * @return
+     * @throws IOException
+     */
+    public Set<String> map(Collection<String> modPPIs) throws IOException {
+        String[] ppis = modPPIs.toArray(new String[0]);
+        ConcurrentLongSet humanPairs = new ConcurrentLongSet(threads * 16);
+        if ((executor == null && threads <= 1) || ppis.length <= CHUNK_SIZE) {
+            for (String ppi : ppis)
+                map(ppi, humanPairs::add);
+            return decode(humanPairs);
+        }
+        ExecutorService executor = this.executor == null ? Executors.newFixedThreadPool(threads) : this.executor;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int start = 0; start < ppis.length; start += CHUNK_SIZE) {
+                String[] chunk = Arrays.copyOfRange(ppis, start, Math.min(start + CHUNK_SIZE, ppis.length));
+                futures.add(executor.submit(() -> {
+                    for (String ppi : chunk)
+                        map(ppi, humanPairs::add);
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch(ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        finally {
+            if (executor != this.executor)
+                executor.shutdownNow();
+        }
+        return decode(humanPairs);
+    }
+
+}
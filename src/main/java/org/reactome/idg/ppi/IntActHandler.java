@@ -0,0 +1,168 @@
+package org.reactome.idg.ppi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.MITabScanner;
+
+/**
+ * This class is used to handle PPIs from IntAct and MINT in the PSI-MITAB format. Only interactions between
+ * two UniProt proteins in the same species with one of the configured interaction types are used. Human PPIs
+ * are returned in gene names and MOD PPIs in UniProt ids. Only human PPIs are merged into the human PPI feature,
+ * when intact.dir is configured.
+ * @author wug
+ *
+ */
+public class IntActHandler extends PPIDataHandler {
+    private static final Logger logger = Logger.getLogger(IntActHandler.class);
+    private static final int HUMAN_TAXON = 9606;
+    private static final int MOUSE_TAXON = 10090;
+    private static final int FLY_TAXON = 7227;
+    private static final int WORM_TAXON = 6239;
+    // S288c used by IntAct and 4932 in some MINT records
+    private static final int[] YEAST_TAXA = {559292, 4932};
+    private ApplicationConfig config = ApplicationConfig.getConfig();
+
+    public IntActHandler() {
+    }
+
+    /**
+     * Check if IntAct/MINT files are configured and downloaded.
+     * @return
+     */
+    public boolean isConfigured() {
+        String dir = config.getAppConfig("intact.dir");
+        if (dir == null || dir.length() == 0)
+            return false;
+        if (!new File(dir).exists()) {
+            logger.warn("IntAct/MINT directory doesn't exist: " + dir);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return configured MITAB files
+     */
+    private List<String> getFileNames() {
+        List<String> fileNames = new ArrayList<>();
+        String dir = config.getAppConfig("intact.dir");
+        for (String key : new String[]{"intact.file", "mint.file"}) {
+            String name = config.getAppConfig(key);
+            if (name != null && name.length() > 0)
+                fileNames.add(dir + File.separator + name);
+        }
+        return fileNames;
+    }
+
+    /**
+     * @return PSI-MI ids of the interaction types to be used
+     */
+    private List<String> getInteractionTypes() {
+        String types = config.getAppConfig("intact.interaction.types");
+        if (types == null || types.length() == 0)
+            types = "MI:0407,MI:0915,MI:0914";
+        return Arrays.stream(types.split(",")).map(String::trim).collect(Collectors.toList());
+    }
+
+    @Override
+    public Set<String> loadHumanPPIs() throws IOException {
+        return loadHumanPPIs(config.getUniProtToGeneMap());
+    }
+
+    /**
+     * Load human PPIs in gene names.
+     * @param uniprotToGene the map used to map UniProt ids to gene names, which is shared with other handlers
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadHumanPPIs(Map<String, String> uniprotToGene) throws IOException {
+        Set<String> uniProtPPIs = loadUniProtPPIs(HUMAN_TAXON);
+        Set<String> ppis = new HashSet<>();
+        for (String uniProtPPI : uniProtPPIs) {
+            int index = uniProtPPI.indexOf('\t');
+            String gene1 = uniprotToGene.get(uniProtPPI.substring(0, index));
+            String gene2 = uniprotToGene.get(uniProtPPI.substring(index + 1));
+            String ppi = getPPI(gene1, gene2);
+            if (ppi != null)
+                ppis.add(ppi);
+        }
+        return ppis;
+    }
+
+    @Override
+    public Set<String> loadMousePPIs() throws IOException {
+        return loadUniProtPPIs(MOUSE_TAXON);
+    }
+
+    @Override
+    public Set<String> loadFlyPPIs() throws IOException {
+        return loadUniProtPPIs(FLY_TAXON);
+    }
+
+    @Override
+    public Set<String> loadYeastPPIs() throws IOException {
+        return loadUniProtPPIs(YEAST_TAXA);
+    }
+
+    @Override
+    public Set<String> loadWormPPIs() throws IOException {
+        return loadUniProtPPIs(WORM_TAXON);
+    }
+
+    private Set<String> loadUniProtPPIs(int... taxa) throws IOException {
+        Set<String> ppis = new HashSet<>();
+        List<String> types = getInteractionTypes();
+        for (String fileName : getFileNames()) {
+            int before = ppis.size();
+            loadUniProtPPIs(DecompressingInputStream.open(new File(fileName)), types, ppis, taxa);
+            logger.info("PPIs for taxa " + Arrays.toString(taxa) + " from " + fileName + ": " + (ppis.size() - before));
+        }
+        return ppis;
+    }
+
+    /**
+     * Load PPIs in UniProt ids from a MITAB stream for a species.
+     * @param is the stream, which is closed after loading
+     * @param types PSI-MI ids of interaction types to be used
+     * @param ppis loaded PPIs are added into this set
+     * @param taxa taxon ids of the species. Both interactors should be in one of them.
+     * @throws IOException
+     */
+    void loadUniProtPPIs(InputStream is,
+                         List<String> types,
+                         Set<String> ppis,
+                         int... taxa) throws IOException {
+        try (MITabScanner scanner = new MITabScanner(is)) {
+            while (scanner.nextLine()) {
+                if (!isInTaxa(scanner.getTaxonA(), taxa) || !isInTaxa(scanner.getTaxonB(), taxa))
+                    continue;
+                if (!scanner.hasInteractionType(types))
+                    continue;
+                String ppi = getPPI(scanner.getUniProtA(), scanner.getUniProtB());
+                if (ppi != null)
+                    ppis.add(ppi);
+            }
+        }
+    }
+
+    private boolean isInTaxa(int taxon, int[] taxa) {
+        for (int t : taxa) {
+            if (t == taxon)
+                return true;
+        }
+        return false;
+    }
+
+}
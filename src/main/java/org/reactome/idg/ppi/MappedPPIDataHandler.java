@@ -1,9 +1,17 @@
 package org.reactome.idg.ppi;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 import org.apache.log4j.Logger;
 import org.reactome.idg.annotations.FeatureDesc;
@@ -14,22 +22,30 @@ import org.reactome.idg.util.ApplicationConfig;
 
 /**
  * This class is used to map MOD PPIs to human. For convenience, human PPIs without mapping
- * should be loaded using this class too.
+ * should be loaded using this class too. PPIs for different species can be loaded at the same
+ * time by multiple threads using one object, which loads the shared UniProt to gene map once. MOD PPIs of all
+ * species are mapped by one shared pool of threads, which should be released by shutdown() after loading.
  * @author wug
  */
 @SuppressWarnings("unchecked") 
 public class MappedPPIDataHandler extends PPIDataHandler {
     private static Logger logger = Logger.getLogger(MappedPPIDataHandler.class);
     private PPIDataHandler biogridHandler = new BioGridHandler();
-    private PPIDataHandler stringDBHandler = new StringDBHandler();
+    private StringDBHandler stringDBHandler = new StringDBHandler();
 //    private OrthologousMapper mapper = new EnsemblOrthologousMapper();
     private OrthologousMapper mapper = new PantherOrthologousMapper();
     private Map<String, String> uniprotToGene;
     private boolean useUniProt = false;
+    // Shared by HumanOrthologFanOut objects of all species so that the number of threads is bounded
+    private ExecutorService fanOutExecutor;
     
     public MappedPPIDataHandler() {
     }
     
+    /**
+     * Load human PPIs merged from BioGrid, StringDB and BioPlex. PPIs from IntAct and MINT are merged only
+     * when intact.dir is configured. Since they are optional, they are not listed in the FeatureDesc.
+     */
     @Override
     @FeatureDesc(sources = {FeatureSource.BioGrid, FeatureSource.StringDB, FeatureSource.BioPlex},
                  type = FeatureType.Protein_Interaction)
@@ -40,7 +56,32 @@ public class MappedPPIDataHandler extends PPIDataHandler {
         logger.info("Total human PPIs from StringDB: " + sPPIs.size());
         Set<String> bpPPIs = new BioPlexHandler().loadHumanPPIs();
         logger.info("Total human PPIs from BioPlex: " + bpPPIs.size());
-        return mergePPIs(bPPIs, sPPIs, bpPPIs);
+        Set<String> merged = null;
+        IntActHandler intActHandler = new IntActHandler();
+        if (intActHandler.isConfigured()) {
+            Set<String> iPPIs = intActHandler.loadHumanPPIs(getUniProtToGene());
+            logger.info("Total human PPIs from IntAct/MINT: " + iPPIs.size());
+            merged = mergePPIs(bPPIs, sPPIs, bpPPIs, iPPIs);
+            logger.info("Human PPIs merged from BioGrid, StringDB, BioPlex, IntAct and MINT.");
+        }
+        else
+            merged = mergePPIs(bPPIs, sPPIs, bpPPIs);
+        // No mapping is needed for human. Therefore, there is nothing to refresh from a snapshot.
+        return merged;
+    }
+    
+    /**
+     * Load human PPIs for StringDB channels configured by stringdb.channels. Call this after loadHumanPPIs()
+     * so that these PPIs are collected in the same scan of the StringDB human file.
+     * @return channel to PPIs in gene names
+     * @throws IOException
+     */
+    @FeatureDesc(sources = {FeatureSource.StringDB},
+                 type = FeatureType.Protein_Interaction)
+    public Map<String, Set<String>> loadStringDBChannelPPIs() throws IOException {
+        Map<String, Set<String>> channelToPPIs = stringDBHandler.loadHumanChannelPPIs();
+        channelToPPIs.forEach((channel, ppis) -> logger.info("Total human PPIs from StringDB " + channel + ": " + ppis.size()));
+        return channelToPPIs;
     }
     
     @Override
@@ -53,7 +94,7 @@ public class MappedPPIDataHandler extends PPIDataHandler {
         Set<String> sPPIs = stringDBHandler.loadFlyPPIs();
         logger.info("Total fly PPIs from StringDB: " + sPPIs.size());
         Set<String> merged = mergePPIs(bPPIs, sPPIs);
-        return mapMODPPIsToHuman(merged, mapper.loadFlyIdToHumanUniProtMap());
+        return mapMODPPIsToHuman("Fly", merged, mapper.loadFlyIdToHumanUniProtMap());
     }
 
     private Set<String> mergePPIs(Set<String> bPPIs,
@@ -80,7 +121,7 @@ public class MappedPPIDataHandler extends PPIDataHandler {
         Set<String> sPPIs = stringDBHandler.loadYeastPPIs();
         logger.info("Total yeast PPIs from StringDB: " + sPPIs.size());
         Set<String> merged = mergePPIs(bPPIs, sPPIs);
-        return mapMODPPIsToHuman(merged, mapper.loadYeastIdToHumanUniProtMap());
+        return mapMODPPIsToHuman("Yeast", merged, mapper.loadYeastIdToHumanUniProtMap());
     }
 
     @Override
@@ -93,7 +134,7 @@ public class MappedPPIDataHandler extends PPIDataHandler {
         Set<String> sPPIs = stringDBHandler.loadWormPPIs();
         logger.info("Total worm PPIs from StringDB: " + sPPIs.size());
         Set<String> merged = mergePPIs(bPPIs, sPPIs);
-        return mapMODPPIsToHuman(merged, mapper.loadWormIdToHumanUniProtMap());
+        return mapMODPPIsToHuman("Worm", merged, mapper.loadWormIdToHumanUniProtMap());
     }
 
     @FeatureDesc(sources = {FeatureSource.BioGrid, FeatureSource.StringDB},
@@ -108,41 +149,135 @@ public class MappedPPIDataHandler extends PPIDataHandler {
         // Special case for the mouse mapping, which generates a much better coverage
         // than the panther
         OrthologousMapper mapper = new EnsemblOrthologousMapper();
-        return mapMODPPIsToHuman(merged,
+        return mapMODPPIsToHuman("Mouse",
+                                 merged,
                                  mapper.loadMouseIdToHumanUniProtMap());
     }
     
-    private Set<String> mapMODPPIsToHuman(Set<String> modPPIs,
+    private Set<String> mapMODPPIsToHuman(String species,
+                                          Set<String> modPPIs,
                                           Map<String, Set<String>> modIdToHumanUniProtMap) throws IOException {
-        Set<String> humanPPIs = new HashSet<>();
         // We want to map to human genes directly
         Map<String, String> uniprotToGene = getUniProtToGene();
-        for (String modPPI : modPPIs) {
-            String[] sgdIds = modPPI.split("\t");
-            Set<String> humanProt1 = modIdToHumanUniProtMap.get(sgdIds[0]);
-            if (humanProt1 == null || humanProt1.size() == 0)
-                continue;
-            Set<String> humanProt2 = modIdToHumanUniProtMap.get(sgdIds[1]);
-            if (humanProt2 == null || humanProt2.size() == 0)
-                continue;
-            for (String hId1 : humanProt1) {
-                String gene1 = uniprotToGene.get(hId1);
-                for (String hId2 : humanProt2) {
-                    String gene2 = uniprotToGene.get(hId2);
-                    String humanPPI = null;
-                    if (useUniProt)
-                        humanPPI = getPPI(hId1, hId2);
-                    else
-                        humanPPI = getPPI(gene1, gene2);
-                    if (humanPPI != null)
-                        humanPPIs.add(humanPPI);
+        HumanOrthologFanOut fanOut = new HumanOrthologFanOut(modIdToHumanUniProtMap, uniprotToGene, useUniProt);
+        fanOut.setExecutor(getFanOutExecutor());
+        if (getSnapshotDir() != null) {
+            // Counts cached for the previous release are valid only for the same mapping
+            int signature = Objects.hash(modIdToHumanUniProtMap, uniprotToGene, useUniProt);
+            return refreshPPIs(species, modPPIs, fanOut::map, signature);
+        }
+        return fanOut.map(modPPIs);
+    }
+    
+    /**
+     * The directory for snapshots of PPIs from the previous releases, which is configured by
+     * ppi.release.snapshot.dir. Null if the release-diff mode is not used.
+     * @return
+     */
+    private File getSnapshotDir() {
+        String dirName = ApplicationConfig.getConfig().getAppConfig("ppi.release.snapshot.dir");
+        if (dirName == null || dirName.length() == 0)
+            return null;
+        return new File(dirName);
+    }
+    
+    /**
+     * Refresh the human mapped PPIs of a feature from the snapshot of the previous release: only source PPIs
+     * added or removed in the new release are mapped. A mapped PPI is kept if it is mapped from at least one
+     * source PPI, which is tracked by a count in the snapshot. All source PPIs are mapped if there is no snapshot
+     * or the snapshot was generated with a different mapping (i.e. a different signature). Source PPIs and mapped
+     * PPIs with their counts are saved together into one snapshot file, which is replaced atomically.
+     * @param feature
+     * @param sourcePPIs source PPIs in the new release
+     * @param mapper map a source PPI to distinct human PPIs
+     * @param signature
+     * @return human PPIs
+     * @throws IOException
+     */
+    private Set<String> refreshPPIs(String feature,
+                                    Set<String> sourcePPIs,
+                                    Function<String, Set<String>> mapper,
+                                    int signature) throws IOException {
+        File dir = getSnapshotDir();
+        if (!dir.exists())
+            dir.mkdirs();
+        File snapshotFile = new File(dir, feature + "PPI.snapshot");
+        PairSnapshot current = PairSnapshot.create(sourcePPIs);
+        Map<String, Integer> mappedToCount = null;
+        List<PairSnapshot> previous = null;
+        if (snapshotFile.exists()) {
+            try {
+                previous = PairSnapshot.loadAll(snapshotFile);
+            }
+            catch(IOException e) {
+                logger.warn("Cannot load the snapshot for " + feature + " PPIs. All PPIs are mapped: " + e.getMessage());
+            }
+        }
+        if (previous != null && previous.size() == 2) {
+            PairSnapshot mapped = previous.get(1);
+            if (mapped.getSignature() == signature) {
+                PairSnapshot.Delta delta = PairSnapshot.diff(previous.get(0), current);
+                logger.info(feature + " source PPIs compared to the previous release: " + delta);
+                mappedToCount = mapped.getPairToCount();
+                int mappedTotal = mappedToCount.size();
+                int removed = 0;
+                for (String ppi : delta.getRemoved()) {
+                    for (String humanPPI : mapper.apply(ppi)) {
+                        Integer count = mappedToCount.get(humanPPI);
+                        if (count == null) // Should not occur
+                            continue;
+                        if (count == 1) {
+                            mappedToCount.remove(humanPPI);
+                            removed ++;
+                        }
+                        else
+                            mappedToCount.put(humanPPI, count - 1);
+                    }
+                }
+                for (String ppi : delta.getAdded()) {
+                    for (String humanPPI : mapper.apply(ppi))
+                        mappedToCount.merge(humanPPI, 1, Integer::sum);
                 }
+                int added = mappedToCount.size() - mappedTotal + removed;
+                logger.info(feature + " mapped PPIs compared to the previous release: added: " + added + 
+                            ", removed: " + removed + ", total: " + mappedToCount.size());
             }
+            else
+                logger.info("The mapping for " + feature + " PPIs has changed. All PPIs are mapped.");
+        }
+        if (mappedToCount == null) {
+            mappedToCount = new HashMap<>();
+            for (String ppi : sourcePPIs) {
+                for (String humanPPI : mapper.apply(ppi))
+                    mappedToCount.merge(humanPPI, 1, Integer::sum);
+            }
+        }
+        PairSnapshot.save(snapshotFile, Arrays.asList(current, PairSnapshot.create(mappedToCount, signature)));
+        return new HashSet<>(mappedToCount.keySet());
+    }
+    
+    private synchronized ExecutorService getFanOutExecutor() {
+        if (fanOutExecutor == null) {
+            fanOutExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "PPI-fan-out");
+                thread.setDaemon(true); // Don't block the JVM if shutdown() is not called
+                return thread;
+            });
+        }
+        return fanOutExecutor;
+    }
+    
+    /**
+     * Release the threads used to map MOD PPIs. A new pool is created if PPIs are mapped again.
+     */
+    public synchronized void shutdown() {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdownNow();
+            fanOutExecutor = null;
         }
-        return humanPPIs;
     }
     
-    private Map<String, String> getUniProtToGene() throws IOException {
+    private synchronized Map<String, String> getUniProtToGene() throws IOException {
         if (uniprotToGene == null) 
             uniprotToGene = ApplicationConfig.getConfig().getUniProtToGeneMap();
         return uniprotToGene;
@@ -0,0 +1,337 @@
+package org.reactome.idg.ppi;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.reactome.idg.util.AtomicFileOutputStream;
+
+/**
+ * A snapshot of a set of pairs in the format of "id1\tid2" (e.g. PPIs generated by PPIDataHandler.getPPI()),
+ * which is used to find pairs added or removed between two releases of a data source. Ids are saved once in
+ * the sorted order, and each pair is encoded as a long of two id indices, (smaller index << 32 | larger index).
+ * Since id dictionaries are sorted, two snapshots can be re-encoded against the union of their ids without
+ * changing the orders of pairs, and compared by a sorted merge. Optionally a count is attached to each pair
+ * together with a signature, which may be used to check if the counts are still valid. Several snapshots can be
+ * saved into one file.
+ * @author wug
+ *
+ */
+public class PairSnapshot {
+    private static final int MAGIC = 0x50505332; // PPS2
+    private final String[] ids;
+    private final long[] pairs;
+    // Counts of pairs. Null if there is no count.
+    private final int[] counts;
+    private final int signature;
+
+    /**
+     * Pairs added to or removed from a snapshot.
+     */
+    public static class Delta {
+        private final List<String> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        @Override
+        public String toString() {
+            return "added: " + added.size() + ", removed: " + removed.size();
+        }
+    }
+
+    private PairSnapshot(String[] ids, long[] pairs, int[] counts, int signature) {
+        this.ids = ids;
+        this.pairs = pairs;
+        this.counts = counts;
+        this.signature = signature;
+    }
+
+    /**
+     * Create a snapshot for a collection of pairs without counts.
+     * @param pairs
+     * @return
+     */
+    public static PairSnapshot create(Collection<String> pairs) {
+        String[] ids = collectIds(pairs);
+        Map<String, Integer> idToIndex = getIdToIndex(ids);
+        long[] encoded = new long[pairs.size()];
+        int size = 0;
+        for (String pair : pairs)
+            encoded[size ++] = encode(pair, idToIndex);
+        Arrays.sort(encoded);
+        // Remove duplicated pairs (e.g. the same pair in different orders)
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            if (total == 0 || encoded[total - 1] != encoded[i])
+                encoded[total ++] = encoded[i];
+        }
+        return new PairSnapshot(ids, Arrays.copyOf(encoded, total), null, 0);
+    }
+
+    /**
+     * Create a snapshot for pairs and their counts.
+     * @param pairToCount
+     * @param signature
+     * @return
+     */
+    public static PairSnapshot create(Map<String, Integer> pairToCount, int signature) {
+        String[] ids = collectIds(pairToCount.keySet());
+        Map<String, Integer> idToIndex = getIdToIndex(ids);
+        // Sort pairs and keep counts in the same order
+        long[] encoded = new long[pairToCount.size()];
+        Map<Long, Integer> encodedToCount = new HashMap<>();
+        int size = 0;
+        for (String pair : pairToCount.keySet()) {
+            long code = encode(pair, idToIndex);
+            encoded[size ++] = code;
+            encodedToCount.merge(code, pairToCount.get(pair), Integer::sum);
+        }
+        Arrays.sort(encoded);
+        long[] distinct = Arrays.stream(encoded).distinct().toArray();
+        int[] counts = new int[distinct.length];
+        for (int i = 0; i < distinct.length; i++)
+            counts[i] = encodedToCount.get(distinct[i]);
+        return new PairSnapshot(ids, distinct, counts, signature);
+    }
+
+    private static String[] collectIds(Collection<String> pairs) {
+        Set<String> ids = new HashSet<>();
+        for (String pair : pairs) {
+            int index = getDelimiter(pair);
+            ids.add(pair.substring(0, index));
+            ids.add(pair.substring(index + 1));
+        }
+        String[] rtn = ids.toArray(new String[0]);
+        Arrays.sort(rtn);
+        return rtn;
+    }
+
+    private static Map<String, Integer> getIdToIndex(String[] ids) {
+        Map<String, Integer> idToIndex = new HashMap<>();
+        for (int i = 0; i < ids.length; i++)
+            idToIndex.put(ids[i], i);
+        return idToIndex;
+    }
+
+    private static int getDelimiter(String pair) {
+        int index = pair.indexOf('\t');
+        if (index < 0)
+            throw new IllegalArgumentException("Not a pair: " + pair);
+        return index;
+    }
+
+    private static long encode(String pair, Map<String, Integer> idToIndex) {
+        int delimiter = getDelimiter(pair);
+        int index1 = idToIndex.get(pair.substring(0, delimiter));
+        int index2 = idToIndex.get(pair.substring(delimiter + 1));
+        return encode(Math.min(index1, index2), Math.max(index1, index2));
+    }
+
+    private static long encode(int index1, int index2) {
+        return ((long) index1 << 32) | index2;
+    }
+
+    private String decode(long code) {
+        return ids[(int) (code >>> 32)] + "\t" + ids[(int) code];
+    }
+
+    /**
+     * Find pairs in the current snapshot but not in the previous one (added) and pairs in the previous
+     * snapshot but not in the current one (removed).
+     * @param previous
+     * @param current
+     * @return
+     */
+    public static Delta diff(PairSnapshot previous, PairSnapshot current) {
+        // Union of two sorted dictionaries and maps from their indices to the union
+        String[] union = new String[previous.ids.length + current.ids.length];
+        int[] previousToUnion = new int[previous.ids.length];
+        int[] currentToUnion = new int[current.ids.length];
+        int total = 0;
+        int i = 0, j = 0;
+        while (i < previous.ids.length || j < current.ids.length) {
+            int compare;
+            if (i == previous.ids.length)
+                compare = 1;
+            else if (j == current.ids.length)
+                compare = -1;
+            else
+                compare = previous.ids[i].compareTo(current.ids[j]);
+            if (compare <= 0)
+                previousToUnion[i ++] = total;
+            if (compare >= 0)
+                currentToUnion[j ++] = total;
+            union[total ++] = compare <= 0 ? previous.ids[i - 1] : current.ids[j - 1];
+        }
+        // Re-encoded pairs keep their orders since index maps are monotonic
+        Delta delta = new Delta();
+        i = 0;
+        j = 0;
+        while (i < previous.pairs.length || j < current.pairs.length) {
+            long previousCode = i < previous.pairs.length ? remap(previous.pairs[i], previousToUnion) : Long.MAX_VALUE;
+            long currentCode = j < current.pairs.length ? remap(current.pairs[j], currentToUnion) : Long.MAX_VALUE;
+            if (previousCode == currentCode) {
+                i ++;
+                j ++;
+            }
+            else if (previousCode < currentCode) {
+                delta.removed.add(union[(int) (previousCode >>> 32)] + "\t" + union[(int) previousCode]);
+                i ++;
+            }
+            else {
+                delta.added.add(union[(int) (currentCode >>> 32)] + "\t" + union[(int) currentCode]);
+                j ++;
+            }
+        }
+        return delta;
+    }
+
+    private static long remap(long code, int[] indexMap) {
+        return encode(indexMap[(int) (code >>> 32)], indexMap[(int) code]);
+    }
+
+    public int size() {
+        return pairs.length;
+    }
+
+    public int getSignature() {
+        return signature;
+    }
+
+    public boolean hasCounts() {
+        return counts != null;
+    }
+
+    public Set<String> getPairs() {
+        Set<String> rtn = new HashSet<>();
+        for (long code : pairs)
+            rtn.add(decode(code));
+        return rtn;
+    }
+
+    /**
+     * @return a map from pairs to counts. All counts are 1 if there is no count in this snapshot.
+     */
+    public Map<String, Integer> getPairToCount() {
+        Map<String, Integer> rtn = new HashMap<>();
+        for (int i = 0; i < pairs.length; i++)
+            rtn.put(decode(pairs[i]), counts == null ? 1 : counts[i]);
+        return rtn;
+    }
+
+    public void save(File file) throws IOException {
+        save(file, Collections.singletonList(this));
+    }
+
+    /**
+     * Save several snapshots (e.g. pairs from a source and pairs mapped from them) into one file, which is
+     * replaced atomically so that the snapshots in a file are always consistent with each other.
+     * @param file
+     * @param snapshots
+     * @throws IOException
+     */
+    public static void save(File file, List<PairSnapshot> snapshots) throws IOException {
+        try (AtomicFileOutputStream os = new AtomicFileOutputStream(file)) {
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            dos.writeInt(snapshots.size());
+            for (PairSnapshot snapshot : snapshots)
+                snapshot.write(dos);
+            dos.flush();
+            os.commit();
+        }
+    }
+
+    private void write(DataOutputStream dos) throws IOException {
+        dos.writeInt(signature);
+        dos.writeBoolean(counts != null);
+        dos.writeInt(ids.length);
+        for (String id : ids)
+            dos.writeUTF(id);
+        dos.writeInt(pairs.length);
+        for (long code : pairs)
+            dos.writeLong(code);
+        if (counts != null) {
+            for (int count : counts)
+                dos.writeInt(count);
+        }
+    }
+
+    /**
+     * Load the first snapshot in a file.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PairSnapshot load(File file) throws IOException {
+        return loadAll(file).get(0);
+    }
+
+    /**
+     * Load all snapshots saved in a file by save(File, List).
+     * @param file
+     * @return
+     * @throws IOException if the file is not a valid snapshot file
+     */
+    public static List<PairSnapshot> loadAll(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != MAGIC)
+                throw new IOException(file.getName() + " is not a pair snapshot file.");
+            int total = readCount(dis, file);
+            if (total == 0)
+                throw new IOException(file.getName() + " has no snapshot.");
+            List<PairSnapshot> snapshots = new ArrayList<>();
+            for (int i = 0; i < total; i++)
+                snapshots.add(read(dis, file));
+            return snapshots;
+        }
+    }
+
+    private static PairSnapshot read(DataInputStream dis, File file) throws IOException {
+        int signature = dis.readInt();
+        boolean hasCounts = dis.readBoolean();
+        String[] ids = new String[readCount(dis, file)];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = dis.readUTF();
+        long[] pairs = new long[readCount(dis, file)];
+        for (int i = 0; i < pairs.length; i++)
+            pairs[i] = dis.readLong();
+        int[] counts = null;
+        if (hasCounts) {
+            counts = new int[pairs.length];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = dis.readInt();
+        }
+        return new PairSnapshot(ids, pairs, counts, signature);
+    }
+
+    /**
+     * Read a count, which cannot be larger than the file length in a valid file.
+     */
+    private static int readCount(DataInputStream dis, File file) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > file.length())
+            throw new IOException("Invalid count in " + file.getName() + ": " + count);
+        return count;
+    }
+
+}
@@ -0,0 +1,290 @@
+package org.reactome.idg.ppi;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.reactome.idg.util.AtomicFileOutputStream;
+import org.reactome.idg.util.DecompressingInputStream;
+import org.reactome.idg.util.DelimitedLineScanner;
+
+/**
+ * This class is used to index a Panther HUMAN_RefGenomeOrthologs file for all species in one pass. Human
+ * UniProt ids are saved once and referred by int indices. For each species (keyed by the prefix before
+ * "|" in the second column, e.g. YEAST), MOD UniProt ids are sorted and the human indices of each MOD id are
+ * saved in a CSR-like int array. The index is saved into a binary file, whose int arrays are memory-mapped
+ * when the file is opened. The layout of the file: magic, header length, header (human ids, then for each
+ * species: name, MOD ids, number of pairs and the start of its ints), and then ints for each species: offsets
+ * (number of MOD ids + 1) and human indices.
+ * @author wug
+ *
+ */
+public class PantherOrthologIndex {
+    private static final Logger logger = Logger.getLogger(PantherOrthologIndex.class);
+    private static final int MAGIC = 0x504F4931; // POI1
+    private final String[] humanIds;
+    private final Map<String, Species> nameToSpecies;
+    private final IntBuffer ints;
+
+    private static class Species {
+        private String[] modIds; // Sorted
+        // Ints for this species in the mapped buffer
+        private int intStart;
+    }
+
+    private PantherOrthologIndex(String[] humanIds,
+                                 Map<String, Species> nameToSpecies,
+                                 IntBuffer ints) {
+        this.humanIds = humanIds;
+        this.nameToSpecies = nameToSpecies;
+        this.ints = ints;
+    }
+
+    /**
+     * Build an index file from a Panther ortholog file in one pass.
+     * @param mapFile
+     * @param indexFile
+     * @throws IOException
+     */
+    public static void build(File mapFile, File indexFile) throws IOException {
+        logger.info("Building the Panther ortholog index for " + mapFile.getName() + "...");
+        long time1 = System.currentTimeMillis();
+        Map<String, Integer> humanIdToIndex = new HashMap<>();
+        List<String> humanIds = new ArrayList<>();
+        // Species -> MOD id -> human indices
+        Map<String, Map<String, Set<Integer>>> speciesToMap = new LinkedHashMap<>();
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(DecompressingInputStream.open(mapFile), '\t')) {
+            while (scanner.nextLine()) {
+                if (!scanner.nextField())
+                    continue;
+                String human = scanner.getField();
+                if (!scanner.nextField())
+                    continue;
+                String mod = scanner.getField();
+                int index = mod.indexOf("|");
+                if (index < 0)
+                    continue;
+                String species = mod.substring(0, index);
+                String humanId = extractId(human);
+                String modId = extractId(mod);
+                Integer humanIndex = humanIdToIndex.get(humanId);
+                if (humanIndex == null) {
+                    humanIndex = humanIds.size();
+                    humanIdToIndex.put(humanId, humanIndex);
+                    humanIds.add(humanId);
+                }
+                speciesToMap.computeIfAbsent(species, key -> new HashMap<>())
+                            .computeIfAbsent(modId, key -> new HashSet<>())
+                            .add(humanIndex);
+            }
+        }
+        // Header first so that the start of ints is known
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream hos = new DataOutputStream(header);
+        hos.writeInt(humanIds.size());
+        for (String humanId : humanIds)
+            writeString(hos, humanId);
+        hos.writeInt(speciesToMap.size());
+        int intStart = 0;
+        List<String[]> speciesModIds = new ArrayList<>();
+        for (String species : speciesToMap.keySet()) {
+            Map<String, Set<Integer>> modToHuman = speciesToMap.get(species);
+            String[] modIds = modToHuman.keySet().toArray(new String[0]);
+            Arrays.sort(modIds);
+            speciesModIds.add(modIds);
+            writeString(hos, species);
+            hos.writeInt(modIds.length);
+            for (String modId : modIds)
+                writeString(hos, modId);
+            int pairs = modToHuman.values().stream().mapToInt(Set::size).sum();
+            hos.writeInt(pairs);
+            hos.writeInt(intStart);
+            intStart += modIds.length + 1 + pairs;
+        }
+        hos.close();
+        // Align ints to 4 bytes
+        while ((8 + header.size()) % 4 != 0)
+            header.write(0);
+        try (AtomicFileOutputStream os = new AtomicFileOutputStream(indexFile)) {
+            DataOutputStream dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            dos.writeInt(header.size());
+            header.writeTo(dos);
+            int i = 0;
+            for (String species : speciesToMap.keySet()) {
+                Map<String, Set<Integer>> modToHuman = speciesToMap.get(species);
+                String[] modIds = speciesModIds.get(i ++);
+                int offset = 0;
+                dos.writeInt(offset);
+                for (String modId : modIds) {
+                    offset += modToHuman.get(modId).size();
+                    dos.writeInt(offset);
+                }
+                for (String modId : modIds) {
+                    int[] indices = modToHuman.get(modId).stream().mapToInt(Integer::intValue).sorted().toArray();
+                    for (int index : indices)
+                        dos.writeInt(index);
+                }
+            }
+            dos.flush();
+            os.commit();
+        }
+        long time2 = System.currentTimeMillis();
+        logger.info("Saved into " + indexFile.getName() + " for " + speciesToMap.size() + " species: " +
+                    (time2 - time1) / 1000.0d + " seconds.");
+    }
+
+    private static void writeString(DataOutputStream dos, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    /**
+     * Extract the UniProt id from a token like HUMAN|HGNC=11477|UniProtKB=Q6GZX4.
+     */
+    private static String extractId(String token) {
+        String[] tokens = token.split("\\|");
+        if (tokens.length != 3)
+            throw new IllegalStateException(token + " doesn't have three tokens!");
+        int index = tokens[2].indexOf("=");
+        return tokens[2].substring(index + 1);
+    }
+
+    private static String readString(DataInputStream dis, long length) throws IOException {
+        byte[] bytes = new byte[readCount(dis, length)];
+        dis.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a count, which cannot be larger than the file length in a valid file.
+     */
+    private static int readCount(DataInputStream dis, long length) throws IOException {
+        int count = dis.readInt();
+        if (count < 0 || count > length)
+            throw new IOException("Invalid count in the index file: " + count);
+        return count;
+    }
+
+    /**
+     * Open an index file. Ints are memory-mapped. The magic number, counts in the header and the file length
+     * are checked so that a truncated or corrupted file is reported by an IOException.
+     * @param indexFile
+     * @return
+     * @throws IOException
+     */
+    public static PantherOrthologIndex open(File indexFile) throws IOException {
+        String[] humanIds;
+        Map<String, Species> nameToSpecies = new LinkedHashMap<>();
+        long length = indexFile.length();
+        long offset;
+        long totalInts = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (length < 8 || dis.readInt() != MAGIC)
+                throw new IOException(indexFile.getName() + " is not a Panther ortholog index file.");
+            int headerLength = readCount(dis, length);
+            offset = 8L + headerLength;
+            humanIds = new String[readCount(dis, length)];
+            for (int i = 0; i < humanIds.length; i++)
+                humanIds[i] = readString(dis, length);
+            int total = readCount(dis, length);
+            for (int i = 0; i < total; i++) {
+                String name = readString(dis, length);
+                Species species = new Species();
+                species.modIds = new String[readCount(dis, length)];
+                for (int j = 0; j < species.modIds.length; j++)
+                    species.modIds[j] = readString(dis, length);
+                int pairs = readCount(dis, length);
+                species.intStart = readCount(dis, length);
+                if (species.intStart != totalInts)
+                    throw new IOException("Invalid start of ints for " + name + " in " + indexFile.getName());
+                totalInts += species.modIds.length + 1 + pairs;
+                nameToSpecies.put(name, species);
+            }
+        }
+        if (offset + totalInts * 4 != length)
+            throw new IOException(indexFile.getName() + " should have " + (offset + totalInts * 4) + 
+                                  " bytes but has " + length + " bytes.");
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         offset,
+                                         channel.size() - offset).asIntBuffer();
+            return new PantherOrthologIndex(humanIds, nameToSpecies, ints);
+        }
+    }
+
+    public Set<String> getSpeciesNames() {
+        return nameToSpecies.keySet();
+    }
+
+    public String getHumanId(int index) {
+        return humanIds[index];
+    }
+
+    public int getNumberOfHumanIds() {
+        return humanIds.length;
+    }
+
+    /**
+     * Get the indices of human ids mapped to a MOD id.
+     * @param speciesName
+     * @param modId
+     * @return an empty array if the MOD id is not mapped.
+     */
+    public int[] getHumanIndices(String speciesName, String modId) {
+        Species species = nameToSpecies.get(speciesName);
+        if (species == null)
+            return new int[0];
+        int index = Arrays.binarySearch(species.modIds, modId);
+        if (index < 0)
+            return new int[0];
+        int start = ints.get(species.intStart + index);
+        int end = ints.get(species.intStart + index + 1);
+        int base = species.intStart + species.modIds.length + 1;
+        int[] rtn = new int[end - start];
+        for (int i = start; i < end; i++)
+            rtn[i - start] = ints.get(base + i);
+        return rtn;
+    }
+
+    /**
+     * Get the map from MOD UniProt ids to human UniProt ids for a species.
+     * @param speciesName
+     * @return an empty map if the species is not in the index
+     */
+    public Map<String, Set<String>> getModIdToHumanIdMap(String speciesName) {
+        Map<String, Set<String>> rtn = new HashMap<>();
+        Species species = nameToSpecies.get(speciesName);
+        if (species == null)
+            return rtn;
+        int base = species.intStart + species.modIds.length + 1;
+        for (int i = 0; i < species.modIds.length; i++) {
+            int start = ints.get(species.intStart + i);
+            int end = ints.get(species.intStart + i + 1);
+            Set<String> humanSet = new HashSet<>();
+            for (int j = start; j < end; j++)
+                humanSet.add(humanIds[ints.get(base + j)]);
+            rtn.put(species.modIds[i], humanSet);
+        }
+        return rtn;
+    }
+
+}
@@ -1,75 +1,91 @@
 package org.reactome.idg.ppi;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import org.gk.util.FileUtilities;
+import org.apache.log4j.Logger;
 import org.reactome.idg.util.ApplicationConfig;
 
+/**
+ * Map MOD proteins to human proteins based on the Panther ortholog file. All species are loaded from
+ * a PantherOrthologIndex, which is built in one pass over the file when it is used for the first time
+ * or the file is updated.
+ * @author wug
+ *
+ */
 public class PantherOrthologousMapper implements OrthologousMapper {
+    private static final Logger logger = Logger.getLogger(PantherOrthologousMapper.class);
     private final String MAP_FILE = ApplicationConfig.getConfig().getAppConfig("panther.orthologous.map");
-    private final FileUtilities fu = new FileUtilities();
+    private PantherOrthologIndex index;
     
     public PantherOrthologousMapper() {
     }
     
     public Map<String, Set<String>> loadYeastIdToHumanUniProtMap() throws IOException {
         String speciesName = ApplicationConfig.getConfig().getAppConfig("panther.yeast.name");
-        return loadMODToHumanProtMap(speciesName, 2);
+        return loadMODToHumanProtMap(speciesName);
     }
     
     public Map<String, Set<String>> loadFissionYeastIdToHumanUniProtMap() throws IOException {
         String speciesName = ApplicationConfig.getConfig().getAppConfig("panther.fission.yeast.name");
-        return loadMODToHumanProtMap(speciesName, 2);
+        return loadMODToHumanProtMap(speciesName);
     }
     
     public Map<String, Set<String>> loadMouseIdToHumanUniProtMap() throws IOException {
         String speciesName = ApplicationConfig.getConfig().getAppConfig("panther.mouse.name");
-        return loadMODToHumanProtMap(speciesName, 2);
+        return loadMODToHumanProtMap(speciesName);
     }
     
     public Map<String, Set<String>> loadFlyIdToHumanUniProtMap() throws IOException {
         String speciesName = ApplicationConfig.getConfig().getAppConfig("panther.fly.name");
-        return loadMODToHumanProtMap(speciesName, 2);
+        return loadMODToHumanProtMap(speciesName);
     }
     
     public Map<String, Set<String>> loadWormIdToHumanUniProtMap() throws IOException {
         String speciesName = ApplicationConfig.getConfig().getAppConfig("panther.worm.name");
 //        String text = ApplicationConfig.getConfig().getAppConfig("panther.worm.index");
-        return loadMODToHumanProtMap(speciesName, 2);
+        return loadMODToHumanProtMap(speciesName);
     }
 
-    private Map<String, Set<String>> loadMODToHumanProtMap(String speciesName,
-                                                           int modIdIndex) throws IOException {
-        fu.setInput(MAP_FILE);
-        String line = null;
-        Map<String, Set<String>> yeastToHuman = new HashMap<>();
-        while ((line = fu.readLine()) != null) {
-            String[] tokens = line.split("\t");
-            if (!tokens[1].startsWith(speciesName))
-                continue;
-            String humanId = extractId(tokens[0], 2);
-            String yeastId = extractId(tokens[1], modIdIndex);
-            yeastToHuman.compute(yeastId, (key, set) -> {
-                if (set == null)
-                    set = new HashSet<>();
-                set.add(humanId);
-                return set;
-            });
-        }
-        fu.close();
-        return yeastToHuman;
+    private Map<String, Set<String>> loadMODToHumanProtMap(String speciesName) throws IOException {
+        return getIndex().getModIdToHumanIdMap(speciesName);
     }
     
-    private String extractId(String token, int tokenIndex) {
-        String[] tokens = token.split("\\|");
-        if (tokens.length != 3)
-            throw new IllegalStateException(token + " doesn't have three tokens!");
-        int index = tokens[tokenIndex].indexOf("=");
-        return tokens[tokenIndex].substring(index + 1);
+    /**
+     * Get the index for the Panther file. The index file is configured by panther.orthologous.index. If it is
+     * not configured, the index is built into a temporary file for this run so that nothing is written into
+     * the dataset directory. An index older than the Panther file or failing the check in open() is rebuilt.
+     * @return
+     * @throws IOException
+     */
+    private synchronized PantherOrthologIndex getIndex() throws IOException {
+        if (index != null)
+            return index;
+        File mapFile = new File(MAP_FILE);
+        String indexName = ApplicationConfig.getConfig().getAppConfig("panther.orthologous.index");
+        File indexFile = null;
+        if (indexName == null || indexName.length() == 0) {
+            indexFile = File.createTempFile(mapFile.getName() + ".", ".idx");
+            indexFile.deleteOnExit();
+        }
+        else {
+            indexFile = new File(indexName);
+            if (indexFile.exists() && indexFile.lastModified() >= mapFile.lastModified()) {
+                try {
+                    index = PantherOrthologIndex.open(indexFile);
+                    logger.info("Using the Panther ortholog index " + indexFile.getName());
+                    return index;
+                }
+                catch(IOException e) {
+                    logger.warn("Rebuilding the Panther ortholog index: " + e.getMessage());
+                }
+            }
+        }
+        PantherOrthologIndex.build(mapFile, indexFile);
+        index = PantherOrthologIndex.open(indexFile);
+        return index;
     }
 
 }
@@ -2,30 +2,108 @@ package org.reactome.idg.ppi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.gk.util.FileUtilities;
 import org.reactome.idg.util.ApplicationConfig;
+import org.reactome.idg.util.StringDBLinksScanner;
 
 public class StringDBHandler extends PPIDataHandler {
     private final String EXP_CHANNEL_NAME = "experiments";
     private final ApplicationConfig config = ApplicationConfig.getConfig();
     private final String DIR = config.getAppConfig("stringdb.dir");
+    // PPIs in the configured channels collected together with loadHumanPPIs()
+    private Map<String, Set<String>> humanChannelToPPIs;
     
     public StringDBHandler() {
     }
     
     /**
      * Gene names are directly loaded into the set. So there is no need for mapping. However,
-     * UniProt ids are used for non-human species.
+     * UniProt ids are used for non-human species. If extra channels are configured by stringdb.channels,
+     * they are collected in the same scan of the file and kept for loadHumanChannelPPIs().
      */
-    public Set<String> loadHumanPPIs() throws IOException {
+    public synchronized Set<String> loadHumanPPIs() throws IOException {
         String ppiFile = DIR + File.separator + config.getAppConfig("stringdb.human.file");
         String mapFile = DIR + File.separator + config.getAppConfig("stringdb.human.map");
-        return loadModPPIs(ppiFile, mapFile);
+        Map<String, Integer> channelToThreshold = getConfiguredChannels();
+        if (channelToThreshold.size() == 0)
+            return loadModPPIs(ppiFile, mapFile);
+        List<String> channels = new ArrayList<>();
+        channels.add(EXP_CHANNEL_NAME);
+        channels.addAll(channelToThreshold.keySet());
+        int[] thresholds = new int[channels.size()];
+        for (int i = 1; i < channels.size(); i++)
+            thresholds[i] = channelToThreshold.get(channels.get(i));
+        List<Set<String>> channelPPIs = loadPPIsBasedOnChannels(ppiFile, mapFile, channels, thresholds);
+        humanChannelToPPIs = new LinkedHashMap<>();
+        for (int i = 1; i < channels.size(); i++)
+            humanChannelToPPIs.put(channels.get(i), channelPPIs.get(i));
+        return channelPPIs.get(0);
+    }
+    
+    /**
+     * Load human PPIs in gene names for the channels configured by stringdb.channels. If loadHumanPPIs() has
+     * been called, PPIs collected in its scan are returned and released from this object. Otherwise, the human
+     * file is scanned once for all configured channels.
+     * @return channel to PPIs in the configured order. Empty if no channel is configured.
+     * @throws IOException
+     */
+    public synchronized Map<String, Set<String>> loadHumanChannelPPIs() throws IOException {
+        Map<String, Set<String>> rtn = humanChannelToPPIs;
+        humanChannelToPPIs = null;
+        if (rtn != null)
+            return rtn;
+        Map<String, Integer> channelToThreshold = getConfiguredChannels();
+        if (channelToThreshold.size() == 0)
+            return Collections.emptyMap();
+        List<String> channels = new ArrayList<>(channelToThreshold.keySet());
+        int[] thresholds = channels.stream().mapToInt(channelToThreshold::get).toArray();
+        String ppiFile = DIR + File.separator + config.getAppConfig("stringdb.human.file");
+        String mapFile = DIR + File.separator + config.getAppConfig("stringdb.human.map");
+        List<Set<String>> channelPPIs = loadPPIsBasedOnChannels(ppiFile, mapFile, channels, thresholds);
+        rtn = new LinkedHashMap<>();
+        for (int i = 0; i < channels.size(); i++)
+            rtn.put(channels.get(i), channelPPIs.get(i));
+        return rtn;
+    }
+    
+    /**
+     * @return channels and their thresholds configured by stringdb.channels
+     */
+    private Map<String, Integer> getConfiguredChannels() {
+        return parseChannels(config.getAppConfig("stringdb.channels"));
+    }
+    
+    /**
+     * Parse channels in the format of channel:threshold separated by commas, e.g. database:0,textmining:400.
+     * The threshold is 0 if it is not specified.
+     * @param text
+     * @return channel to threshold in the listed order. Empty for null or an empty text.
+     */
+    static Map<String, Integer> parseChannels(String text) {
+        Map<String, Integer> channelToThreshold = new LinkedHashMap<>();
+        if (text == null || text.trim().length() == 0)
+            return channelToThreshold;
+        for (String token : text.split(",")) {
+            token = token.trim();
+            if (token.length() == 0)
+                continue;
+            int index = token.indexOf(':');
+            if (index < 0)
+                channelToThreshold.put(token, 0);
+            else
+                channelToThreshold.put(token.substring(0, index).trim(),
+                                       Integer.parseInt(token.substring(index + 1).trim()));
+        }
+        return channelToThreshold;
     }
     
     public Set<String> loadFlyPPIs() throws IOException {
@@ -53,14 +131,55 @@ public class StringDBHandler extends PPIDataHandler {
     }
 
     private Set<String> loadModPPIs(String ppiFileName, String mapFileName) throws IOException {
-        Set<String> mousePPIs = grepPPIsBasedOnChannel(ppiFileName, EXP_CHANNEL_NAME);
+        List<Set<String>> channelPPIs = loadPPIsBasedOnChannels(ppiFileName,
+                                                                mapFileName,
+                                                                Collections.singletonList(EXP_CHANNEL_NAME),
+                                                                new int[]{0});
+        return channelPPIs.get(0);
+    }
+    
+    /**
+     * Load mapped PPIs for several channels by scanning the PPI file once.
+     * @param ppiFileName a protein.links.full file
+     * @param mapFileName the file mapping StringDB ids to UniProt ids or gene names
+     * @param channels names of channels in the header of the PPI file. The same channel may be listed more than once.
+     * @param thresholds a pair is collected for a channel if its score is above the channel's threshold
+     * @return mapped PPIs in the order of channels
+     * @throws IOException
+     */
+    List<Set<String>> loadPPIsBasedOnChannels(String ppiFileName,
+                                              String mapFileName,
+                                              List<String> channels,
+                                              int[] thresholds) throws IOException {
+        List<Set<String>> channelPPIs = grepPPIsBasedOnChannels(ppiFileName, channels, thresholds);
         Map<String, String> stringDBToUniprot = loadStringIdToUniProt(mapFileName);
+        // The same raw PPI is usually collected by several channels. Map it once and share the mapped String.
+        Map<String, String> ppiToMapped = channels.size() > 1 ? new HashMap<>() : null;
+        List<Set<String>> rtn = new ArrayList<>();
+        for (Set<String> ppis : channelPPIs) {
+            rtn.add(mapPPIs(ppis, stringDBToUniprot, ppiToMapped));
+            ppis.clear(); // Release the raw PPIs as early as possible
+        }
+        return rtn;
+    }
+    
+    private Set<String> mapPPIs(Set<String> ppis,
+                                Map<String, String> stringDBToUniprot,
+                                Map<String, String> ppiToMapped) {
         Set<String> rtn = new HashSet<>();
-        for (String ppi : mousePPIs) {
+        for (String ppi : ppis) {
+            if (ppiToMapped != null && ppiToMapped.containsKey(ppi)) {
+                String mapped = ppiToMapped.get(ppi);
+                if (mapped != null)
+                    rtn.add(mapped);
+                continue;
+            }
             String[] tokens = ppi.split("\t");
             String id1 = stringDBToUniprot.get(tokens[0]);
             String id2 = stringDBToUniprot.get(tokens[1]);
             String mapped = getPPI(id1, id2);
+            if (ppiToMapped != null)
+                ppiToMapped.put(ppi, mapped);
             if (mapped != null)
                 rtn.add(mapped);
         }
@@ -86,35 +205,49 @@ public class StringDBHandler extends PPIDataHandler {
         return stringDBIDToUniProt;
     }
     
-    private Set<String> grepPPIsBasedOnChannel(String fileName, 
-                                               String channel) throws IOException {
-        FileUtilities fu = new FileUtilities();
-        fu.setInput(fileName);
-        String line = fu.readLine();
-        // Get the index of the channel
-        String[] tokens = line.split(" ");
-        int channelIndex = -1;
-        for (int i = 0; i < tokens.length; i++) {
-            if (channel.equalsIgnoreCase(tokens[i])) {
-                channelIndex = i;
-                break;
-            }
+    /**
+     * Grep PPIs in StringDB ids for several channels in one scan of the file. Protein ids are decoded
+     * only for lines qualified for at least one channel, and the same PPI String is shared by channels.
+     * @param fileName
+     * @param channels
+     * @param thresholds
+     * @return PPIs in the order of channels
+     * @throws IOException
+     */
+    private List<Set<String>> grepPPIsBasedOnChannels(String fileName,
+                                                      List<String> channels,
+                                                      int[] thresholds) throws IOException {
+        if (channels.size() != thresholds.length)
+            throw new IllegalArgumentException("The numbers of channels and thresholds are different.");
+        StringDBLinksScanner scanner = null;
+        try {
+            scanner = StringDBLinksScanner.open(fileName, channels.toArray(new String[0]));
         }
-        if (channelIndex == -1) 
-            throw new IllegalArgumentException(channel + " is not defined in the data file: " + fileName);
-        Set<String> ppis = new HashSet<>();
-        while ((line = fu.readLine()) != null) {
-            tokens = line.split(" ");
-            int channelScore = new Integer(tokens[channelIndex]);
-            if (channelScore > 0) {
-                String ppi = getPPI(tokens[0], tokens[1]);
-                if (ppi == null)
-                    continue; 
-                ppis.add(ppi);
+        catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("Some of " + channels + " are not defined in the data file: " + fileName);
+        }
+        List<Set<String>> channelPPIs = new ArrayList<>();
+        for (int i = 0; i < thresholds.length; i++)
+            channelPPIs.add(new HashSet<>());
+        try {
+            while (scanner.nextLine()) {
+                String ppi = null;
+                for (int i = 0; i < thresholds.length; i++) {
+                    if (scanner.getScore(i) <= thresholds[i])
+                        continue;
+                    if (ppi == null) {
+                        if (scanner.isSelfInteraction())
+                            break;
+                        ppi = getPPI(scanner.getProtein1(), scanner.getProtein2());
+                    }
+                    channelPPIs.get(i).add(ppi);
+                }
             }
         }
-        fu.close();
-        return ppis;
+        finally {
+            scanner.close();
+        }
+        return channelPPIs;
     }
     
 }
@@ -34,7 +34,7 @@ public class ApplicationConfig {
         loadProps(APPLICATION_CONFIG);
     }
     
-    public static ApplicationConfig getConfig() {
+    public static synchronized ApplicationConfig getConfig() {
         if (config == null)
             config = new ApplicationConfig();
         return config;
@@ -0,0 +1,103 @@
+package org.reactome.idg.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This class is used to write a generated file (e.g. a cache or an index) safely. Bytes are written into a
+ * temporary file in the directory of the target file, which is renamed to the target atomically by commit().
+ * If the stream is closed without commit(), e.g. after an exception in a try-with-resources block, the temporary
+ * file is deleted and the target is not touched. Therefore, a file generated by an interrupted run is never
+ * found at the target path.
+ * @author wug
+ *
+ */
+public class AtomicFileOutputStream extends OutputStream {
+    private final File target;
+    private final File temp;
+    private final OutputStream os;
+    private boolean isCommitted;
+    private boolean isClosed;
+
+    public AtomicFileOutputStream(File target) throws IOException {
+        this(target, 1024 * 1024);
+    }
+
+    public AtomicFileOutputStream(File target, int bufferSize) throws IOException {
+        this.target = target;
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (!dir.exists())
+            dir.mkdirs();
+        temp = File.createTempFile(target.getName() + ".", ".tmp", dir);
+        os = new BufferedOutputStream(new FileOutputStream(temp), bufferSize);
+    }
+
+    public File getTarget() {
+        return target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        os.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        os.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        os.flush();
+    }
+
+    /**
+     * Close the temporary file and rename it to the target, replacing an existing one.
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        if (isClosed)
+            throw new IOException("The stream has been closed: " + target.getName());
+        isClosed = true;
+        try {
+            os.close();
+            try {
+                Files.move(temp.toPath(),
+                           target.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            isCommitted = true;
+        }
+        finally {
+            if (!isCommitted)
+                temp.delete();
+        }
+    }
+
+    /**
+     * Discard the written bytes if commit() has not been called.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed)
+            return;
+        isClosed = true;
+        try {
+            os.close();
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+}
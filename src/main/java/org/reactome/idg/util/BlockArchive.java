@@ -0,0 +1,540 @@
+package org.reactome.idg.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An archive of text files (entries) stored in independently deflated blocks of lines, which replaces
+ * a zip file of large processed files. Blocks are compressed by multiple threads, and a block always
+ * ends at a line end. For each entry, the offset of each row (line) in its block is saved so that a range
+ * of rows can be read by inflating only the blocks holding them. The layout:
+ * <pre>
+ * "RBA1"
+ * for each entry: blocks, then an int array of row offsets in their blocks
+ * footer: number of entries, then for each entry: name, number of rows, file offset of row offsets,
+ *         number of blocks, then for each block: file offset, compressed length, uncompressed length,
+ *         CRC32 and the first row
+ * file offset of the footer (long), "RBA1"
+ * </pre>
+ * @author wug
+ *
+ */
+public class BlockArchive implements Closeable {
+    private static final byte[] MAGIC = "RBA1".getBytes(StandardCharsets.US_ASCII);
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    private final File file;
+    private final FileChannel channel;
+    private final Map<String, Entry> nameToEntry;
+
+    private static class Entry {
+        private String name;
+        private long rows;
+        private long rowIndexOffset;
+        private long[] blockOffsets;
+        private int[] compressedLengths;
+        private int[] uncompressedLengths;
+        private int[] crcs;
+        private long[] firstRows;
+    }
+
+    private BlockArchive(File file,
+                         FileChannel channel,
+                         Map<String, Entry> nameToEntry) {
+        this.file = file;
+        this.channel = channel;
+        this.nameToEntry = nameToEntry;
+    }
+
+    public static BlockArchive open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < MAGIC.length * 2 + 8)
+                throw new IOException("Not a block archive: " + file.getName());
+            ByteBuffer tail = ByteBuffer.allocate(8 + MAGIC.length);
+            readFully(channel, tail, size - tail.capacity());
+            long footerOffset = tail.getLong(0);
+            byte[] magic = new byte[MAGIC.length];
+            tail.position(8);
+            tail.get(magic);
+            if (!Arrays.equals(magic, MAGIC))
+                throw new IOException("Not a block archive: " + file.getName());
+            ByteBuffer footer = ByteBuffer.allocate((int) (size - tail.capacity() - footerOffset));
+            readFully(channel, footer, footerOffset);
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            int total = dis.readInt();
+            Map<String, Entry> nameToEntry = new LinkedHashMap<>();
+            for (int i = 0; i < total; i++) {
+                Entry entry = new Entry();
+                byte[] name = new byte[dis.readInt()];
+                dis.readFully(name);
+                entry.name = new String(name, StandardCharsets.UTF_8);
+                entry.rows = dis.readLong();
+                entry.rowIndexOffset = dis.readLong();
+                int blocks = dis.readInt();
+                entry.blockOffsets = new long[blocks];
+                entry.compressedLengths = new int[blocks];
+                entry.uncompressedLengths = new int[blocks];
+                entry.crcs = new int[blocks];
+                entry.firstRows = new long[blocks];
+                for (int j = 0; j < blocks; j++) {
+                    entry.blockOffsets[j] = dis.readLong();
+                    entry.compressedLengths[j] = dis.readInt();
+                    entry.uncompressedLengths[j] = dis.readInt();
+                    entry.crcs[j] = dis.readInt();
+                    entry.firstRows[j] = dis.readLong();
+                }
+                nameToEntry.put(entry.name, entry);
+            }
+            return new BlockArchive(file, channel, nameToEntry);
+        }
+        catch(IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new EOFException("Unexpected end of file.");
+        }
+        buffer.flip();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<String> getEntryNames() {
+        return new ArrayList<>(nameToEntry.keySet());
+    }
+
+    public boolean hasEntry(String name) {
+        return nameToEntry.containsKey(name);
+    }
+
+    public long getNumberOfRows(String name) {
+        return getEntry(name).rows;
+    }
+
+    private Entry getEntry(String name) {
+        Entry entry = nameToEntry.get(name);
+        if (entry == null)
+            throw new IllegalArgumentException("Cannot find entry " + name + " in " + file.getName());
+        return entry;
+    }
+
+    /**
+     * Open a whole entry.
+     * @param name
+     * @return
+     */
+    public InputStream openEntry(String name) throws IOException {
+        Entry entry = getEntry(name);
+        return openRows(name, 0, entry.rows);
+    }
+
+    /**
+     * Open rows in [fromRow, toRow) of an entry. Only blocks holding these rows are read and inflated.
+     * @param name
+     * @param fromRow
+     * @param toRow
+     * @return
+     * @throws IOException
+     */
+    public InputStream openRows(String name, long fromRow, long toRow) throws IOException {
+        Entry entry = getEntry(name);
+        if (fromRow < 0 || toRow > entry.rows || fromRow > toRow)
+            throw new IndexOutOfBoundsException("Wrong rows [" + fromRow + ", " + toRow + ") for " + entry.rows + " rows.");
+        if (fromRow == toRow)
+            return new ByteArrayInputStream(new byte[0]);
+        int firstBlock = getBlock(entry, fromRow);
+        int lastBlock = getBlock(entry, toRow - 1);
+        int start = getRowOffset(entry, fromRow);
+        int end = toRow == entry.rows || getBlock(entry, toRow) != lastBlock ?
+                  entry.uncompressedLengths[lastBlock] : getRowOffset(entry, toRow);
+        return new SliceInputStream(entry, firstBlock, lastBlock, start, end);
+    }
+
+    /**
+     * Read rows in [fromRow, toRow) of an entry as Strings without line ends.
+     */
+    public List<String> readRows(String name, long fromRow, long toRow) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (DelimitedLineScanner scanner = new DelimitedLineScanner(openRows(name, fromRow, toRow), '\n')) {
+            while (scanner.nextLine()) {
+                scanner.nextField();
+                rows.add(scanner.getField());
+            }
+        }
+        return rows;
+    }
+
+    private int getBlock(Entry entry, long row) {
+        int index = Arrays.binarySearch(entry.firstRows, row);
+        if (index >= 0) {
+            // Empty blocks are not written so first rows are unique
+            return index;
+        }
+        return -index - 2;
+    }
+
+    private int getRowOffset(Entry entry, long row) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        readFully(channel, buffer, entry.rowIndexOffset + row * 4);
+        return buffer.getInt(0);
+    }
+
+    private byte[] inflate(Entry entry, int block) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(entry.compressedLengths[block]);
+        readFully(channel, compressed, entry.blockOffsets[block]);
+        byte[] data = new byte[entry.uncompressedLengths[block]];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+            while (length < data.length) {
+                int inflated = inflater.inflate(data, length, data.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                length += inflated;
+            }
+            if (length != data.length)
+                throw new IOException("Wrong block length in " + entry.name + ": " + length);
+        }
+        catch(DataFormatException e) {
+            throw new IOException("Corrupted block in " + entry.name, e);
+        }
+        finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != entry.crcs[block])
+            throw new IOException("CRC mismatch in a block of " + entry.name);
+        return data;
+    }
+
+    /**
+     * Inflate blocks one by one.
+     */
+    private class SliceInputStream extends InputStream {
+        private final Entry entry;
+        private int block;
+        private final int lastBlock;
+        private final int start;
+        private final int end;
+        private byte[] data;
+        private int position;
+        private int limit;
+        private boolean started;
+
+        SliceInputStream(Entry entry, int firstBlock, int lastBlock, int start, int end) {
+            this.entry = entry;
+            this.block = firstBlock - 1;
+            this.lastBlock = lastBlock;
+            this.start = start;
+            this.end = end;
+            this.data = new byte[0];
+        }
+
+        private boolean nextBlock() throws IOException {
+            if (block == lastBlock)
+                return false;
+            block ++;
+            data = inflate(entry, block);
+            position = started ? 0 : start;
+            started = true;
+            limit = block == lastBlock ? end : data.length;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (position == limit) {
+                if (!nextBlock())
+                    return -1;
+            }
+            return data[position ++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            while (position == limit) {
+                if (!nextBlock())
+                    return -1;
+            }
+            int length = Math.min(len, limit - position);
+            System.arraycopy(data, position, b, off, length);
+            position += length;
+            return length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // A compressed block
+    private static class Block {
+        private byte[] compressed;
+        private int compressedLength;
+        private int uncompressedLength;
+        private int crc;
+        private int[] rowOffsets;
+    }
+
+    /**
+     * Used to write an archive. Blocks are compressed by a pool of threads and written in order. The archive
+     * is written into a temporary file, which is renamed to the target by close(). If any entry fails to be
+     * added, close() discards the temporary file so that a partial archive never looks valid.
+     */
+    public static class Writer implements Closeable {
+        private final ExecutorService executor;
+        private final int threads;
+        private final AtomicFileOutputStream afos;
+        private final DataOutputStream os;
+        private long position;
+        private final List<Entry> entries;
+        private boolean isFailed;
+
+        public Writer(File file, int threads) throws IOException {
+            this.threads = threads;
+            afos = new AtomicFileOutputStream(file);
+            os = new DataOutputStream(afos);
+            executor = Executors.newFixedThreadPool(threads);
+            os.write(MAGIC);
+            position = MAGIC.length;
+            entries = new ArrayList<>();
+        }
+
+        public void addEntry(String name, File file) throws IOException {
+            try (InputStream is = new FileInputStream(file)) {
+                addEntry(name, is);
+            }
+        }
+
+        /**
+         * Add the text in the passed stream as an entry. The stream is not closed.
+         * @param name
+         * @param is
+         * @throws IOException
+         */
+        public void addEntry(String name, InputStream is) throws IOException {
+            if (isFailed)
+                throw new IllegalStateException("An entry failed to be added before " + name);
+            try {
+                writeEntry(name, is);
+            }
+            catch(IOException | RuntimeException e) {
+                isFailed = true;
+                throw e;
+            }
+        }
+
+        private void writeEntry(String name, InputStream is) throws IOException {
+            Entry entry = new Entry();
+            entry.name = name;
+            List<Block> blocks = new ArrayList<>();
+            List<Long> blockOffsets = new ArrayList<>();
+            List<Long> firstRows = new ArrayList<>();
+            long rows = 0;
+            BlockingQueue<Future<Block>> futures = new ArrayBlockingQueue<>(threads * 4);
+            byte[] pending = new byte[0]; // Bytes after the last line end
+            int capacity = BLOCK_SIZE;
+            boolean eof = false;
+            while (!eof) {
+                // Read a block of complete lines
+                int length = pending.length;
+                byte[] data = Arrays.copyOf(pending, capacity);
+                int read = 0;
+                while (length < data.length && (read = is.read(data, length, data.length - length)) >= 0)
+                    length += read;
+                eof = length < data.length;
+                int cut = eof ? length : lastIndexOf(data, length) + 1;
+                if (cut == 0 && !eof) {
+                    // A line longer than the block: it gets its own larger block
+                    pending = data;
+                    capacity *= 2;
+                    continue;
+                }
+                pending = Arrays.copyOfRange(data, cut, length);
+                capacity = Math.max(BLOCK_SIZE, pending.length * 2);
+                if (cut == 0)
+                    continue; // Nothing left
+                if (futures.remainingCapacity() == 0)
+                    rows = write(get(futures.poll()), blockOffsets, firstRows, rows, blocks);
+                int blockLength = cut;
+                futures.add(executor.submit(() -> compress(data, blockLength)));
+            }
+            while (futures.size() > 0)
+                rows = write(get(futures.poll()), blockOffsets, firstRows, rows, blocks);
+            // Row offsets
+            entry.rowIndexOffset = position;
+            for (Block block : blocks) {
+                for (int offset : block.rowOffsets) {
+                    os.writeInt(offset);
+                    position += 4;
+                }
+            }
+            entry.rows = rows;
+            int total = blocks.size();
+            entry.blockOffsets = new long[total];
+            entry.compressedLengths = new int[total];
+            entry.uncompressedLengths = new int[total];
+            entry.crcs = new int[total];
+            entry.firstRows = new long[total];
+            for (int i = 0; i < total; i++) {
+                entry.blockOffsets[i] = blockOffsets.get(i);
+                entry.compressedLengths[i] = blocks.get(i).compressedLength;
+                entry.uncompressedLengths[i] = blocks.get(i).uncompressedLength;
+                entry.crcs[i] = blocks.get(i).crc;
+                entry.firstRows[i] = firstRows.get(i);
+            }
+            entries.add(entry);
+        }
+
+        private long write(Block block,
+                           List<Long> blockOffsets,
+                           List<Long> firstRows,
+                           long rows,
+                           List<Block> blocks) throws IOException {
+            blockOffsets.add(position);
+            firstRows.add(rows);
+            os.write(block.compressed);
+            position += block.compressedLength;
+            block.compressed = null; // Only the length is needed from now on
+            blocks.add(block);
+            return rows + block.rowOffsets.length;
+        }
+
+        private int lastIndexOf(byte[] data, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (data[i] == '\n')
+                    return i;
+            }
+            return -1;
+        }
+
+        private Block compress(byte[] data, int length) {
+            Block block = new Block();
+            block.uncompressedLength = length;
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            block.crc = (int) crc.getValue();
+            // Rows start at the beginning and after each line end
+            int rows = 0;
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n' || i == length - 1)
+                    rows ++;
+            }
+            block.rowOffsets = new int[rows];
+            int row = 0;
+            int rowStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (data[i] == '\n' || i == length - 1) {
+                    block.rowOffsets[row ++] = rowStart;
+                    rowStart = i + 1;
+                }
+            }
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 4 + 1024);
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    int size = deflater.deflate(buffer);
+                    bos.write(buffer, 0, size);
+                }
+            }
+            finally {
+                deflater.end();
+            }
+            block.compressed = bos.toByteArray();
+            block.compressedLength = block.compressed.length;
+            return block;
+        }
+
+        private Block get(Future<Block> future) throws IOException {
+            try {
+                return future.get();
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            catch(ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        /**
+         * Write the footer and save the archive. Nothing is saved if an entry failed to be added.
+         */
+        @Override
+        public void close() throws IOException {
+            executor.shutdownNow();
+            if (isFailed) {
+                os.close(); // The temporary file is deleted
+                return;
+            }
+            long footerOffset = position;
+            os.writeInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                os.writeInt(name.length);
+                os.write(name);
+                os.writeLong(entry.rows);
+                os.writeLong(entry.rowIndexOffset);
+                os.writeInt(entry.blockOffsets.length);
+                for (int i = 0; i < entry.blockOffsets.length; i++) {
+                    os.writeLong(entry.blockOffsets[i]);
+                    os.writeInt(entry.compressedLengths[i]);
+                    os.writeInt(entry.uncompressedLengths[i]);
+                    os.writeInt(entry.crcs[i]);
+                    os.writeLong(entry.firstRows[i]);
+                }
+            }
+            os.writeLong(footerOffset);
+            os.write(MAGIC);
+            os.flush();
+            afos.commit();
+        }
+    }
+
+}
@@ -0,0 +1,391 @@
+package org.reactome.idg.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+
+/**
+ * This class is used to write and read gzip files in the BGZF format (the same as bgzip in htslib): a file
+ * is a series of gzip members, each of which holds at most 64KB of uncompressed data and records its own
+ * compressed size in a "BC" extra field. Such a file can still be read by any gzip tool, but its members
+ * can be located without inflating, so that they can be compressed and decompressed on all cores. Ordinary
+ * gzip files, including multi-member ones, are not handled here since their member boundaries are only known
+ * after inflating. Convert such a file once by compress() (see DataDownloader.recompressDownload()) so that
+ * later reads are parallel.
+ * @author wug
+ *
+ */
+public class BlockGzip {
+    private static final Logger logger = Logger.getLogger(BlockGzip.class);
+    // Uncompressed bytes in a block: the same as bgzip so that the compressed block fits in 64KB
+    public static final int BLOCK_SIZE = 0xff00;
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    // The empty block marking the end of a BGZF file
+    private static final byte[] EOF_BLOCK = {
+            0x1f, (byte) 0x8b, 0x08, 0x04, 0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43,
+            0x02, 0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00
+    };
+
+    /**
+     * Check if a file is in the BGZF format by checking the header of the first member.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static boolean isBlockGzip(File file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return readBlock(dis) != null;
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if a file starts with the gzip magic number.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static boolean isGzip(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            return is.read() == 0x1f && is.read() == 0x8b;
+        }
+    }
+
+    public static int getDefaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Compress a file into the BGZF format using multiple threads. If the source file is a gzip file,
+     * it is decompressed first so that an existing gzip file can be converted.
+     * @param src
+     * @param dest
+     * @param threads
+     * @throws IOException
+     */
+    public static void compress(File src,
+                                File dest,
+                                int threads) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (InputStream is = isGzip(src) ? DecompressingInputStream.openGzip(src) : DecompressingInputStream.open(src);
+             OutputStream os = new BufferedOutputStream(new FileOutputStream(dest), 1024 * 1024)) {
+            BlockingQueue<Future<byte[]>> futures = new ArrayBlockingQueue<>(threads * 8);
+            while (true) {
+                byte[] data = new byte[BLOCK_SIZE];
+                int length = readFully(is, data);
+                if (length > 0) {
+                    if (futures.remainingCapacity() == 0)
+                        os.write(get(futures.poll()));
+                    futures.add(executor.submit(() -> deflate(data, length)));
+                }
+                if (length < BLOCK_SIZE)
+                    break;
+            }
+            while (!futures.isEmpty())
+                os.write(get(futures.poll()));
+            os.write(EOF_BLOCK);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int readFully(InputStream is, byte[] data) throws IOException {
+        int length = 0;
+        int read = 0;
+        while (length < data.length && (read = is.read(data, length, data.length - length)) > 0)
+            length += read;
+        return length;
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        catch(ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Compress data into a BGZF block.
+     */
+    private static byte[] deflate(byte[] data, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        byte[] buffer = new byte[length + 1024];
+        int size = 0;
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while (!deflater.finished())
+                size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        finally {
+            deflater.end();
+        }
+        int blockSize = HEADER_SIZE + size + TRAILER_SIZE;
+        if (blockSize > 65536)
+            throw new IOException("A compressed block is too large: " + blockSize);
+        byte[] block = new byte[blockSize];
+        System.arraycopy(EOF_BLOCK, 0, block, 0, HEADER_SIZE - 2);
+        writeShort(block, HEADER_SIZE - 2, blockSize - 1);
+        System.arraycopy(buffer, 0, block, HEADER_SIZE, size);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(block, blockSize - TRAILER_SIZE, (int) crc.getValue());
+        writeInt(block, blockSize - 4, length);
+        return block;
+    }
+
+    private static void writeShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        writeShort(bytes, offset, value);
+        writeShort(bytes, offset + 2, value >>> 16);
+    }
+
+    private static int readShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return readShort(bytes, offset) | (readShort(bytes, offset + 2) << 16);
+    }
+
+    /**
+     * Read a whole block from the stream.
+     * @param dis
+     * @return null if the end of the stream is reached.
+     * @throws IOException if the stream is not in the BGZF format.
+     */
+    private static byte[] readBlock(DataInputStream dis) throws IOException {
+        byte[] header = new byte[12];
+        int read = readFully(dis, header);
+        if (read == 0)
+            return null;
+        if (read < header.length)
+            throw new EOFException("Truncated block header.");
+        if ((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b || header[2] != 8 || (header[3] & 4) == 0)
+            throw new IOException("Not a block gzip member.");
+        int xlen = readShort(header, 10);
+        byte[] extra = new byte[xlen];
+        dis.readFully(extra);
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= xlen; ) {
+            int length = readShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && length == 2) {
+                blockSize = readShort(extra, i + 4) + 1;
+                break;
+            }
+            i += 4 + length;
+        }
+        if (blockSize < 0)
+            throw new IOException("No BC field in the gzip member.");
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        System.arraycopy(extra, 0, block, header.length, xlen);
+        dis.readFully(block, header.length + xlen, blockSize - header.length - xlen);
+        return block;
+    }
+
+    /**
+     * Decompress a BGZF block.
+     */
+    private static byte[] inflate(byte[] block) throws IOException {
+        int xlen = readShort(block, 10);
+        int offset = 12 + xlen;
+        int isize = readInt(block, block.length - 4);
+        byte[] data = new byte[isize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, offset, block.length - offset - TRAILER_SIZE);
+            int size = 0;
+            while (size < isize) {
+                int n = inflater.inflate(data, size, isize - size);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                    break;
+                size += n;
+            }
+            if (size != isize)
+                throw new IOException("Wrong size for an inflated block: " + size + " != " + isize);
+        }
+        catch(DataFormatException e) {
+            throw new IOException(e);
+        }
+        finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != readInt(block, block.length - TRAILER_SIZE))
+            throw new IOException("CRC check failed for a block.");
+        return data;
+    }
+
+    /**
+     * Decompress a BGZF file using multiple threads.
+     * @param src
+     * @param dest
+     * @param threads
+     * @throws IOException
+     */
+    public static void decompress(File src,
+                                  File dest,
+                                  int threads) throws IOException {
+        try (InputStream is = open(src, threads);
+             OutputStream os = new BufferedOutputStream(new FileOutputStream(dest), 1024 * 1024)) {
+            byte[] buffer = new byte[1024 * 1024];
+            int read = 0;
+            while ((read = is.read(buffer)) > 0)
+                os.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Open a BGZF file as a stream of decompressed bytes. Blocks are read in a separate thread and
+     * inflated by a pool of threads, while the returned stream gives the bytes in the original order.
+     * @param file
+     * @param threads
+     * @return
+     * @throws IOException
+     */
+    public static InputStream open(File file, int threads) throws IOException {
+        return new BlockInputStream(file, threads);
+    }
+
+    private static class BlockInputStream extends InputStream {
+        // Used to mark the end of the stream
+        private final Future<byte[]> end = CompletableFuture.completedFuture(null);
+        private final ExecutorService executor;
+        private final BlockingQueue<Future<byte[]>> futures;
+        private final Thread reader;
+        private byte[] current;
+        private int position;
+        private boolean finished;
+
+        BlockInputStream(File file, int threads) throws IOException {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024 * 1024));
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Inflate-" + file.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+            futures = new ArrayBlockingQueue<>(threads * 8);
+            reader = new Thread(() -> readBlocks(dis), "Read-" + file.getName());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        private void readBlocks(DataInputStream dis) {
+            try {
+                byte[] block = null;
+                while ((block = readBlock(dis)) != null) {
+                    byte[] tmp = block;
+                    futures.put(executor.submit(() -> inflate(tmp)));
+                }
+                futures.put(end);
+            }
+            catch(InterruptedException e) {
+                // Closed
+            }
+            catch(IOException e) {
+                CompletableFuture<byte[]> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                try {
+                    futures.put(failed);
+                }
+                catch(InterruptedException e1) {
+                    // Closed
+                }
+            }
+            finally {
+                try {
+                    dis.close();
+                }
+                catch(IOException e) {
+                    logger.error("Cannot close the stream: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        private boolean fill() throws IOException {
+            while (!finished && (current == null || position == current.length)) {
+                Future<byte[]> future = null;
+                try {
+                    future = futures.take();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+                if (future == end) {
+                    finished = true;
+                    executor.shutdown();
+                    break;
+                }
+                current = get(future);
+                position = 0;
+            }
+            return !finished;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill())
+                return -1;
+            return current[position ++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            reader.interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+}
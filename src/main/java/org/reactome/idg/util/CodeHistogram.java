@@ -0,0 +1,100 @@
+package org.reactome.idg.util;
+
+/**
+ * A histogram of codes generated by a FixedPointCodec. Since the number of codes is fixed
+ * (at most 65536), the value at a top percentile can be found by walking through the histogram
+ * without sorting all values, which is usually in the order of 10^8 for a gene by gene matrix.
+ * @author wug
+ *
+ */
+public class CodeHistogram {
+    private final FixedPointCodec codec;
+    private final long[] counts;
+
+    public CodeHistogram(FixedPointCodec codec) {
+        this(codec, new long[codec.getTableSize()]);
+    }
+
+    public CodeHistogram(FixedPointCodec codec, long[] counts) {
+        if (counts.length != codec.getTableSize())
+            throw new IllegalArgumentException("The size of counts is not the same as the codec table: " + counts.length);
+        this.codec = codec;
+        this.counts = counts;
+    }
+
+    public FixedPointCodec getCodec() {
+        return codec;
+    }
+
+    public void add(int code) {
+        counts[codec.getIndex(code)] ++;
+    }
+
+    public void add(int code, long count) {
+        counts[codec.getIndex(code)] += count;
+    }
+
+    public void add(CodeHistogram other) {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+    }
+
+    public long getCount(int code) {
+        return counts[codec.getIndex(code)];
+    }
+
+    /**
+     * The raw counts indexed by codec table indices.
+     * @return
+     */
+    public long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * @return the total number of values excluding missing values.
+     */
+    public long getTotal() {
+        long total = 0;
+        int missingIndex = codec.getIndex(codec.getMissingCode());
+        for (int i = 0; i < counts.length; i++) {
+            if (i == missingIndex)
+                continue;
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Get the code whose absolute value sits at the passed rank when all values are sorted by their
+     * absolute values in the descending order (rank 0 is the largest).
+     * @param rank
+     * @return the code or the missing code if the rank is out of the range.
+     */
+    public int getCodeAtAbsoluteRank(long rank) {
+        long cumulative = 0;
+        for (int index : codec.getIndicesByAbsoluteValue()) {
+            cumulative += counts[index];
+            if (cumulative > rank)
+                return codec.getCode(index);
+        }
+        return codec.getMissingCode();
+    }
+
+    /**
+     * Get the absolute value at the top percentile. This is the same as sorting all absolute values
+     * in the descending order and then picking the value at index (int)(total * percentile), but based
+     * on the decoded values.
+     * @param percentile
+     * @return
+     */
+    public double getTopPercentileCutoff(double percentile) {
+        long total = getTotal();
+        if (total == 0)
+            throw new IllegalStateException("No value in the histogram.");
+        long rank = (long) (total * percentile);
+        int code = getCodeAtAbsoluteRank(rank);
+        return Math.abs(codec.decode(code));
+    }
+
+}
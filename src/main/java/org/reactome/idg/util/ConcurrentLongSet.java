@@ -0,0 +1,136 @@
+package org.reactome.idg.util;
+
+import java.util.Arrays;
+
+/**
+ * A set of primitive longs that can be added to by multiple threads. Values are spread over stripes by their
+ * hashes, and each stripe is an open-addressing hash table guarded by its own lock, so that threads adding
+ * different values rarely wait for each other and no object is created for a value.
+ * @author wug
+ *
+ */
+public class ConcurrentLongSet {
+    private static final int MAX_LOAD_PERCENT = 60;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    private static class Stripe {
+        // 0 is used as the empty slot. A zero value is tracked by hasZero.
+        private long[] slots = new long[16];
+        private int size;
+        private boolean hasZero;
+    }
+
+    public ConcurrentLongSet() {
+        this(64);
+    }
+
+    /**
+     * @param stripes the number of stripes, which is rounded up to a power of 2
+     */
+    public ConcurrentLongSet(int stripes) {
+        int total = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[total];
+        for (int i = 0; i < total; i++)
+            this.stripes[i] = new Stripe();
+        this.stripeMask = total - 1;
+    }
+
+    private static long mix(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return value ^ (value >>> 29);
+    }
+
+    /**
+     * @param value
+     * @return true if the value is not in the set
+     */
+    public boolean add(long value) {
+        long hash = mix(value);
+        Stripe stripe = stripes[(int) (hash >>> 40) & stripeMask];
+        synchronized (stripe) {
+            if (value == 0) {
+                if (stripe.hasZero)
+                    return false;
+                stripe.hasZero = true;
+                return true;
+            }
+            if ((stripe.size + 1) * 100L > stripe.slots.length * (long) MAX_LOAD_PERCENT)
+                resize(stripe);
+            if (!insert(stripe.slots, value, hash))
+                return false;
+            stripe.size ++;
+            return true;
+        }
+    }
+
+    private static boolean insert(long[] slots, long value, long hash) {
+        int mask = slots.length - 1;
+        int index = (int) hash & mask;
+        while (slots[index] != 0) {
+            if (slots[index] == value)
+                return false;
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        return true;
+    }
+
+    private static void resize(Stripe stripe) {
+        long[] slots = new long[stripe.slots.length * 2];
+        for (long value : stripe.slots) {
+            if (value != 0)
+                insert(slots, value, mix(value));
+        }
+        stripe.slots = slots;
+    }
+
+    public boolean contains(long value) {
+        long hash = mix(value);
+        Stripe stripe = stripes[(int) (hash >>> 40) & stripeMask];
+        synchronized (stripe) {
+            if (value == 0)
+                return stripe.hasZero;
+            long[] slots = stripe.slots;
+            int mask = slots.length - 1;
+            int index = (int) hash & mask;
+            while (slots[index] != 0) {
+                if (slots[index] == value)
+                    return true;
+                index = (index + 1) & mask;
+            }
+            return false;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size + (stripe.hasZero ? 1 : 0);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return values in the ascending order
+     */
+    public long[] toSortedArray() {
+        long[] rtn = new long[size()];
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.hasZero && total < rtn.length)
+                    rtn[total ++] = 0;
+                for (long value : stripe.slots) {
+                    if (value != 0 && total < rtn.length)
+                        rtn[total ++] = value;
+                }
+            }
+        }
+        Arrays.sort(rtn, 0, total);
+        return total == rtn.length ? rtn : Arrays.copyOf(rtn, total);
+    }
+
+}
@@ -0,0 +1,209 @@
+package org.reactome.idg.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+/**
+ * This InputStream is used to read gzip (.gz) or zstd (.zst) compressed files. Decompression runs in
+ * a separate thread, which fills a ring of fixed chunks so that parsing in the reading thread and
+ * decompression overlap. Use the static open methods to get a stream or reader for a file, which may
+ * or may not be compressed.
+ * @author wug
+ *
+ */
+public class DecompressingInputStream extends InputStream {
+    private static final Logger logger = Logger.getLogger(DecompressingInputStream.class);
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int RING_SIZE = 8;
+    // Used to mark the end of the stream
+    private static final Chunk END = new Chunk(0);
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> free;
+    private final Thread worker;
+    private volatile IOException error;
+    private Chunk current;
+    private int position;
+
+    private static class Chunk {
+        private final byte[] data;
+        private int length;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    public DecompressingInputStream(InputStream source, String name) {
+        filled = new ArrayBlockingQueue<>(RING_SIZE + 1);
+        free = new ArrayBlockingQueue<>(RING_SIZE);
+        for (int i = 0; i < RING_SIZE; i++)
+            free.add(new Chunk(CHUNK_SIZE));
+        worker = new Thread(() -> decompress(source), "Decompress-" + name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void decompress(InputStream source) {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                int length = 0;
+                int read = 0;
+                while (length < chunk.data.length &&
+                       (read = source.read(chunk.data, length, chunk.data.length - length)) > 0)
+                    length += read;
+                chunk.length = length;
+                if (length > 0)
+                    filled.put(chunk);
+                else
+                    free.put(chunk);
+                if (read < 0) {
+                    filled.put(END);
+                    return;
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            // Closed by the reader
+        }
+        catch(IOException e) {
+            error = e;
+            filled.offer(END);
+        }
+        finally {
+            try {
+                source.close();
+            }
+            catch(IOException e) {
+                logger.error("Cannot close the source: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Make sure the current chunk has bytes to read.
+     * @return false if the end of the stream is reached
+     */
+    private boolean fill() throws IOException {
+        if (current != null && position < current.length)
+            return true;
+        if (current == END) {
+            if (error != null)
+                throw error;
+            return false;
+        }
+        if (current != null)
+            free.offer(current);
+        try {
+            current = filled.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for decompressed data.", e);
+        }
+        position = 0;
+        return fill();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return current.data[position ++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int length = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        if (current == null || current == END)
+            return 0;
+        return current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        worker.interrupt();
+        current = END;
+    }
+
+    /**
+     * Check if a file name ends with a supported compression extension (.gz or .zst).
+     * @param fileName
+     * @return
+     */
+    public static boolean isCompressed(String fileName) {
+        return fileName.endsWith(".gz") || fileName.endsWith(".zst");
+    }
+
+    /**
+     * Remove the compression extension from a file name, e.g. XXX_Spearman_Adj.csv.gz to XXX_Spearman_Adj.csv.
+     * @param fileName
+     * @return
+     */
+    public static String getUncompressedName(String fileName) {
+        if (!isCompressed(fileName))
+            return fileName;
+        return fileName.substring(0, fileName.lastIndexOf("."));
+    }
+
+    /**
+     * Open a file, which may be gzip or zstd compressed based on its extension.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static InputStream open(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(".gz"))
+            return openGzip(file);
+        InputStream fis = new FileInputStream(file);
+        if (name.endsWith(".zst"))
+            return new DecompressingInputStream(new ZstdInputStream(new BufferedInputStream(fis, 64 * 1024)), name);
+        return new BufferedInputStream(fis, CHUNK_SIZE);
+    }
+
+    /**
+     * Open a gzip file regardless of its extension (e.g. .tgz for Harmonizome downloads). Only a file in the
+     * BGZF format (e.g. generated by DataDownloader.recompressDownload()) is inflated by all cores. Any other gzip file,
+     * including an ordinary multi-member one, is inflated sequentially in a separate thread: its members don't
+     * record their compressed sizes, so their boundaries cannot be found without inflating the whole file.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static InputStream openGzip(File file) throws IOException {
+        if (BlockGzip.isBlockGzip(file))
+            return BlockGzip.open(file, BlockGzip.getDefaultThreads());
+        return new DecompressingInputStream(new GZIPInputStream(new FileInputStream(file), 64 * 1024),
+                                            file.getName());
+    }
+
+    public static BufferedReader openReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8), CHUNK_SIZE);
+    }
+
+}
@@ -0,0 +1,347 @@
+package org.reactome.idg.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class is used to scan a delimited text file line by line and field by field at the byte level
+ * so that no String is created for fields that are skipped or parsed as numbers. For a large matrix
+ * file, this is much faster than String.split() since most fields in a line are not needed or can be
+ * parsed directly from bytes.
+ * @author wug
+ *
+ */
+public class DelimitedLineScanner implements Closeable {
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0d;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0d;
+    }
+    private final InputStream is;
+    private final byte delimiter;
+    private final byte[] buffer;
+    private int bufferLength;
+    private int bufferPosition;
+    private boolean eof;
+    // The current line
+    private byte[] line;
+    private int lineLength;
+    // The current field in the line
+    private int fieldStart;
+    private int fieldEnd;
+
+    public DelimitedLineScanner(InputStream is, char delimiter) {
+        this.is = is;
+        this.delimiter = (byte) delimiter;
+        buffer = new byte[1024 * 1024];
+        line = new byte[64 * 1024];
+    }
+
+    /**
+     * Move to the next line.
+     * @return false if there is no more line.
+     * @throws IOException
+     */
+    public boolean nextLine() throws IOException {
+        lineLength = 0;
+        fieldStart = -1;
+        fieldEnd = -1;
+        boolean hasByte = false;
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                if (eof || !fillBuffer())
+                    break;
+            }
+            hasByte = true;
+            // Look for the line end in the buffer
+            int end = bufferPosition;
+            while (end < bufferLength && buffer[end] != '\n')
+                end ++;
+            appendToLine(end - bufferPosition);
+            if (end < bufferLength) {
+                bufferPosition = end + 1; // Skip \n
+                break;
+            }
+            bufferPosition = end;
+        }
+        if (!hasByte)
+            return false;
+        if (lineLength > 0 && line[lineLength - 1] == '\r')
+            lineLength --;
+        return true;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        int read = is.read(buffer, 0, buffer.length);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        bufferLength = read;
+        bufferPosition = 0;
+        return true;
+    }
+
+    private void appendToLine(int length) {
+        if (lineLength + length > line.length) {
+            byte[] newLine = new byte[Math.max(line.length * 2, lineLength + length)];
+            System.arraycopy(line, 0, newLine, 0, lineLength);
+            line = newLine;
+        }
+        System.arraycopy(buffer, bufferPosition, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * Move to the next field in the current line.
+     * @return false if there is no more field in the line.
+     */
+    public boolean nextField() {
+        if (fieldEnd >= lineLength)
+            return false;
+        fieldStart = fieldEnd + 1;
+        int end = fieldStart;
+        while (end < lineLength && line[end] != delimiter)
+            end ++;
+        fieldEnd = end;
+        return true;
+    }
+
+    /**
+     * Skip the passed number of fields.
+     * @param number
+     * @return the number of fields actually skipped.
+     */
+    public int skipFields(int number) {
+        int skipped = 0;
+        while (skipped < number && nextField())
+            skipped ++;
+        return skipped;
+    }
+
+    public boolean isFieldEmpty() {
+        return fieldEnd == fieldStart;
+    }
+
+    public String getField() {
+        return new String(line, fieldStart, fieldEnd - fieldStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the bytes of the current field without decoding them.
+     * @param os
+     * @throws IOException
+     */
+    public void writeField(OutputStream os) throws IOException {
+        os.write(line, fieldStart, fieldEnd - fieldStart);
+    }
+
+    /**
+     * Parse the current field as an int without creating a String.
+     * @return
+     * @throws NumberFormatException if the field is not an int
+     */
+    public int getFieldAsInt() {
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i ++;
+        }
+        if (i == fieldEnd || fieldEnd - i > 9)
+            return Integer.parseInt(getField()); // Let it throw or handle a long number
+        int value = 0;
+        for (; i < fieldEnd; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9')
+                return Integer.parseInt(getField()); // Let it throw
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // Offsets of the current field in the current line so that a field can be decoded later
+    int getFieldStart() {
+        return fieldStart;
+    }
+
+    int getFieldEnd() {
+        return fieldEnd;
+    }
+
+    String getString(int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    boolean isSameBytes(int start1, int end1, int start2, int end2) {
+        if (end1 - start1 != end2 - start2)
+            return false;
+        for (int i = 0; i < end1 - start1; i++) {
+            if (line[start1 + i] != line[start2 + i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parse the current field as a double. Plain decimals having no more than 15 significant digits
+     * are converted directly from bytes, which generates the same value as Double.parseDouble() since
+     * both the digits and the power of ten are exact doubles. Other numbers are handled by
+     * Double.parseDouble().
+     * @return
+     */
+    public double getFieldAsDouble() {
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i ++;
+        }
+        long digits = 0;
+        int numberOfDigits = 0;
+        int scale = 0;
+        boolean hasPoint = false;
+        boolean hasDigit = false;
+        for (; i < fieldEnd; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                hasDigit = true;
+                if (digits == 0 && b == '0') {
+                    // Leading zeros are not significant
+                    if (hasPoint)
+                        scale ++;
+                    continue;
+                }
+                if (numberOfDigits == 15)
+                    return Double.parseDouble(getField());
+                digits = digits * 10 + (b - '0');
+                numberOfDigits ++;
+                if (hasPoint)
+                    scale ++;
+            }
+            else if (b == '.' && !hasPoint)
+                hasPoint = true;
+            else
+                return Double.parseDouble(getField()); // e.g. exponent, NaN
+        }
+        if (!hasDigit)
+            return Double.parseDouble(getField()); // Let it throw
+        if (scale >= POWERS_OF_TEN.length)
+            return Double.parseDouble(getField());
+        double value = digits / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Check if the absolute value of the current field is not less than the passed threshold. The result
+     * is always the same as Math.abs(Double.parseDouble(getField())) >= threshold. For a plain decimal, the
+     * first 15 significant digits bound the value from both sides, which is enough in most cases so that
+     * the field doesn't need to be parsed exactly.
+     * @param threshold a positive value
+     * @return
+     */
+    public boolean isFieldAbsoluteValueAtLeast(double threshold) {
+        if (!(threshold > 0.0d))
+            return Math.abs(getFieldAsDouble()) >= threshold;
+        int i = fieldStart;
+        if (i < fieldEnd && (line[i] == '-' || line[i] == '+'))
+            i ++;
+        long digits = 0;
+        int numberOfDigits = 0;
+        int scale = 0;
+        boolean hasPoint = false;
+        boolean hasDigit = false;
+        boolean truncated = false;
+        for (; i < fieldEnd; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                hasDigit = true;
+                if (digits == 0 && b == '0') {
+                    if (hasPoint)
+                        scale ++;
+                    continue;
+                }
+                if (numberOfDigits == 15) {
+                    if (!hasPoint)
+                        return Math.abs(getFieldAsDouble()) >= threshold; // A very large number
+                    truncated = true; // Ignore the remaining digits
+                    continue;
+                }
+                if (truncated)
+                    continue;
+                digits = digits * 10 + (b - '0');
+                numberOfDigits ++;
+                if (hasPoint)
+                    scale ++;
+            }
+            else if (b == '.' && !hasPoint)
+                hasPoint = true;
+            else if ((b == 'e' || b == 'E') && hasDigit) {
+                int exponent = parseExponent(i + 1);
+                if (exponent == Integer.MIN_VALUE)
+                    return Math.abs(getFieldAsDouble()) >= threshold;
+                scale -= exponent;
+                break;
+            }
+            else
+                return Math.abs(getFieldAsDouble()) >= threshold; // e.g. NaN
+        }
+        if (!hasDigit || scale < 0)
+            return Math.abs(getFieldAsDouble()) >= threshold;
+        if (scale >= POWERS_OF_TEN.length) {
+            // No more than 15 digits: the value is not greater than 1.0E-8
+            if (threshold > 1.0E-8d)
+                return false;
+            return Math.abs(getFieldAsDouble()) >= threshold;
+        }
+        // Double.parseDouble() rounds correctly, which is monotonic
+        if (digits / POWERS_OF_TEN[scale] >= threshold)
+            return true;
+        if (!truncated)
+            return false;
+        if ((digits + 1) / POWERS_OF_TEN[scale] < threshold)
+            return false;
+        return Math.abs(getFieldAsDouble()) >= threshold;
+    }
+
+    /**
+     * Parse a short exponent starting at the passed position to the end of the current field.
+     * @return Integer.MIN_VALUE if the exponent cannot be parsed.
+     */
+    private int parseExponent(int start) {
+        int i = start;
+        boolean negative = false;
+        if (i < fieldEnd && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i ++;
+        }
+        if (i == fieldEnd || fieldEnd - i > 4)
+            return Integer.MIN_VALUE;
+        int exponent = 0;
+        for (; i < fieldEnd; i++) {
+            byte b = line[i];
+            if (b < '0' || b > '9')
+                return Integer.MIN_VALUE;
+            exponent = exponent * 10 + (b - '0');
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * Check if the current field starts with a minus sign.
+     * @return
+     */
+    public boolean isFieldNegative() {
+        return fieldEnd > fieldStart && line[fieldStart] == '-';
+    }
+
+    @Override
+    public void close() throws IOException {
+        is.close();
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.reactome.idg.util;
+
+import java.util.Arrays;
+
+/**
+ * This class is used to encode double values in a fixed range (e.g. [-1.0, 1.0] for Spearman
+ * correlations and cosine similarities) into 8-bit or 16-bit integer codes. The range is mapped
+ * linearly onto the codes [-maxCode, maxCode] (127 for 8-bit and 32767 for 16-bit). The smallest
+ * code (-128 or -32768) is reserved for missing values (e.g. NA in the coexpression files).
+ * The maximum error for a value in the range is a half step: (max - min) / (4 * maxCode), which
+ * is about 0.0039 for 8-bit and 0.000015 for 16-bit if the range is [-1.0, 1.0]. Values outside
+ * the range are clamped to the range. All decoded values are pre-computed in a table so that
+ * decoding is just an array lookup.
+ * @author wug
+ *
+ */
+public class FixedPointCodec {
+    private final int bits;
+    private final int maxCode;
+    private final int missingCode;
+    private final int mask;
+    private final double min;
+    private final double max;
+    private final double center;
+    private final double step;
+    // Indexed by code & mask
+    private final double[] decodeTable;
+    // Table indices sorted by the absolute decoded values in the descending order
+    private int[] absSortedIndices;
+
+    public FixedPointCodec(int bits, double min, double max) {
+        if (bits != 8 && bits != 16)
+            throw new IllegalArgumentException("Only 8 or 16 bits are supported: " + bits);
+        if (max <= min)
+            throw new IllegalArgumentException("max should be larger than min: " + min + ", " + max);
+        this.bits = bits;
+        this.min = min;
+        this.max = max;
+        maxCode = (1 << (bits - 1)) - 1;
+        missingCode = -maxCode - 1;
+        mask = (1 << bits) - 1;
+        center = (min + max) / 2.0d;
+        step = (max - min) / (2.0d * maxCode);
+        decodeTable = new double[1 << bits];
+        for (int code = -maxCode; code <= maxCode; code++)
+            decodeTable[code & mask] = center + code * step;
+        decodeTable[missingCode & mask] = Double.NaN;
+    }
+
+    /**
+     * A codec for values in [-1.0, 1.0] (e.g. correlations and cosine similarities).
+     * @param bits 8 or 16
+     * @return
+     */
+    public static FixedPointCodec forCorrelation(int bits) {
+        return new FixedPointCodec(bits, -1.0d, 1.0d);
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public int getMissingCode() {
+        return missingCode;
+    }
+
+    /**
+     * @return the number of bytes used by one code.
+     */
+    public int getBytesPerCode() {
+        return bits / 8;
+    }
+
+    /**
+     * @return the size of the decoding table, which is also the number of all possible codes.
+     */
+    public int getTableSize() {
+        return decodeTable.length;
+    }
+
+    /**
+     * The maximum difference between a value in the range and its decoded value.
+     * @return
+     */
+    public double getMaximumError() {
+        return step / 2.0d;
+    }
+
+    public int encode(double value) {
+        if (Double.isNaN(value))
+            return missingCode;
+        long code = Math.round((value - center) / step);
+        if (code > maxCode)
+            return maxCode;
+        if (code < -maxCode)
+            return -maxCode;
+        return (int) code;
+    }
+
+    public boolean isMissing(int code) {
+        return code == missingCode;
+    }
+
+    public double decode(int code) {
+        return decodeTable[code & mask];
+    }
+
+    /**
+     * Convert a code into an index in the decoding table. This is the same as an unsigned
+     * value of the code so that a code read as either a signed or an unsigned number can be used.
+     * @param code
+     * @return
+     */
+    public int getIndex(int code) {
+        return code & mask;
+    }
+
+    /**
+     * Convert an index in the decoding table back to the code.
+     */
+    public int getCode(int index) {
+        return bits == 8 ? (byte) index : (short) index;
+    }
+
+    /**
+     * Decode a value via an index in the table.
+     * @param index
+     * @return
+     */
+    public double decodeIndex(int index) {
+        return decodeTable[index];
+    }
+
+    /**
+     * Get the indices in the decoding table sorted by the absolute values in the descending order.
+     * The missing code is not included. This is used to pick the top percentile values based on
+     * a histogram of codes.
+     * @return
+     */
+    public synchronized int[] getIndicesByAbsoluteValue() {
+        if (absSortedIndices != null)
+            return absSortedIndices;
+        Integer[] indices = new Integer[decodeTable.length - 1];
+        int c = 0;
+        for (int code = -maxCode; code <= maxCode; code++)
+            indices[c++] = code & mask;
+        Arrays.sort(indices, (i1, i2) -> Double.compare(Math.abs(decodeTable[i2]),
+                                                        Math.abs(decodeTable[i1])));
+        absSortedIndices = new int[indices.length];
+        for (int i = 0; i < indices.length; i++)
+            absSortedIndices[i] = indices[i];
+        return absSortedIndices;
+    }
+
+}
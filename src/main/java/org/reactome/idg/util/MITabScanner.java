@@ -0,0 +1,188 @@
+package org.reactome.idg.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is used to scan a PSI-MITAB (2.5, 2.6 or 2.7) file, e.g. an IntAct or MINT dump. Only the ids of
+ * two interactors (columns 1 and 2), their taxon ids (columns 10 and 11) and interaction types (column 12) are
+ * parsed: the other columns are skipped without being decoded. Multi-valued columns are pipe-delimited values
+ * in the format of db:value(description), which are scanned by indexOf() instead of regex splitting.
+ * @author wug
+ *
+ */
+public class MITabScanner implements Closeable {
+    private static final String UNIPROT_DB = "uniprotkb:";
+    private static final String TAXON_DB = "taxid:";
+    private static final String MI_PREFIX = "MI:";
+    private final DelimitedLineScanner scanner;
+    private String uniProtA;
+    private String uniProtB;
+    private int taxonA;
+    private int taxonB;
+    private String interactionTypes;
+    private long lineNumber;
+
+    public MITabScanner(InputStream is) {
+        scanner = new DelimitedLineScanner(is, '\t');
+    }
+
+    /**
+     * Open a MITAB file, which may be compressed based on its extension.
+     * @param fileName
+     * @return
+     * @throws IOException
+     */
+    public static MITabScanner open(String fileName) throws IOException {
+        return new MITabScanner(DecompressingInputStream.open(new File(fileName)));
+    }
+
+    /**
+     * Move to the next interaction. The header and empty lines are skipped.
+     * @return false if there is no more interaction.
+     * @throws IOException
+     */
+    public boolean nextLine() throws IOException {
+        while (scanner.nextLine()) {
+            lineNumber ++;
+            scanner.nextField();
+            if (scanner.isFieldEmpty())
+                continue;
+            String idA = scanner.getField();
+            if (idA.startsWith("#"))
+                continue; // Header
+            if (!scanner.nextField())
+                throw new IllegalStateException("No interactor B at line " + lineNumber);
+            uniProtA = extractUniProt(idA);
+            uniProtB = extractUniProt(scanner.getField());
+            // Skip alternative ids, aliases, detection methods, authors and publications
+            if (scanner.skipFields(7) < 7 || !scanner.nextField())
+                throw new IllegalStateException("Not enough columns at line " + lineNumber);
+            taxonA = extractTaxon(scanner.getField());
+            if (!scanner.nextField())
+                throw new IllegalStateException("Not enough columns at line " + lineNumber);
+            taxonB = extractTaxon(scanner.getField());
+            interactionTypes = scanner.nextField() ? scanner.getField() : "";
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the first UniProt accession in a pipe-delimited field. Isoform and chain suffixes (e.g. P12345-2
+     * or P12345-PRO_0000000001) are removed.
+     * @param field
+     * @return null if there is no UniProt id
+     */
+    static String extractUniProt(String field) {
+        int start = 0;
+        while (start < field.length()) {
+            int end = field.indexOf('|', start);
+            if (end < 0)
+                end = field.length();
+            if (field.startsWith(UNIPROT_DB, start)) {
+                int valueStart = start + UNIPROT_DB.length();
+                int valueEnd = valueStart;
+                while (valueEnd < end) {
+                    char c = field.charAt(valueEnd);
+                    if (c == '-' || c == '(' || c == '"')
+                        break;
+                    valueEnd ++;
+                }
+                if (valueEnd > valueStart)
+                    return field.substring(valueStart, valueEnd);
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Get the first taxon id in a field like taxid:9606(human)|taxid:9606(Homo sapiens).
+     * @param field
+     * @return -1 if there is no taxon id (e.g. "-" for chemicals)
+     */
+    static int extractTaxon(String field) {
+        int index = field.indexOf(TAXON_DB);
+        if (index < 0)
+            return -1;
+        int rtn = 0;
+        int digits = 0;
+        boolean isNegative = false;
+        for (int i = index + TAXON_DB.length(); i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '-' && digits == 0 && !isNegative)
+                isNegative = true; // e.g. taxid:-1(in vitro)
+            else if (c >= '0' && c <= '9') {
+                rtn = rtn * 10 + (c - '0');
+                digits ++;
+            }
+            else
+                break;
+        }
+        if (digits == 0)
+            return -1;
+        return isNegative ? -rtn : rtn;
+    }
+
+    public String getUniProtA() {
+        return uniProtA;
+    }
+
+    public String getUniProtB() {
+        return uniProtB;
+    }
+
+    public int getTaxonA() {
+        return taxonA;
+    }
+
+    public int getTaxonB() {
+        return taxonB;
+    }
+
+    /**
+     * Check if any interaction type of the current line is one of the passed PSI-MI ids (e.g. MI:0915).
+     * @param miIds
+     * @return
+     */
+    public boolean hasInteractionType(List<String> miIds) {
+        for (String miId : miIds) {
+            int index = interactionTypes.indexOf(miId);
+            while (index >= 0) {
+                // Make sure a whole id is matched (e.g. MI:0407 but not MI:04071)
+                int end = index + miId.length();
+                if (end == interactionTypes.length() || !Character.isDigit(interactionTypes.charAt(end)))
+                    return true;
+                index = interactionTypes.indexOf(miId, end);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return PSI-MI ids of interaction types in the current line
+     */
+    public List<String> getInteractionTypes() {
+        List<String> rtn = new ArrayList<>();
+        int index = interactionTypes.indexOf(MI_PREFIX);
+        while (index >= 0) {
+            int end = index + MI_PREFIX.length();
+            while (end < interactionTypes.length() && Character.isDigit(interactionTypes.charAt(end)))
+                end ++;
+            rtn.add(interactionTypes.substring(index, end));
+            index = interactionTypes.indexOf(MI_PREFIX, end);
+        }
+        return rtn;
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.reactome.idg.util;
+
+import java.util.Arrays;
+
+/**
+ * This class is used to select pairs having absolute values in a top percentile in one pass without
+ * keeping all values. The absolute values are counted in a histogram of 16-bit codes, and only pairs
+ * that may pass the final cutoff are kept in a candidate buffer: since the expected total number of
+ * values is known, the value at the top rank calculated from the seen values can only go up, and is
+ * used to prune the buffer. The final cutoff is the same as sorting all absolute values (as floats)
+ * in the descending order and picking the value at (int)(total * percentile), and then capped by the
+ * maximum cutoff.
+ * @author wug
+ *
+ */
+public class PercentilePairSelector {
+    private final FixedPointCodec codec;
+    private final CodeHistogram histogram;
+    private final double percentile;
+    private final long expectedTotal;
+    private final double maximumCutoff;
+    // Candidates
+    private int[] rows;
+    private int[] cols;
+    private double[] values;
+    private int size;
+    // Only values whose decoded absolute values are not less than this threshold are kept
+    private double threshold;
+    private Double cutoff;
+
+    /**
+     * Used to visit selected pairs.
+     */
+    public static interface PairVisitor {
+        public void visit(int row, int col, double value);
+    }
+
+    /**
+     * @param percentile
+     * @param expectedTotal the maximum total number of values to be added. This is used to prune candidates.
+     * @param maximumCutoff
+     */
+    public PercentilePairSelector(double percentile,
+                                  long expectedTotal,
+                                  double maximumCutoff) {
+        this.codec = FixedPointCodec.forCorrelation(16);
+        this.histogram = new CodeHistogram(codec);
+        this.percentile = percentile;
+        this.expectedTotal = expectedTotal;
+        this.maximumCutoff = maximumCutoff;
+        int capacity = (int) Math.min(Math.max(expectedTotal * percentile * 2, 1024), Integer.MAX_VALUE - 8);
+        rows = new int[capacity];
+        cols = new int[capacity];
+        values = new double[capacity];
+    }
+
+    public void add(int row, int col, double value) {
+        int code = codec.encode(Math.abs((float) value));
+        histogram.add(code);
+        if (codec.decode(code) < threshold)
+            return;
+        if (size == rows.length)
+            prune();
+        rows[size] = row;
+        cols[size] = col;
+        values[size] = value;
+        size ++;
+    }
+
+    /**
+     * Add values that are exactly zero. These values are counted only and never selected, which is
+     * useful for a sparse matrix where most pairs are not stored.
+     * @param count
+     */
+    public void addZeros(long count) {
+        if (count > 0)
+            histogram.add(codec.encode(0.0f), count);
+    }
+
+    /**
+     * Update the threshold and remove candidates that cannot pass. The buffer is grown if it is still
+     * too full.
+     */
+    private void prune() {
+        long total = histogram.getTotal();
+        long rank = (long) (Math.max(expectedTotal, total) * percentile);
+        double rankValue = 0.0d;
+        if (rank < total)
+            rankValue = codec.decode(histogram.getCodeAtAbsoluteRank(rank));
+        // Values larger than the maximum cutoff should be kept since the final cutoff may be capped
+        threshold = Math.min(rankValue, maximumCutoff - 2 * codec.getMaximumError());
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (getDecodedAbs(values[i]) < threshold)
+                continue;
+            rows[kept] = rows[i];
+            cols[kept] = cols[i];
+            values[kept] = values[i];
+            kept ++;
+        }
+        size = kept;
+        if (size > rows.length * 3 / 4) {
+            int capacity = (int) Math.min(rows.length * 2L, Integer.MAX_VALUE - 8);
+            rows = Arrays.copyOf(rows, capacity);
+            cols = Arrays.copyOf(cols, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+    private double getDecodedAbs(double value) {
+        return codec.decode(codec.encode(Math.abs((float) value)));
+    }
+
+    public long getTotal() {
+        return histogram.getTotal();
+    }
+
+    /**
+     * Get the cutoff after all values have been added.
+     * @return
+     */
+    public double getCutoff() {
+        if (cutoff != null)
+            return cutoff;
+        long total = histogram.getTotal();
+        if (total == 0)
+            throw new IllegalStateException("No value has been added.");
+        long rank = (long) (total * percentile);
+        double binValue = codec.decode(histogram.getCodeAtAbsoluteRank(rank));
+        // Count values in bins above the bin containing the rank
+        long above = 0;
+        long[] counts = histogram.getCounts();
+        for (int index : codec.getIndicesByAbsoluteValue()) {
+            if (Math.abs(codec.decodeIndex(index)) <= binValue)
+                break;
+            above += counts[index];
+        }
+        // Sort the exact values in the bin
+        float[] binValues = new float[size];
+        int binSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (getDecodedAbs(values[i]) == binValue)
+                binValues[binSize ++] = Math.abs((float) values[i]);
+        }
+        Arrays.sort(binValues, 0, binSize);
+        // Descending order. Values in the bin that are not kept are zeros added by addZeros().
+        int index = binSize - 1 - (int) (rank - above);
+        double value = index < 0 ? 0.0d : binValues[index];
+        cutoff = Math.min(value, maximumCutoff);
+        return cutoff;
+    }
+
+    /**
+     * Visit all pairs having absolute values larger than the cutoff.
+     * @param visitor
+     */
+    public void select(PairVisitor visitor) {
+        double cutoff = getCutoff();
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(values[i]) <= cutoff)
+                continue;
+            visitor.visit(rows[i], cols[i], values[i]);
+        }
+    }
+
+}
@@ -0,0 +1,354 @@
+package org.reactome.idg.util;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.reactome.fi.util.InteractionUtilities;
+
+/**
+ * This class is used to cache the top-right triangle of a symmetric gene by gene matrix (e.g. Spearman
+ * correlations or Harmonizome cosine similarities) in a binary file with values encoded by a FixedPointCodec.
+ * Compared to a text file, a 16-bit cache is about 4 times smaller, and an 8-bit cache about 8 times smaller,
+ * and can be scanned without any parsing. A histogram of all codes is saved at the end of the file so that
+ * the cutoff for a top percentile can be found without scanning the values at all.
+ * The layout of the file: magic, bits, min, max, gene universe, number of genes, genes, codes of cells (row, col)
+ * with col > row in the row-major order, and the histogram. The gene universe is a hash of the genes used to build
+ * the matrix (see hashGenes()) so that a cache generated for another gene list is not reused. A cache is written
+ * into a temporary file first and then renamed so that an interrupted run never leaves a partial cache.
+ * @author wug
+ *
+ */
+public class QuantizedPairMatrix {
+    private static final Logger logger = Logger.getLogger(QuantizedPairMatrix.class);
+    private static final int MAGIC = 0x51504D32; // QPM2
+    private final File file;
+    private final FixedPointCodec codec;
+    private final long universe;
+    private final List<String> genes;
+    private final long dataOffset;
+    private CodeHistogram histogram;
+
+    /**
+     * Used to visit cells in the matrix.
+     */
+    public static interface CellVisitor {
+        public void visit(int row, int col, int code);
+    }
+
+    private QuantizedPairMatrix(File file,
+                                FixedPointCodec codec,
+                                long universe,
+                                List<String> genes,
+                                long dataOffset) {
+        this.file = file;
+        this.codec = codec;
+        this.universe = universe;
+        this.genes = genes;
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * Open a matrix file. An IOException is thrown if the file is not a complete matrix file.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static QuantizedPairMatrix open(File file) throws IOException {
+        QuantizedPairMatrix matrix = null;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = dis.readInt();
+            if (magic != MAGIC)
+                throw new IOException(file.getName() + " is not a quantized pair matrix file.");
+            int bits = dis.readByte();
+            double min = dis.readDouble();
+            double max = dis.readDouble();
+            long universe = dis.readLong();
+            int size = dis.readInt();
+            List<String> genes = new ArrayList<>(size);
+            // 4 + 1 + 8 + 8 + 8 + 4
+            long offset = 33;
+            for (int i = 0; i < size; i++) {
+                byte[] bytes = new byte[dis.readInt()];
+                dis.readFully(bytes);
+                genes.add(new String(bytes, StandardCharsets.UTF_8));
+                offset += 4 + bytes.length;
+            }
+            matrix = new QuantizedPairMatrix(file,
+                                             new FixedPointCodec(bits, min, max),
+                                             universe,
+                                             Collections.unmodifiableList(genes),
+                                             offset);
+        }
+        long length = matrix.dataOffset + 
+                      matrix.getNumberOfCells() * matrix.codec.getBytesPerCode() +
+                      (long) matrix.codec.getTableSize() * Long.BYTES;
+        if (file.length() != length)
+            throw new IOException(file.getName() + " is truncated: " + file.length() + " bytes, expected " + length + ".");
+        return matrix;
+    }
+
+    /**
+     * Open a matrix file as a cache. Null is returned if the file doesn't exist, is not a complete matrix file,
+     * or was generated for another gene universe so that the cache can be regenerated.
+     * @param file
+     * @param universe the hash of the genes used to generate the cache
+     * @return
+     */
+    public static QuantizedPairMatrix openCache(File file, long universe) {
+        if (!file.exists())
+            return null;
+        try {
+            QuantizedPairMatrix matrix = open(file);
+            if (matrix.getUniverse() == universe)
+                return matrix;
+            logger.info(file.getName() + " was generated for another gene list.");
+        }
+        catch(IOException e) {
+            logger.warn("Invalid quantized cache " + file.getName() + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Hash a gene list into a 64-bit value to check if a cache has been generated for the same genes.
+     * Genes in a list are hashed in their order, which decides the indices in the matrix. Genes in other
+     * collections (e.g. a set of all genes) are sorted first.
+     * @param genes
+     * @return
+     */
+    public static long hashGenes(Collection<String> genes) {
+        Collection<String> ordered = genes;
+        if (!(genes instanceof List)) {
+            List<String> list = new ArrayList<>(genes);
+            Collections.sort(list);
+            ordered = list;
+        }
+        // 64-bit FNV-1a with a separator between genes
+        long hash = 0xcbf29ce484222325L;
+        for (String gene : ordered) {
+            for (byte b : gene.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xFF;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= '\n';
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public FixedPointCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the hash of the genes used to generate this matrix
+     */
+    public long getUniverse() {
+        return universe;
+    }
+
+    public List<String> getGenes() {
+        return genes;
+    }
+
+    public long getNumberOfCells() {
+        return getNumberOfCells(genes.size());
+    }
+
+    private static long getNumberOfCells(int size) {
+        return (long) size * (size - 1) / 2;
+    }
+
+    /**
+     * Load the histogram saved at the end of the file.
+     * @return
+     * @throws IOException
+     */
+    public CodeHistogram getHistogram() throws IOException {
+        if (histogram != null)
+            return histogram;
+        long[] counts = new long[codec.getTableSize()];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(counts.length * Long.BYTES);
+            long position = dataOffset + getNumberOfCells() * codec.getBytesPerCode();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0)
+                    throw new IOException("Cannot find the histogram in " + file.getName());
+            }
+            buffer.flip();
+            buffer.asLongBuffer().get(counts);
+        }
+        histogram = new CodeHistogram(codec, counts);
+        return histogram;
+    }
+
+    /**
+     * Scan all cells that are not missing.
+     * @param visitor
+     * @throws IOException
+     */
+    public void scan(CellVisitor visitor) throws IOException {
+        int size = genes.size();
+        int bytes = codec.getBytesPerCode();
+        int missing = codec.getMissingCode();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.position(dataOffset);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+            buffer.flip();
+            for (int row = 0; row < size - 1; row++) {
+                for (int col = row + 1; col < size; col++) {
+                    if (buffer.remaining() < bytes) {
+                        buffer.compact();
+                        channel.read(buffer);
+                        buffer.flip();
+                        if (buffer.remaining() < bytes)
+                            throw new IOException("Unexpected end of file: " + file.getName());
+                    }
+                    int code = bytes == 1 ? buffer.get() : buffer.getShort();
+                    if (code == missing)
+                        continue;
+                    visitor.visit(row, col, code);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load pairs having absolute values larger than the cutoff.
+     * @param cutoff
+     * @param needNegative true to add a sign (+ or -) after each pair
+     * @return
+     * @throws IOException
+     */
+    public Set<String> loadPairs(double cutoff, boolean needNegative) throws IOException {
+        Set<String> rels = new HashSet<>();
+        scan((row, col, code) -> {
+            double value = codec.decode(code);
+            if (Math.abs(value) <= cutoff)
+                return;
+            String gene1 = genes.get(row);
+            String gene2 = genes.get(col);
+            if (gene1.equals(gene2))
+                throw new IllegalStateException("Gene1 and Gene2 should not be the same: " + gene1);
+            String rel = InteractionUtilities.generateFIFromGene(gene1, gene2);
+            if (needNegative)
+                rels.add(rel + "\t" + (value > 0.0d ? "+" : "-"));
+            else
+                rels.add(rel);
+        });
+        return rels;
+    }
+
+    /**
+     * Used to write a matrix cache. Cells should be set in the row-major order. Cells that are not set
+     * are saved as missing values. The cache is saved by finish(). If the writer is closed without finish(),
+     * e.g. after an exception, nothing is saved.
+     */
+    public static class Writer implements Closeable {
+        private final FixedPointCodec codec;
+        private final AtomicFileOutputStream os;
+        private final DataOutputStream dos;
+        private final CodeHistogram histogram;
+        private final int size;
+        // The index of the next cell to be written
+        private long position;
+
+        /**
+         * @param file
+         * @param genes
+         * @param codec
+         * @param universe the hash of the genes used to generate the matrix. See hashGenes().
+         * @throws IOException
+         */
+        public Writer(File file,
+                      List<String> genes,
+                      FixedPointCodec codec,
+                      long universe) throws IOException {
+            this.codec = codec;
+            this.size = genes.size();
+            this.histogram = new CodeHistogram(codec);
+            os = new AtomicFileOutputStream(file);
+            dos = new DataOutputStream(os);
+            dos.writeInt(MAGIC);
+            dos.writeByte(codec.getBits());
+            dos.writeDouble(codec.getMin());
+            dos.writeDouble(codec.getMax());
+            dos.writeLong(universe);
+            dos.writeInt(size);
+            for (String gene : genes) {
+                byte[] bytes = gene.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            }
+        }
+
+        public void set(int row, int col, double value) throws IOException {
+            if (col <= row)
+                throw new IllegalArgumentException("Only the top-right triangle can be set: " + row + ", " + col);
+            long index = getCellIndex(row, col);
+            if (index < position)
+                throw new IllegalArgumentException("Cells should be set in the row-major order: " + row + ", " + col);
+            fillMissing(index);
+            writeCode(codec.encode(value));
+        }
+
+        private long getCellIndex(int row, int col) {
+            return (long) row * (2L * size - row - 1) / 2 + (col - row - 1);
+        }
+
+        private void fillMissing(long index) throws IOException {
+            while (position < index)
+                writeCode(codec.getMissingCode());
+        }
+
+        private void writeCode(int code) throws IOException {
+            if (codec.getBytesPerCode() == 1)
+                dos.writeByte(code);
+            else
+                dos.writeShort(code);
+            histogram.add(code);
+            position ++;
+        }
+
+        /**
+         * Fill cells not set as missing, write the histogram and then save the file.
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            fillMissing(getNumberOfCells(size));
+            for (long count : histogram.getCounts())
+                dos.writeLong(count);
+            dos.flush();
+            os.commit();
+        }
+
+        /**
+         * Discard the written cells if finish() has not been called.
+         */
+        @Override
+        public void close() throws IOException {
+            dos.close();
+        }
+    }
+
+}
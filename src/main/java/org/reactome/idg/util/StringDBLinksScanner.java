@@ -0,0 +1,141 @@
+package org.reactome.idg.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This class is used to scan a StringDB protein.links.full (or protein.links.detailed) file, which has
+ * space-delimited columns: protein1, protein2 and scores of channels. Only the two proteins and the requested
+ * channels are handled. Fields are located by byte offsets, scores are parsed into ints and fields after the
+ * last requested channel are not touched. Protein ids are decoded only when they are asked for.
+ * @author wug
+ *
+ */
+public class StringDBLinksScanner implements Closeable {
+    private final DelimitedLineScanner scanner;
+    // Column indices of the requested channels in the ascending order
+    private final int[] columns;
+    // Indices of the requested channels in the passed order for columns
+    private final int[] columnToChannel;
+    private final int[] scores;
+    // Offsets of two proteins in the current line
+    private int start1, end1, start2, end2;
+    private long lineNumber;
+
+    public StringDBLinksScanner(InputStream is, String... channels) throws IOException {
+        scanner = new DelimitedLineScanner(is, ' ');
+        if (!scanner.nextLine()) {
+            scanner.close();
+            throw new IllegalStateException("Empty StringDB links file.");
+        }
+        lineNumber = 1;
+        int[] channelToColumn = new int[channels.length];
+        for (int i = 0; i < channels.length; i++)
+            channelToColumn[i] = -1;
+        int column = 0;
+        while (scanner.nextField()) {
+            String header = scanner.getField();
+            for (int i = 0; i < channels.length; i++) {
+                if (channels[i].equalsIgnoreCase(header) && channelToColumn[i] < 0)
+                    channelToColumn[i] = column;
+            }
+            column ++;
+        }
+        for (int i = 0; i < channels.length; i++) {
+            if (channelToColumn[i] < 2) {
+                scanner.close();
+                throw new IllegalArgumentException(channels[i] + " is not defined in the data file.");
+            }
+        }
+        columns = new int[channels.length];
+        columnToChannel = new int[channels.length];
+        Integer[] order = new Integer[channels.length];
+        for (int i = 0; i < channels.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> Integer.compare(channelToColumn[i], channelToColumn[j]));
+        for (int i = 0; i < channels.length; i++) {
+            columns[i] = channelToColumn[order[i]];
+            columnToChannel[i] = order[i];
+        }
+        scores = new int[channels.length];
+    }
+
+    /**
+     * Open a links file, which may be compressed based on its extension.
+     * @param fileName
+     * @param channels
+     * @return
+     * @throws IOException
+     */
+    public static StringDBLinksScanner open(String fileName, String... channels) throws IOException {
+        return new StringDBLinksScanner(DecompressingInputStream.open(new File(fileName)), channels);
+    }
+
+    /**
+     * Move to the next line having two proteins. Empty lines are skipped.
+     * @return false if there is no more line.
+     * @throws IOException
+     */
+    public boolean nextLine() throws IOException {
+        while (scanner.nextLine()) {
+            lineNumber ++;
+            scanner.nextField();
+            if (scanner.isFieldEmpty())
+                continue;
+            start1 = scanner.getFieldStart();
+            end1 = scanner.getFieldEnd();
+            if (!scanner.nextField())
+                throw new IllegalStateException("No protein2 at line " + lineNumber);
+            start2 = scanner.getFieldStart();
+            end2 = scanner.getFieldEnd();
+            int column = 1;
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == column) {
+                    // The same channel requested twice
+                    scores[columnToChannel[i]] = scores[columnToChannel[i - 1]];
+                    continue;
+                }
+                int skip = columns[i] - column - 1;
+                if (scanner.skipFields(skip) < skip || !scanner.nextField())
+                    throw new IllegalStateException("Not enough columns at line " + lineNumber);
+                column = columns[i];
+                scores[columnToChannel[i]] = scanner.getFieldAsInt();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param channel the index of a channel in the channels passed to the constructor
+     * @return the score of the channel in the current line
+     */
+    public int getScore(int channel) {
+        return scores[channel];
+    }
+
+    public String getProtein1() {
+        return scanner.getString(start1, end1);
+    }
+
+    public String getProtein2() {
+        return scanner.getString(start2, end2);
+    }
+
+    /**
+     * Check if the two proteins in the current line are the same without decoding them.
+     * @return
+     */
+    public boolean isSelfInteraction() {
+        return scanner.isSameBytes(start1, end1, start2, end2);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scanner.close();
+    }
+
+}
@@ -3,10 +3,10 @@ package org.reactome.idg.util;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -15,6 +15,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.reactome.idg.model.Protein;
 import org.reactome.idg.model.ProteinIdentifierType;
+import org.reactome.idg.model.ProteinIdInterner;
 import org.reactome.idg.model.ProteinProteinInteraction;
 
 public class StringDBUtil
@@ -23,7 +24,11 @@ public class StringDBUtil
 
 	private StringDBUtil() {}
 
-	public static Set<ProteinProteinInteraction> getBindingPPIs(String stringDBProteinActionsFile, Set<ProteinProteinInteraction> interactionsWithExperiments)
+	/**
+	 * Get binding PPIs in the actions file that are contained by interactionsWithExperiments. Pass the interner used for
+	 * interactionsWithExperiments so that PPIs are compared by ids.
+	 */
+	public static Set<ProteinProteinInteraction> getBindingPPIs(String stringDBProteinActionsFile, Set<ProteinProteinInteraction> interactionsWithExperiments, ProteinIdInterner interner)
 	{
 		int selfInteractions = 0;
 		Set<ProteinProteinInteraction> interactors = new HashSet<>();
@@ -37,17 +42,26 @@ public class StringDBUtil
 								.withFirstRecordAsHeader();
 			try(CSVParser parser = new CSVParser(reader, format);)
 			{
+				// Resolve columns once and stream records so that the actions file is never held in memory
+				Map<String, Integer> headerMap = parser.getHeaderMap();
+				int modeIndex = headerMap.get("mode");
+				int itemAIndex = headerMap.get("item_id_a");
+				int itemBIndex = headerMap.get("item_id_b");
+				Map<String, Protein> idToProtein = new HashMap<>();
 				int numBinding = 0;
-				List<CSVRecord> records = parser.getRecords();
-				int totalNumRecords = records.size();
-				for (CSVRecord record : records)
+				for (CSVRecord record : parser)
 				{
-					if (record.get("mode").equals("binding"))
+					if (record.get(modeIndex).equals("binding"))
 					{
-						String protein1 = record.get("item_id_a");
-						String protein2 = record.get("item_id_b");
-						ProteinProteinInteraction ppi = new ProteinProteinInteraction(new Protein(protein1, ProteinIdentifierType.STRINGDB), new Protein(protein2, ProteinIdentifierType.STRINGDB));
-						if (interactionsWithExperiments.contains(ppi) && !protein1.equals(protein2))
+						String protein1 = record.get(itemAIndex);
+						String protein2 = record.get(itemBIndex);
+						if (protein1.equals(protein2))
+						{
+							selfInteractions++;
+							continue;
+						}
+						ProteinProteinInteraction ppi = new ProteinProteinInteraction(getStringDBProtein(idToProtein, protein1), getStringDBProtein(idToProtein, protein2), interner);
+						if (interactionsWithExperiments.contains(ppi))
 						{
 							// Ok, now we need to start getting mappings from UniProt ACC. If we find an ENSEMBL identifier that's not in the map, add it, but with
 							// the value "<EMPTY>"
@@ -64,10 +78,6 @@ public class StringDBUtil
 							interactors.add(ppi);
 							numBinding++;
 						}
-						else if (protein1.equals(protein2))
-						{
-							selfInteractions++;
-						}
 					}
 				}
 //				System.out.println("Number of \"binding\" StringDB interactions: "+numBinding + "; out of a total of "+parser.getRecordNumber());
@@ -81,34 +91,30 @@ public class StringDBUtil
 		return interactors;
 	}
 
-	public static Set<ProteinProteinInteraction> getPPIsWithExperiments(int threshold, String stringDBProteinLinksFile)
+	public static Set<ProteinProteinInteraction> getPPIsWithExperiments(int threshold, String stringDBProteinLinksFile, ProteinIdInterner interner)
 	{
-		AtomicInteger selfInteractions = new AtomicInteger(0);
+		int selfInteractions = 0;
 		Set<ProteinProteinInteraction> interactionsWithExperiments = new HashSet<>();
-		try (FileReader reader = new FileReader(stringDBProteinLinksFile);
-				CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT
-										.withDelimiter(' ')
-										.withFirstRecordAsHeader());)
+		Map<String, Protein> idToProtein = new HashMap<>();
+		// Only protein1, protein2 and experiments are parsed from each line
+		try (StringDBLinksScanner scanner = StringDBLinksScanner.open(stringDBProteinLinksFile, "experiments"))
 		{
-			parser.forEach( record -> {
-				int experiments = Integer.parseInt(record.get("experiments"));
-//				int dbScore = Integer.parseInt(record.get("database"));
-				if (experiments > threshold/* && dbScore > 0*/)
+			while (scanner.nextLine())
+			{
+				int experiments = scanner.getScore(0);
+				if (experiments > threshold)
 				{
-					String protein1 = record.get("protein1");
-					String protein2 = record.get("protein2");
-					if (!protein1.equals(protein2))
+					if (!scanner.isSelfInteraction())
 					{
-						ProteinProteinInteraction ppi = new ProteinProteinInteraction(new Protein(protein1, ProteinIdentifierType.STRINGDB), new Protein(protein2, ProteinIdentifierType.STRINGDB));
+						ProteinProteinInteraction ppi = new ProteinProteinInteraction(getStringDBProtein(idToProtein, scanner.getProtein1()), getStringDBProtein(idToProtein, scanner.getProtein2()), interner);
 						interactionsWithExperiments.add(ppi);
 					}
 					else
 					{
-						selfInteractions.incrementAndGet();
+						selfInteractions++;
 					}
 				}
-			});
-
+			}
 		}
 		catch (IOException e)
 		{
@@ -118,6 +124,24 @@ public class StringDBUtil
 		return interactionsWithExperiments;
 	}
 
+	/**
+	 * Get the shared Protein for a StringDB id. PPIs collected into a large set then refer to one Protein (and
+	 * one id String) per distinct protein, so memory grows with the output rather than with the parsed lines.
+	 * @param idToProtein cache of proteins created so far
+	 * @param id
+	 * @return
+	 */
+	public static Protein getStringDBProtein(Map<String, Protein> idToProtein, String id)
+	{
+		Protein protein = idToProtein.get(id);
+		if (protein == null)
+		{
+			protein = new Protein(id, ProteinIdentifierType.STRINGDB);
+			idToProtein.put(id, protein);
+		}
+		return protein;
+	}
+
 //	public static String putProteinsInOrder(String p1, String p2)
 //	{
 //		// Use String's compareTo to put the proteins in order, and put a tab between them.
@@ -0,0 +1,137 @@
+package org.reactome.idg.util;
+
+/**
+ * This class is used to keep the top k partners for each gene while values are streamed in. Each gene has
+ * a bounded min-heap keyed by the absolute values so that the memory usage is O(genes * k) regardless of
+ * the number of values. All heaps are saved in primitive arrays to avoid boxing.
+ * @author wug
+ *
+ */
+public class TopKNeighborAccumulator {
+    private final int size;
+    private final int k;
+    // Heaps for all genes: the heap for gene i is in [i * k, i * k + counts[i])
+    private final int[] partners;
+    private final float[] values;
+    private final int[] counts;
+
+    public TopKNeighborAccumulator(int size, int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k should be positive: " + k);
+        this.size = size;
+        this.k = k;
+        long total = (long) size * k;
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many values for the accumulator: " + size + " x " + k);
+        partners = new int[(int) total];
+        values = new float[(int) total];
+        counts = new int[size];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Offer a value between two genes to both of their heaps.
+     * @param gene1
+     * @param gene2
+     * @param value
+     */
+    public void offerPair(int gene1, int gene2, double value) {
+        offer(gene1, gene2, (float) value);
+        offer(gene2, gene1, (float) value);
+    }
+
+    /**
+     * Offer a partner to the heap of a gene.
+     * @param gene
+     * @param partner
+     * @param value
+     */
+    public void offer(int gene, int partner, float value) {
+        int base = gene * k;
+        int count = counts[gene];
+        float abs = Math.abs(value);
+        if (count < k) {
+            // Sift up
+            int i = count;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (Math.abs(values[base + parent]) <= abs)
+                    break;
+                partners[base + i] = partners[base + parent];
+                values[base + i] = values[base + parent];
+                i = parent;
+            }
+            partners[base + i] = partner;
+            values[base + i] = value;
+            counts[gene] = count + 1;
+            return;
+        }
+        // The smallest is at the top
+        if (abs <= Math.abs(values[base]))
+            return;
+        siftDown(partners, values, base, k, partner, value);
+    }
+    
+    /**
+     * Put a partner at the root of a heap in [base, base + length) and sift it down.
+     */
+    private void siftDown(int[] partners,
+                          float[] values,
+                          int base,
+                          int length,
+                          int partner,
+                          float value) {
+        float abs = Math.abs(value);
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= length)
+                break;
+            if (child + 1 < length && Math.abs(values[base + child + 1]) < Math.abs(values[base + child]))
+                child ++;
+            if (Math.abs(values[base + child]) >= abs)
+                break;
+            partners[base + i] = partners[base + child];
+            values[base + i] = values[base + child];
+            i = child;
+        }
+        partners[base + i] = partner;
+        values[base + i] = value;
+    }
+
+    public int getCount(int gene) {
+        return counts[gene];
+    }
+
+    /**
+     * Get the partners of a gene sorted by the absolute values in the descending order. The values are
+     * copied into the passed arrays, which should have at least k elements.
+     * @param gene
+     * @param partnerBuffer
+     * @param valueBuffer
+     * @return the number of partners
+     */
+    public int getNeighbors(int gene, int[] partnerBuffer, float[] valueBuffer) {
+        int count = counts[gene];
+        int base = gene * k;
+        System.arraycopy(partners, base, partnerBuffer, 0, count);
+        System.arraycopy(values, base, valueBuffer, 0, count);
+        // Heap sort: popping the smallest to the end generates the descending order
+        for (int end = count - 1; end > 0; end--) {
+            int partner = partnerBuffer[end];
+            float value = valueBuffer[end];
+            partnerBuffer[end] = partnerBuffer[0];
+            valueBuffer[end] = valueBuffer[0];
+            siftDown(partnerBuffer, valueBuffer, 0, end, partner, value);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.reactome.idg.coexpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.reactome.fi.util.InteractionUtilities;
+import org.reactome.idg.util.CodeHistogram;
+import org.reactome.idg.util.FixedPointCodec;
+import org.reactome.idg.util.TopKNeighborAccumulator;
+
+public class CoExpressionLoaderTests {
+
+    public CoExpressionLoaderTests() {
+    }
+
+    @Test
+    public void testFDRCutoff() {
+        int sampleSize = 100;
+        double fdr = 0.05d;
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(16);
+        CodeHistogram histogram = new CodeHistogram(codec);
+        Random random = new Random(4);
+        int total = 100000;
+        double[] values = new double[total];
+        for (int i = 0; i < total; i++) {
+            // Most pairs are noise with a small fraction of strong correlations
+            double value = i % 100 == 0 ? 0.3d + random.nextDouble() * 0.6d : random.nextGaussian() * 0.1d;
+            value = Math.max(-1.0d, Math.min(1.0d, value));
+            values[i] = value;
+            histogram.add(codec.encode(value));
+        }
+        CoExpressionLoader loader = new CoExpressionLoader();
+        double cutoff = loader.getCutoffValueForFDR(histogram, sampleSize, fdr);
+        // Standard BH via sorting p-values calculated at bin lower edges
+        double[] pvalues = new double[total];
+        for (int i = 0; i < total; i++) {
+            double abs = Math.abs(codec.decode(codec.encode(values[i])));
+            pvalues[i] = CoExpressionLoader.getFisherZPValue(Math.max(0.0d, abs - codec.getMaximumError()), sampleSize);
+        }
+        Arrays.sort(pvalues);
+        int passed = 0;
+        for (int i = 0; i < total; i++) {
+            if (pvalues[i] <= fdr * (i + 1) / total)
+                passed = i + 1;
+        }
+        int selected = 0;
+        for (double value : values) {
+            if (Math.abs(codec.decode(codec.encode(value))) > cutoff)
+                selected ++;
+        }
+        System.out.println("Cutoff: " + cutoff + ", selected: " + selected + ", BH: " + passed);
+        assertTrue(passed > 0);
+        assertEquals(passed, selected);
+    }
+
+    @Test
+    public void testFisherZPValue() {
+        // z = atanh(0.5) * sqrt(97 / 1.06) = 5.2547
+        assertEquals(1.48e-7, CoExpressionLoader.getFisherZPValue(0.5d, 100), 1.0e-8);
+        assertEquals(1.0d, CoExpressionLoader.getFisherZPValue(0.0d, 100), 1.0e-6);
+        assertEquals(0.0d, CoExpressionLoader.getFisherZPValue(1.0d, 100), 0.0d);
+    }
+
+    @Test
+    public void testMutualRank() {
+        int size = 60;
+        double cutoff = 4.0d;
+        List<String> genes = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            genes.add("G" + i);
+        double[][] values = new double[size][size];
+        Random random = new Random(5);
+        // Only the top 17 partners are kept: exact since cutoff^2 < 17
+        TopKNeighborAccumulator accumulator = new TopKNeighborAccumulator(size, 17);
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                values[i][j] = values[j][i] = random.nextDouble() * 2.0d - 1.0d;
+                accumulator.offerPair(i, j, values[i][j]);
+            }
+        }
+        CoExpressionLoader loader = new CoExpressionLoader();
+        Set<String> pairs = loader.loadCoExpressionViaMutualRank(genes, accumulator, cutoff);
+        // Full ranks
+        int[][] ranks = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            List<Integer> partners = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                if (j != i)
+                    partners.add(j);
+            }
+            int gene = i;
+            partners.sort((j1, j2) -> Double.compare(Math.abs(values[gene][j2]), Math.abs(values[gene][j1])));
+            for (int r = 0; r < partners.size(); r++)
+                ranks[i][partners.get(r)] = r + 1;
+        }
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (Math.sqrt((double) ranks[i][j] * ranks[j][i]) <= cutoff)
+                    expected.add(InteractionUtilities.generateFIFromGene(genes.get(i), genes.get(j)));
+            }
+        }
+        System.out.println("Mutual rank pairs: " + pairs.size());
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, pairs);
+    }
+
+    @Test
+    public void testMutualRankTooFewPartners() throws IOException {
+        // 40^2 is larger than the default coexpression.mutual.rank.top, 1000
+        boolean failed = false;
+        try {
+            new CoExpressionLoader().loadCoExpressionViaMutualRank(new File("NotAFile.csv"), 40.0d);
+        }
+        catch(IllegalArgumentException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+}
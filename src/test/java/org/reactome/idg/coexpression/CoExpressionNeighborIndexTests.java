@@ -0,0 +1,146 @@
+package org.reactome.idg.coexpression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CoExpressionNeighborIndexTests {
+
+    public CoExpressionNeighborIndexTests() {
+    }
+
+    @Test
+    public void testNeighborIndex() throws IOException {
+        int size = 30;
+        int k = 5;
+        List<String> genes = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            genes.add("G" + i);
+        double[][] values = new double[size][size];
+        Random random = new Random(3);
+        File file = File.createTempFile("CoExpressionNeighborIndex", ".csv");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(file)) {
+            pr.println("," + String.join(",", genes));
+            for (int i = 0; i < size; i++) {
+                StringBuilder builder = new StringBuilder(genes.get(i));
+                for (int j = 0; j < size; j++) {
+                    if (j <= i) {
+                        builder.append(",NA");
+                        continue;
+                    }
+                    values[i][j] = values[j][i] = random.nextDouble() * 2.0d - 1.0d;
+                    builder.append(",").append(values[i][j]);
+                }
+                pr.println(builder.toString());
+            }
+        }
+        File indexFile = File.createTempFile("CoExpressionNeighborIndex", ".top" + k);
+        indexFile.deleteOnExit();
+        CoExpressionNeighborIndex.build(file, k, indexFile);
+        CoExpressionNeighborIndex index = CoExpressionNeighborIndex.open(indexFile);
+        assertEquals(genes, index.getGenes());
+        for (int i = 0; i < size; i++) {
+            // Brute force
+            List<Integer> partners = new ArrayList<>();
+            for (int j = 0; j < size; j++) {
+                if (j != i)
+                    partners.add(j);
+            }
+            int gene = i;
+            partners.sort((j1, j2) -> Double.compare(Math.abs(values[gene][j2]), Math.abs(values[gene][j1])));
+            Map<String, Double> neighbors = index.getNeighbors(genes.get(i));
+            assertEquals(k, neighbors.size());
+            int c = 0;
+            for (String partner : neighbors.keySet()) {
+                int j = partners.get(c ++);
+                assertEquals(genes.get(j), partner);
+                assertEquals(values[i][j], neighbors.get(partner), 1.0e-4);
+            }
+        }
+        assertEquals(0, index.getNeighbors("NotAGene").size());
+    }
+
+    @Test
+    public void testInvalidIndex() throws IOException {
+        int size = 10;
+        File file = File.createTempFile("CoExpressionNeighborIndex", ".csv");
+        file.deleteOnExit();
+        Random random = new Random(5);
+        try (PrintWriter pr = new PrintWriter(file)) {
+            StringBuilder header = new StringBuilder();
+            for (int i = 0; i < size; i++)
+                header.append(",G").append(i);
+            pr.println(header.toString());
+            for (int i = 0; i < size; i++) {
+                StringBuilder builder = new StringBuilder("G" + i);
+                for (int j = 0; j < size; j++)
+                    builder.append(",").append(j <= i ? "NA" : String.valueOf(random.nextDouble()));
+                pr.println(builder.toString());
+            }
+        }
+        File dir = Files.createTempDirectory("CoExpressionNeighborIndex").toFile();
+        File indexFile = new File(dir, file.getName() + ".top3");
+        CoExpressionNeighborIndex.build(file, 3, indexFile);
+        // Only the index is in the directory after the build
+        assertEquals(1, dir.listFiles().length);
+        byte[] content = Files.readAllBytes(indexFile.toPath());
+        // Truncated
+        Files.write(indexFile.toPath(), Arrays.copyOf(content, content.length - 2));
+        assertTrue(isInvalid(indexFile));
+        // A wrong number of genes in the header
+        byte[] corrupted = content.clone();
+        corrupted[8] = (byte) 0x7F;
+        Files.write(indexFile.toPath(), corrupted);
+        assertTrue(isInvalid(indexFile));
+        Files.write(indexFile.toPath(), content);
+        assertEquals(size, CoExpressionNeighborIndex.open(indexFile).getGenes().size());
+        indexFile.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testRowOrder() throws IOException {
+        File file = File.createTempFile("CoExpressionNeighborIndex", ".csv");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(file)) {
+            pr.println(",G0,G1,G2");
+            // Rows are not in the order of the header
+            pr.println("G1,NA,NA,0.5");
+            pr.println("G0,NA,NA,0.2");
+            pr.println("G2,NA,NA,NA");
+        }
+        File indexFile = File.createTempFile("CoExpressionNeighborIndex", ".top1");
+        indexFile.deleteOnExit();
+        boolean failed = false;
+        try {
+            CoExpressionNeighborIndex.build(file, 1, indexFile);
+        }
+        catch(IllegalStateException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+    private boolean isInvalid(File indexFile) {
+        try {
+            CoExpressionNeighborIndex.open(indexFile);
+            return false;
+        }
+        catch(IOException e) {
+            return true;
+        }
+    }
+
+}
@@ -1,12 +1,24 @@
 package org.reactome.idg.fi;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -16,6 +28,7 @@ import org.reactome.fi.util.FileUtility;
 import org.reactome.fi.util.InteractionUtilities;
 import org.reactome.idg.annotations.FeatureDesc;
 import org.reactome.idg.annotations.FeatureLoader;
+import org.reactome.idg.ppi.MappedPPIDataHandler;
 import org.reactome.idg.util.ApplicationConfig;
 
 public class FeatureFileGeneratorTests {
@@ -23,6 +36,186 @@ public class FeatureFileGeneratorTests {
     public FeatureFileGeneratorTests() {
     }
     
+    @Test
+    public void testCheckCoExpressionThresholdMode() {
+        assertEquals("percentile", FeatureFileGenerator.checkCoExpressionThresholdMode(null));
+        assertEquals("percentile", FeatureFileGenerator.checkCoExpressionThresholdMode(""));
+        assertEquals("fdr", FeatureFileGenerator.checkCoExpressionThresholdMode("fdr"));
+        assertEquals("mutual.rank", FeatureFileGenerator.checkCoExpressionThresholdMode("mutual.rank "));
+        boolean failed = false;
+        try {
+            FeatureFileGenerator.checkCoExpressionThresholdMode("mutual_rank");
+        }
+        catch(IllegalArgumentException e) {
+            failed = e.getMessage().contains("mutual.rank");
+        }
+        assertTrue(failed);
+    }
+    
+    /**
+     * Load PPIs of all species concurrently by loadPPIFeatures() from small generated files and compare them
+     * to PPIs loaded one by one.
+     */
+    @Test
+    public void testConcurrentPPILoading() throws Exception {
+        File dir = Files.createTempDirectory("FeatureFileGenerator").toFile();
+        File propFile = generatePPIFixtures(dir, new Random(11));
+        ApplicationConfig config = ApplicationConfig.getConfig();
+        config.loadProps(propFile.getAbsolutePath());
+        try {
+            MappedPPIDataHandler handler = new MappedPPIDataHandler();
+            Map<String, Set<String>> expected = new LinkedHashMap<>();
+            expected.put("HumanPPI", handler.loadHumanPPIs());
+            expected.put("MousePPI", handler.loadMousePPIs());
+            expected.put("FlyPPI", handler.loadFlyPPIs());
+            expected.put("WormPPI", handler.loadWormPPIs());
+            expected.put("YeastPPI", handler.loadYeastPPIs());
+            for (String feature : expected.keySet())
+                assertTrue(feature, expected.get(feature).size() > 0);
+            Map<String, Set<String>> concurrent = new LinkedHashMap<>();
+            new FeatureFileGenerator().loadPPIFeatures(concurrent);
+            // The same order as loading one by one
+            assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(concurrent.keySet()));
+            assertEquals(expected, concurrent);
+            // One snapshot file for each MOD species
+            assertEquals(4, new File(dir, "snapshots").listFiles().length);
+        }
+        finally {
+            config.loadProps("application.properties");
+            deleteDir(dir);
+        }
+    }
+    
+    /**
+     * Generate BioGrid, StringDB, BioPlex, Panther and Ensembl files for human and four MOD species, and
+     * a configuration file for them.
+     * @return the configuration file
+     */
+    private File generatePPIFixtures(File dir, Random random) throws IOException {
+        int humanSize = 20;
+        int modSize = 30;
+        List<String> lines = new ArrayList<>();
+        lines.add("UniProt\tGene");
+        for (int i = 0; i < humanSize; i++)
+            lines.add("P" + i + "\tH" + i);
+        Files.write(new File(dir, "UniProtToGene.txt").toPath(), lines);
+        // Species, BioGrid taxon, StringDB taxon and Panther name
+        String[][] speciesList = {
+                {"human", "9606", "9606", "HUMAN"},
+                {"mouse", "10090", "10090", "MOUSE"},
+                {"fly", "7227", "7227", "DROME"},
+                {"worm", "6239", "6239", "CAEEL"},
+                {"yeast", "559292", "4932", "YEAST"}
+        };
+        Properties props = new Properties();
+        props.setProperty("reactome.uniprot.to.gene", new File(dir, "UniProtToGene.txt").getAbsolutePath());
+        props.setProperty("biogrid.dir", dir.getAbsolutePath());
+        props.setProperty("stringdb.dir", dir.getAbsolutePath());
+        props.setProperty("bioplex.dir", dir.getAbsolutePath());
+        // The concurrent loading refreshes MOD PPIs from snapshots saved by the sequential loading
+        props.setProperty("ppi.release.snapshot.dir", new File(dir, "snapshots").getAbsolutePath());
+        List<String> idLines = new ArrayList<>();
+        idLines.add("Generated for tests");
+        idLines.add("BIOGRID_ID\tIDENTIFIER_VALUE\tIDENTIFIER_TYPE\tORGANISM_OFFICIAL_NAME");
+        List<String> pantherLines = new ArrayList<>();
+        List<String> familyLines = new ArrayList<>();
+        for (int s = 0; s < speciesList.length; s++) {
+            String species = speciesList[s][0];
+            boolean isHuman = s == 0;
+            int size = isHuman ? humanSize : modSize;
+            // Proteins in gene names for human and UniProt ids for MOD species
+            List<String> proteins = new ArrayList<>();
+            for (int i = 0; i < size; i++)
+                proteins.add(isHuman ? "H" + i : speciesList[s][3] + "_Q" + i);
+            // BioGrid
+            lines.clear();
+            lines.add("#BioGRID Interaction ID\tEntrez Gene Interactor A");
+            for (int i = 0; i < 3 * size; i++) {
+                int p1 = random.nextInt(size);
+                int p2 = random.nextInt(size);
+                String[] tokens = new String[18];
+                Arrays.fill(tokens, "-");
+                tokens[3] = String.valueOf(s * 1000 + p1);
+                tokens[4] = String.valueOf(s * 1000 + p2);
+                tokens[7] = proteins.get(p1);
+                tokens[8] = proteins.get(p2);
+                tokens[15] = tokens[16] = speciesList[s][1];
+                lines.add(String.join("\t", tokens));
+            }
+            Files.write(new File(dir, species + ".biogrid.txt").toPath(), lines);
+            props.setProperty("biogrid." + species + ".name", species + ".biogrid.txt");
+            props.setProperty("biogrid." + species + ".id", speciesList[s][1]);
+            props.setProperty("biogrid." + species + ".db", "SWISS-PROT");
+            if (!isHuman) {
+                for (int i = 0; i < size; i++) {
+                    if (i % 10 != 9) // Some BioGrid ids are not mapped
+                        idLines.add((s * 1000 + i) + "\t" + proteins.get(i) + "\tSWISS-PROT\t" + species);
+                }
+            }
+            // StringDB
+            lines.clear();
+            lines.add("protein1 protein2 neighborhood experiments combined_score");
+            for (int i = 0; i < 3 * size; i++) {
+                lines.add(speciesList[s][2] + ".S" + random.nextInt(size) + " " + 
+                          speciesList[s][2] + ".S" + random.nextInt(size) + " 0 " + 
+                          (random.nextBoolean() ? 0 : random.nextInt(999) + 1) + " 900");
+            }
+            Files.write(new File(dir, species + ".links.txt").toPath(), lines);
+            props.setProperty("stringdb." + species + ".file", species + ".links.txt");
+            lines.clear();
+            lines.add("# species\tuniprot|name\tstring");
+            for (int i = 0; i < size; i++)
+                lines.add(speciesList[s][2] + "\t" + proteins.get(i) + "|N" + i + "\t" + speciesList[s][2] + ".S" + i);
+            Files.write(new File(dir, species + ".map.txt").toPath(), lines);
+            props.setProperty("stringdb." + species + ".map", species + ".map.txt");
+            if (isHuman)
+                continue;
+            // Orthologs
+            props.setProperty("panther." + species + ".name", speciesList[s][3]);
+            for (int i = 0; i < size; i++) {
+                for (int human : new int[]{i % humanSize, (i * 7 + s) % humanSize}) {
+                    pantherLines.add("HUMAN|HGNC=" + human + "|UniProtKB=P" + human + "\t" + 
+                                     speciesList[s][3] + "|MOD=" + i + "|UniProtKB=" + proteins.get(i) + "\tLDO");
+                }
+                familyLines.add("F" + s + "_" + i + "\t" + speciesList[s][1] + ":" + proteins.get(i));
+                familyLines.add("F" + s + "_" + i + "\t9606:P" + ((i * 3) % humanSize));
+            }
+        }
+        Files.write(new File(dir, "identifiers.txt").toPath(), idLines);
+        props.setProperty("biogrid.id.file.selected", new File(dir, "identifiers.txt").getAbsolutePath());
+        props.setProperty("biogrid.id.index", new File(dir, "identifiers.idx").getAbsolutePath());
+        Files.write(new File(dir, "orthologs.txt").toPath(), pantherLines);
+        props.setProperty("panther.orthologous.map", new File(dir, "orthologs.txt").getAbsolutePath());
+        props.setProperty("panther.orthologous.index", new File(dir, "orthologs.idx").getAbsolutePath());
+        Files.write(new File(dir, "families.txt").toPath(), familyLines);
+        props.setProperty("ensebml.protein.family.file", new File(dir, "families.txt").getAbsolutePath());
+        for (String name : new String[]{"293t", "HTC116"}) {
+            lines.clear();
+            lines.add("GeneA\tGeneB\tUniprotA\tUniprotB\tSymbolA\tSymbolB\tpW\tpNI\tpInt");
+            for (int i = 0; i < 2 * humanSize; i++) {
+                lines.add("0\t0\t-\t-\t\"H" + random.nextInt(humanSize) + "\"\tH" + 
+                          random.nextInt(humanSize) + "\t0\t0\t1");
+            }
+            Files.write(new File(dir, "bioplex." + name + ".tsv").toPath(), lines);
+            props.setProperty("bioplex.human." + name + ".file", "bioplex." + name + ".tsv");
+        }
+        File propFile = new File(dir, "application.properties");
+        try (OutputStream os = new FileOutputStream(propFile)) {
+            props.store(os, "PPI fixtures");
+        }
+        return propFile;
+    }
+    
+    private void deleteDir(File dir) {
+        for (File file : dir.listFiles()) {
+            if (file.isDirectory())
+                deleteDir(file);
+            else
+                file.delete();
+        }
+        dir.delete();
+    }
+    
     @Test
     public void checkPredictedPartners() throws Exception {
         double scoreCutoff = 0.80d;
@@ -0,0 +1,201 @@
+package org.reactome.idg.harmonizome;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.reactome.fi.util.InteractionUtilities;
+
+/**
+ * Compare DataProcessor.processCorrelations() with the original implementation based on String.split(). Run
+ * the benchmark with e.g. -Dbenchmark.genes=20000.
+ * @author wug
+ *
+ */
+public class DataProcessorTests {
+
+    public DataProcessorTests() {
+    }
+
+    /**
+     * Generate a symmetric similarity matrix in the format of an unzipped Harmonizome download without
+     * holding the matrix in memory.
+     */
+    private File generateMatrix(int size, long seed) throws IOException {
+        File file = File.createTempFile("DataProcessor", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(new BufferedWriter(new FileWriter(file), 1024 * 1024))) {
+            StringBuilder builder = new StringBuilder("#\t#\tGeneSym");
+            for (int i = 0; i < size; i++)
+                builder.append("\tG").append(i);
+            pr.println(builder.toString());
+            builder.setLength(0);
+            for (int i = 1; i < DataProcessor.FIRST_INDEX; i++) {
+                builder.append("#\t#\t#");
+                for (int j = 0; j < size; j++)
+                    builder.append("\tna");
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+            for (int i = 0; i < size; i++) {
+                builder.append("G").append(i).append("\tna\tna");
+                for (int j = 0; j < size; j++) {
+                    builder.append("\t");
+                    if (i == j) {
+                        builder.append("1.0");
+                        continue;
+                    }
+                    double value = getValue(Math.min(i, j), Math.max(i, j), seed);
+                    if ((i + j) % 11 == 0)
+                        builder.append(String.format("%.6e", value));
+                    else if ((i + j) % 5 == 0)
+                        builder.append(String.format("%.3f", value));
+                    else
+                        builder.append(value);
+                }
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+        }
+        return file;
+    }
+
+    private double getValue(int i, int j, long seed) {
+        long h = seed * 0x9E3779B97F4A7C15L + ((long) i << 32) + j;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        double value = (h >>> 11) / (double) (1L << 53) * 2.0d - 1.0d;
+        // Most similarities are small as in real downloads
+        return value * value * value * value * value * value * value;
+    }
+
+    private Set<String> getGeneUniverse(int size) {
+        Set<String> genes = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 9 != 4)
+                genes.add("G" + i);
+        }
+        return genes;
+    }
+
+    /**
+     * The original implementation based on String.split() for comparison.
+     */
+    private boolean processBySplit(File src, File processed, File filtered, Set<String> allGenes) throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(src));
+        String line = br.readLine();
+        int currentRow = 0;
+        String[] geneHeaders = line.split("\t");
+        for (int i = 1; i < DataProcessor.FIRST_INDEX; i++) {
+            br.readLine();
+            currentRow ++;
+        }
+        PrintWriter processedWriter = new PrintWriter(processed);
+        PrintWriter filteredWriter = new PrintWriter(filtered);
+        StringBuilder builder = new StringBuilder();
+        builder.append("Gene");
+        for (int i = DataProcessor.FIRST_INDEX; i < geneHeaders.length; i++) {
+            if (!allGenes.contains(geneHeaders[i]))
+                continue;
+            builder.append("\t").append(geneHeaders[i]);
+        }
+        processedWriter.println(builder.toString());
+        builder.setLength(0);
+        String[] tokens = null;
+        boolean hasValue = false;
+        int currentPrintLine = 1;
+        while ((line = br.readLine()) != null) {
+            currentRow ++;
+            tokens = line.split("\t");
+            if (!allGenes.contains(tokens[0]))
+                continue;
+            builder.append(tokens[0]);
+            for (int i = 0; i < currentPrintLine; i++)
+                builder.append("\t");
+            for (int i = currentRow + 1; i < tokens.length; i++) {
+                if (!allGenes.contains(geneHeaders[i]))
+                    continue;
+                Double value = new Double(tokens[i]);
+                if (Math.abs(value) >= DataProcessor.VALUE_THRESHOLD) {
+                    String fi = InteractionUtilities.generateFIFromGene(tokens[0], geneHeaders[i]);
+                    filteredWriter.println(fi + "\t" + (value > 0 ? "+" : "-"));
+                    hasValue = true;
+                }
+                builder.append("\t").append(tokens[i]);
+            }
+            processedWriter.println(builder.toString());
+            builder.setLength(0);
+            currentPrintLine ++;
+        }
+        br.close();
+        filteredWriter.close();
+        processedWriter.close();
+        return hasValue;
+    }
+
+    private File createTempFile(String suffix) throws IOException {
+        File file = File.createTempFile("DataProcessor", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testProcessCorrelations() throws Exception {
+        int size = 300;
+        File src = generateMatrix(size, 11);
+        Set<String> allGenes = getGeneUniverse(size);
+        File expectedProcessed = createTempFile(".processed");
+        File expectedFiltered = createTempFile(".filtered");
+        assertTrue(processBySplit(src, expectedProcessed, expectedFiltered, allGenes));
+        File processed = createTempFile(".processed");
+        File filtered = createTempFile(".filtered");
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(allGenes);
+        processor.setGeneNumberThreshold(100);
+        assertTrue(processor.processCorrelations(src, processed, filtered));
+        assertArrayEquals(Files.readAllBytes(expectedProcessed.toPath()), Files.readAllBytes(processed.toPath()));
+        assertArrayEquals(Files.readAllBytes(expectedFiltered.toPath()), Files.readAllBytes(filtered.toPath()));
+    }
+
+    @Test
+    public void benchmarkProcessCorrelations() throws Exception {
+        String genes = System.getProperty("benchmark.genes");
+        if (genes == null)
+            return; // Only run on demand
+        int size = Integer.parseInt(genes);
+        File src = generateMatrix(size, 13);
+        System.out.println("Generated " + src.length() / (1024 * 1024) + " M for " + size + " genes.");
+        Set<String> allGenes = getGeneUniverse(size);
+        File processed = createTempFile(".processed");
+        File filtered = createTempFile(".filtered");
+        long time1 = System.currentTimeMillis();
+        processBySplit(src, processed, filtered, allGenes);
+        long time2 = System.currentTimeMillis();
+        System.out.println("String.split(): " + (time2 - time1) + " ms");
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(allGenes);
+        processor.setGeneNumberThreshold(0);
+        time1 = System.currentTimeMillis();
+        processor.processCorrelations(src, processed, filtered);
+        time2 = System.currentTimeMillis();
+        System.out.println("Kept column indices: " + (time2 - time1) + " ms");
+        src.delete();
+        processed.delete();
+        filtered.delete();
+    }
+
+}
@@ -0,0 +1,133 @@
+package org.reactome.idg.harmonizome;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.reactome.idg.util.PercentilePairSelector;
+
+public class GeneAttributeSimilarityCalculatorTests {
+
+    public GeneAttributeSimilarityCalculatorTests() {
+    }
+
+    /**
+     * Generate a sparse gene by attribute matrix in the format of a Harmonizome download.
+     */
+    private File generateAttributeMatrix(int genes, int attributes, long seed) throws IOException {
+        Random random = new Random(seed);
+        File file = File.createTempFile("gene_attribute_matrix", ".txt.tgz");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)),
+                                                                     StandardCharsets.UTF_8))) {
+            StringBuilder builder = new StringBuilder("#\t#\tGeneSym");
+            for (int j = 0; j < attributes; j++)
+                builder.append("\tA").append(j);
+            pr.println(builder.toString());
+            builder.setLength(0);
+            for (int i = 1; i < DataProcessor.FIRST_INDEX; i++) {
+                builder.append("#\t#\t#");
+                for (int j = 0; j < attributes; j++)
+                    builder.append("\tna");
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+            for (int i = 0; i < genes; i++) {
+                builder.append("G").append(i).append("\tna\t").append(i);
+                for (int j = 0; j < attributes; j++) {
+                    builder.append("\t");
+                    double r = random.nextDouble();
+                    if (i == 3 || r < 0.85) // Gene 3 has no attribute
+                        builder.append(j % 13 == 0 ? "0" : "0.000000");
+                    else if (r < 0.87)
+                        builder.append("na");
+                    else if (r < 0.94)
+                        builder.append(random.nextBoolean() ? "1.000000" : "-1.000000");
+                    else
+                        builder.append(String.format("%.6f", random.nextGaussian()));
+                }
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testSimilarities() throws Exception {
+        int genes = 200;
+        File file = generateAttributeMatrix(genes, 60, 3);
+        Set<String> allGenes = HarmonizomePairwiseLoaderTests.getGeneUniverse(genes);
+        GeneAttributeSimilarityCalculator calculator = new GeneAttributeSimilarityCalculator();
+        calculator.setThreads(3);
+        calculator.setBlockSize(7);
+        GeneAttributeSimilarityCalculator.SparseMatrix matrix = calculator.loadAttributeMatrix(file, allGenes);
+        assertEquals(allGenes.size(), matrix.getNumberOfRows());
+        assertEquals(60, matrix.getNumberOfColumns());
+        // Dense reference calculated from a normalized copy of the matrix
+        GeneAttributeSimilarityCalculator.SparseMatrix copy = calculator.loadAttributeMatrix(file, allGenes);
+        copy.normalizeRows();
+        // Transposing twice should give the same values
+        GeneAttributeSimilarityCalculator.SparseMatrix transpose = copy.transpose().transpose();
+        int size = copy.getNumberOfRows();
+        List<String> rowNames = matrix.getRowNames();
+        float[][] values = new float[size][];
+        for (int i = 0; i < size; i++) {
+            values[i] = copy.getDenseRow(i);
+            assertArrayEquals(values[i], transpose.getDenseRow(i), 0.0f);
+        }
+        double percentile = 0.05d;
+        for (double maximumCutoff : new double[]{0.999d, 0.5d}) {
+            PercentilePairSelector expected = new PercentilePairSelector(percentile, (long) size * (size - 1) / 2, maximumCutoff);
+            for (int i = 0; i < size; i++) {
+                for (int j = i + 1; j < size; j++) {
+                    double sum = 0.0d;
+                    for (int k = 0; k < 60; k++) {
+                        if (values[i][k] != 0.0f && values[j][k] != 0.0f)
+                            sum += (double) values[i][k] * values[j][k];
+                    }
+                    expected.add(i, j, sum);
+                }
+            }
+            PercentilePairSelector actual = calculator.calculateSimilarities(calculator.loadAttributeMatrix(file, allGenes),
+                                                                             percentile,
+                                                                             maximumCutoff);
+            assertEquals(expected.getTotal(), actual.getTotal());
+            assertEquals(expected.getCutoff(), actual.getCutoff(), 0.0d);
+            Set<String> expectedPairs = new HashSet<>();
+            expected.select((row, col, value) -> expectedPairs.add(rowNames.get(row) + "\t" + rowNames.get(col) + "\t" + value));
+            Set<String> actualPairs = new HashSet<>();
+            actual.select((row, col, value) -> actualPairs.add(rowNames.get(row) + "\t" + rowNames.get(col) + "\t" + value));
+            assertTrue(expectedPairs.size() > 0);
+            assertEquals(expectedPairs, actualPairs);
+        }
+    }
+
+    @Test
+    public void testSparseSelection() throws Exception {
+        // Most pairs are zeros so that the cutoff falls into zeros
+        PercentilePairSelector selector = new PercentilePairSelector(0.5d, 100, 0.999d);
+        selector.add(0, 1, 0.8d);
+        selector.add(0, 2, -0.3d);
+        selector.addZeros(98);
+        assertEquals(100, selector.getTotal());
+        assertEquals(0.0d, selector.getCutoff(), 0.0d);
+        Set<String> pairs = new HashSet<>();
+        selector.select((row, col, value) -> pairs.add(row + "\t" + col));
+        assertEquals(2, pairs.size());
+    }
+
+}
@@ -0,0 +1,293 @@
+package org.reactome.idg.harmonizome;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.reactome.fi.util.InteractionUtilities;
+import org.reactome.idg.util.BlockArchive;
+
+public class HarmonizomePairwiseLoaderTests {
+
+    public HarmonizomePairwiseLoaderTests() {
+    }
+
+    /**
+     * Generate a similarity matrix in the format of a Harmonizome download.
+     */
+    static File generateDownload(int size, long seed) throws IOException {
+        List<String> genes = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            genes.add("G" + i);
+        double[][] values = new double[size][size];
+        Random random = new Random(seed);
+        for (int i = 0; i < size; i++) {
+            values[i][i] = 1.0d;
+            for (int j = i + 1; j < size; j++) {
+                double value = random.nextDouble() * 2.0d - 1.0d;
+                if (j % 7 == 0)
+                    value = Math.round(value * 1000) / 1000.0d; // Ties
+                values[i][j] = values[j][i] = value;
+            }
+        }
+        File file = File.createTempFile("gene_similarity_matrix_cosine", ".txt.tgz");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)),
+                                                                     StandardCharsets.UTF_8))) {
+            StringBuilder builder = new StringBuilder("#\t#\tGeneSym");
+            for (String gene : genes)
+                builder.append("\t").append(gene);
+            pr.println(builder.toString());
+            builder.setLength(0);
+            for (int i = 1; i < DataProcessor.FIRST_INDEX; i++) {
+                builder.append("#\t#\t#");
+                for (int j = 0; j < size; j++)
+                    builder.append("\tna");
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+            for (int i = 0; i < size; i++) {
+                builder.append(genes.get(i)).append("\tna\tna");
+                for (int j = 0; j < size; j++) {
+                    builder.append("\t");
+                    if (i == j)
+                        builder.append("1.0");
+                    else if ((i + j) % 11 == 0)
+                        builder.append(String.format("%.6e", values[i][j])); // Use exponent
+                    else
+                        builder.append(values[i][j]);
+                }
+                pr.println(builder.toString());
+                builder.setLength(0);
+            }
+        }
+        return file;
+    }
+
+    static Set<String> getGeneUniverse(int size) {
+        Set<String> genes = new HashSet<>();
+        // Some genes are not in the universe
+        for (int i = 0; i < size; i++) {
+            if (i % 9 != 4)
+                genes.add("G" + i);
+        }
+        return genes;
+    }
+
+    @Test
+    public void testStreamingLoading() throws Exception {
+        int size = 150;
+        File file = generateDownload(size, 7);
+        double percentile = 0.01d;
+        HarmonizomePairwiseLoader loader = new HarmonizomePairwiseLoader();
+        loader.setAllGenes(getGeneUniverse(size));
+        loader.setNeedNegative(true);
+        Set<String> streamed = loader.loadPairwisesFromStream(file, percentile, null);
+        // Use the old path via temporary files
+        File unzipped = File.createTempFile("HarmonizomePairwiseLoader", ".txt");
+        unzipped.deleteOnExit();
+        new DataDownloader().unzipDownload(file, unzipped);
+        File processed = new File(unzipped.getAbsolutePath() + ".processed");
+        processed.deleteOnExit();
+        File filtered = new File(unzipped.getAbsolutePath() + ".filtered");
+        filtered.deleteOnExit();
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(getGeneUniverse(size));
+        processor.setGeneNumberThreshold(0);
+        processor.setValueThreshold(0.0d);
+        processor.processCorrelations(unzipped, processed, filtered);
+        Set<String> expected = loader.loadPairwisesFromProcessed(processed, percentile);
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, streamed);
+    }
+
+    @Test
+    public void testConcurrentLoading() throws Exception {
+        int size = 120;
+        Map<File, Double> file2percentile = new LinkedHashMap<>();
+        for (int i = 0; i < 6; i++)
+            file2percentile.put(generateDownload(size - 10 * i, 20 + i), 0.01d * (i + 1));
+        List<File> files = new ArrayList<>(file2percentile.keySet());
+        HarmonizomePairwiseLoader loader = new HarmonizomePairwiseLoader();
+        loader.setAllGenes(getGeneUniverse(size));
+        loader.setNeedNegative(true);
+        File first = files.get(0);
+        assertTrue(loader.estimateMemory(first, 0.01d) > 0);
+        // Loading all values from a processed file needs more memory
+        assertTrue(loader.estimateMemory(first, 0.01d, false) > loader.estimateMemory(first, 0.01d, true));
+        int threads = loader.getLoadingThreads(file2percentile);
+        assertTrue(threads >= 1);
+        // Load one by one in the calling thread
+        Map<File, Set<String>> expected = new LinkedHashMap<>();
+        for (File file : files)
+            expected.put(file, loader.loadPairwisesFromDownload(file, file2percentile.get(file)));
+        Map<File, Set<String>> concurrent = loader.loadPairwisesFromDownloads(files, file2percentile, 4);
+        // The same order as the passed files
+        assertEquals(files, new ArrayList<>(concurrent.keySet()));
+        for (File file : files) {
+            assertTrue(expected.get(file).size() > 0);
+            assertEquals(expected.get(file), concurrent.get(file));
+        }
+    }
+
+    @Test
+    public void testInstanceThresholds() throws Exception {
+        int size = 50;
+        File unzipped = File.createTempFile("HarmonizomePairwiseLoader", ".txt");
+        unzipped.deleteOnExit();
+        new DataDownloader().unzipDownload(generateDownload(size, 5), unzipped);
+        File processed = File.createTempFile("HarmonizomePairwiseLoader", ".processed");
+        processed.deleteOnExit();
+        File filtered = File.createTempFile("HarmonizomePairwiseLoader", ".filtered");
+        filtered.deleteOnExit();
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(getGeneUniverse(size));
+        // The default gene number threshold rejects the file
+        assertFalse(processor.processCorrelations(unzipped, processed, filtered));
+        processor.setGeneNumberThreshold(0);
+        processor.setValueThreshold(0.9d);
+        assertTrue(processor.processCorrelations(unzipped, processed, filtered));
+        assertEquals(12000, DataProcessor.GENE_NUMBER_THRESHOLD);
+        assertEquals(0.5d, DataProcessor.VALUE_THRESHOLD, 0.0d);
+        for (String line : Files.readAllLines(filtered.toPath()))
+            assertTrue(line.endsWith("+") || line.endsWith("-"));
+    }
+
+    @Test
+    public void testArchiveLoading() throws Exception {
+        int size = 120;
+        File unzipped = File.createTempFile("HarmonizomePairwiseLoader", ".txt");
+        unzipped.deleteOnExit();
+        new DataDownloader().unzipDownload(generateDownload(size, 3), unzipped);
+        File processed = File.createTempFile("HarmonizomePairwiseLoader", "_processed.txt");
+        processed.deleteOnExit();
+        File filtered = File.createTempFile("HarmonizomePairwiseLoader", "_filtered.txt");
+        filtered.deleteOnExit();
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(getGeneUniverse(size));
+        processor.setGeneNumberThreshold(0);
+        processor.setValueThreshold(0.8d);
+        assertTrue(processor.processCorrelations(unzipped, processed, filtered));
+        File archiveFile = File.createTempFile("HarmonizomePairwiseLoader", ".rba");
+        archiveFile.deleteOnExit();
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(archiveFile, 2)) {
+            writer.addEntry(processed.getName(), processed);
+            writer.addEntry(filtered.getName(), filtered);
+        }
+        HarmonizomePairwiseLoader loader = new HarmonizomePairwiseLoader();
+        loader.setAllGenes(getGeneUniverse(size));
+        loader.setNeedNegative(true);
+        double percentile = 0.01d;
+        try (BlockArchive archive = BlockArchive.open(archiveFile)) {
+            Set<String> expected = loader.loadPairwisesFromProcessed(processed, percentile);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, loader.loadPairwisesFromProcessed(archive, processed.getName(), percentile));
+            assertEquals(loader.loadPairwises(filtered), loader.loadPairwises(archive, filtered.getName()));
+        }
+    }
+
+    @Test
+    public void testArchiveFallback() throws Exception {
+        int size = 100;
+        File dir = Files.createTempDirectory("HarmonizomePairwiseLoader").toFile();
+        File download = new File(dir, "gene_similarity_matrix_cosine.txt.tgz");
+        Files.copy(generateDownload(size, 13).toPath(), download.toPath());
+        File unzipped = File.createTempFile("HarmonizomePairwiseLoader", ".txt");
+        unzipped.deleteOnExit();
+        new DataDownloader().unzipDownload(download, unzipped);
+        File processed = new File(dir, "gene_similarity_matrix_cosine_processed.txt");
+        File filtered = new File(dir, "gene_similarity_matrix_cosine_filtered.txt");
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(getGeneUniverse(size));
+        processor.setGeneNumberThreshold(0);
+        processor.setValueThreshold(0.8d);
+        assertTrue(processor.processCorrelations(unzipped, processed, filtered));
+        HarmonizomePairwiseLoader loader = new HarmonizomePairwiseLoader();
+        loader.setAllGenes(getGeneUniverse(size));
+        loader.setNeedNegative(true);
+        double percentile = 0.01d;
+        Set<String> expectedProcessed = loader.loadPairwisesFromProcessed(processed, percentile);
+        assertTrue(expectedProcessed.size() > 0);
+        Set<String> expectedFiltered = loader.loadPairwises(filtered);
+        assertTrue(expectedFiltered.size() > 0);
+        // Archive the processed files and delete the plain files together with the download
+        new DataDownloader().cleanupDir(dir.getAbsolutePath());
+        assertFalse(processed.exists());
+        assertFalse(filtered.exists());
+        assertFalse(download.exists());
+        assertTrue(new File(dir, DataDownloader.PROCESSED_ARCHIVE).exists());
+        assertTrue(new File(dir, DataDownloader.FILTERED_ARCHIVE).exists());
+        assertEquals(Arrays.asList(filtered), loader.getPairwiseFiles(dir));
+        assertEquals(expectedFiltered, loader.loadPairwises(filtered));
+        assertEquals(expectedProcessed, loader.loadPairwisesFromProcessed(processed, percentile));
+        // The removed download is loaded from its archived processed file
+        assertEquals(expectedProcessed, loader.loadPairwisesFromDownload(download, percentile));
+        // A second cleanup keeps entries in the existing archives
+        File other = new File(dir, "other_processed.txt");
+        Files.write(other.toPath(), Arrays.asList("#\tG1", "G1\t1.0"));
+        new DataDownloader().cleanupDir(dir.getAbsolutePath());
+        try (BlockArchive archive = BlockArchive.open(new File(dir, DataDownloader.PROCESSED_ARCHIVE))) {
+            assertEquals(new HashSet<>(Arrays.asList(processed.getName(), other.getName())),
+                         new HashSet<>(archive.getEntryNames()));
+        }
+        assertEquals(expectedProcessed, loader.loadPairwisesFromProcessed(processed, percentile));
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testNeighborLoading() throws Exception {
+        int size = 80;
+        int k = 5;
+        File file = generateDownload(size, 21);
+        Set<String> allGenes = getGeneUniverse(size);
+        HarmonizomePairwiseLoader loader = new HarmonizomePairwiseLoader();
+        loader.setAllGenes(allGenes);
+        loader.setNeedNegative(true);
+        Set<String> actual = loader.loadPairwisesViaNeighbors(file, k);
+        // Brute force from the full matrix
+        File unzipped = File.createTempFile("HarmonizomePairwiseLoader", ".txt");
+        unzipped.deleteOnExit();
+        new DataDownloader().unzipDownload(file, unzipped);
+        List<String> lines = Files.readAllLines(unzipped.toPath());
+        String[] header = lines.get(0).split("\t");
+        Set<String> expected = new HashSet<>();
+        for (int row = DataProcessor.FIRST_INDEX; row < lines.size(); row++) {
+            String[] tokens = lines.get(row).split("\t");
+            if (!allGenes.contains(tokens[0]))
+                continue;
+            List<Integer> columns = new ArrayList<>();
+            for (int i = DataProcessor.FIRST_INDEX; i < tokens.length; i++) {
+                if (allGenes.contains(header[i]) && !header[i].equals(tokens[0]))
+                    columns.add(i);
+            }
+            columns.sort((i, j) -> Float.compare(Math.abs(Float.parseFloat(tokens[j])), Math.abs(Float.parseFloat(tokens[i]))));
+            for (int i : columns.subList(0, k)) {
+                String rel = InteractionUtilities.generateFIFromGene(tokens[0], header[i]);
+                expected.add(rel + "\t" + (Float.parseFloat(tokens[i]) > 0.0f ? "+" : "-"));
+            }
+        }
+        assertTrue(expected.size() >= allGenes.size() * k / 2);
+        assertEquals(expected, actual);
+    }
+
+}
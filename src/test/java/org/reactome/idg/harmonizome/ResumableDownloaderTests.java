@@ -0,0 +1,205 @@
+package org.reactome.idg.harmonizome;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class ResumableDownloaderTests {
+    private HttpServer server;
+    private Map<String, byte[]> pathToContent = new HashMap<>();
+    // Paths for which the first request is dropped in the middle
+    private Set<String> dropOnce = Collections.synchronizedSet(new HashSet<>());
+    private List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private File dir;
+
+    public ResumableDownloaderTests() {
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                serve(exchange);
+            }
+            catch(IOException e) {
+                // Expected for a dropped connection
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        dir = Files.createTempDirectory("ResumableDownloader").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        for (File file : dir.listFiles())
+            file.delete();
+        dir.delete();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] content = pathToContent.get(path);
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int start = 0;
+        if (range != null) {
+            ranges.add(path + ":" + range);
+            start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf("-")));
+            if (start >= content.length) {
+                exchange.getResponseHeaders().add("Content-Range", "bytes */" + content.length);
+                exchange.sendResponseHeaders(416, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Range",
+                                              "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+            exchange.sendResponseHeaders(206, content.length - start);
+        }
+        else
+            exchange.sendResponseHeaders(200, content.length);
+        OutputStream os = exchange.getResponseBody();
+        if (dropOnce.remove(path)) {
+            os.write(content, start, (content.length - start) / 2);
+            os.flush();
+            // Closing with fewer bytes than declared drops the connection
+            return;
+        }
+        os.write(content, start, content.length - start);
+    }
+
+    private byte[] generateGzip(int lines, long seed) throws IOException {
+        Random random = new Random(seed);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream os = new GZIPOutputStream(bos)) {
+            for (int i = 0; i < lines; i++)
+                os.write(("G" + i + "\t" + random.nextDouble() + "\n").getBytes());
+        }
+        return bos.toByteArray();
+    }
+
+    private String getUrl(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private ResumableDownloader createDownloader() {
+        ResumableDownloader downloader = new ResumableDownloader();
+        downloader.setRetryWait(1L);
+        downloader.setMaxAttempts(3);
+        return downloader;
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        byte[] content = generateGzip(50000, 1);
+        pathToContent.put("/a.txt.gz", content);
+        dropOnce.add("/a.txt.gz");
+        File dest = new File(dir, "a.txt.tgz");
+        createDownloader().download(getUrl("/a.txt.gz"), dest);
+        assertArrayEquals(content, Files.readAllBytes(dest.toPath()));
+        assertFalse(new File(dir, "a.txt.tgz.part").exists());
+        // The second request should resume from the dropped position
+        assertEquals(1, ranges.size());
+        assertTrue(ranges.get(0).startsWith("/a.txt.gz:bytes=" + (content.length / 2)));
+    }
+
+    @Test
+    public void testCorruptedDownload() throws IOException {
+        byte[] content = generateGzip(10000, 2);
+        content[content.length / 2] ^= 0x5a;
+        pathToContent.put("/b.txt.gz", content);
+        File dest = new File(dir, "b.txt.tgz");
+        try {
+            createDownloader().download(getUrl("/b.txt.gz"), dest);
+            fail("A corrupted file should not be accepted");
+        }
+        catch(IOException e) {
+            // Expected
+        }
+        assertFalse(dest.exists());
+    }
+
+    @Test
+    public void testDownloadAll() throws Exception {
+        Map<String, String> fileNameToUrl = new LinkedHashMap<>();
+        for (int i = 0; i < 6; i++) {
+            String path = "/data" + i + ".txt.gz";
+            pathToContent.put(path, generateGzip(20000 + i * 1000, i));
+            if (i % 2 == 0)
+                dropOnce.add(path);
+            fileNameToUrl.put("data" + i + ".txt.tgz", getUrl(path));
+        }
+        List<String> handled = new ArrayList<>();
+        ResumableDownloader downloader = createDownloader();
+        downloader.setThreads(2);
+        downloader.downloadAll(fileNameToUrl, dir, (fileName, file) -> {
+            String path = "/" + fileName.replace(".tgz", ".gz");
+            assertArrayEquals(pathToContent.get(path), Files.readAllBytes(file.toPath()));
+            handled.add(fileName);
+        });
+        assertEquals(fileNameToUrl.keySet(), new HashSet<>(handled));
+        assertEquals(3, ranges.size());
+    }
+
+    @Test
+    public void testProbeHeader() throws Exception {
+        pathToContent.put("/big.txt.gz", Files.readAllBytes(HarmonizomePairwiseLoaderTests.generateDownload(300, 3).toPath()));
+        pathToContent.put("/small.txt.gz", Files.readAllBytes(HarmonizomePairwiseLoaderTests.generateDownload(60, 4).toPath()));
+        String header = createDownloader().readGzipFirstLine(getUrl("/big.txt.gz"), 4096);
+        assertTrue(header.startsWith("#\t#\tGeneSym\tG0\tG1"));
+        assertEquals(DataProcessor.FIRST_INDEX + 300, header.split("\t").length);
+        assertEquals("/big.txt.gz:bytes=0-4095", ranges.get(0));
+        // Too few bytes for the header line
+        assertEquals(null, createDownloader().readGzipFirstLine(getUrl("/big.txt.gz"), 64));
+
+        DataDownloader dataDownloader = new DataDownloader();
+        DataProcessor processor = new DataProcessor();
+        processor.setAllGenes(HarmonizomePairwiseLoaderTests.getGeneUniverse(300));
+        processor.setGeneNumberThreshold(100);
+        assertTrue(dataDownloader.probeDataset(getUrl("/big.txt.gz"), processor));
+        assertFalse(dataDownloader.probeDataset(getUrl("/small.txt.gz"), processor));
+        // The small dataset should not be transferred
+        ResumableDownloader downloader = createDownloader();
+        downloader.setFilter((fileName, url) -> dataDownloader.probeDataset(url, processor));
+        Map<String, String> fileNameToUrl = new LinkedHashMap<>();
+        fileNameToUrl.put("big.txt.tgz", getUrl("/big.txt.gz"));
+        fileNameToUrl.put("small.txt.tgz", getUrl("/small.txt.gz"));
+        List<String> handled = new ArrayList<>();
+        downloader.downloadAll(fileNameToUrl, dir, (fileName, file) -> handled.add(fileName));
+        assertEquals(Collections.singletonList("big.txt.tgz"), handled);
+        assertFalse(new File(dir, "small.txt.tgz").exists());
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.reactome.idg.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Check ProteinProteinInteraction against the original implementation based on toString(). Run the benchmark
+ * of set building with e.g. -Dbenchmark.ppis=5000000.
+ * @author wug
+ *
+ */
+public class ProteinProteinInteractionTests {
+
+    public ProteinProteinInteractionTests() {
+    }
+
+    /**
+     * The original PPI, which is hashed and compared by toString().
+     */
+    private static class StringPPI {
+        private final String protein1;
+        private final String protein2;
+
+        public StringPPI(String protein1, String protein2) {
+            this.protein1 = protein1;
+            this.protein2 = protein2;
+        }
+
+        @Override
+        public String toString() {
+            return protein1.compareTo(protein2) < 0 ? protein1 + "\t" + protein2 : protein2 + "\t" + protein1;
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other != null && toString().equals(other.toString());
+        }
+    }
+
+    private List<String[]> generatePairs(int total, int proteins, long seed) {
+        Random random = new Random(seed);
+        List<String[]> pairs = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            // New String objects for each pair as parsed from a file
+            String protein1 = new String("4932.YAL" + random.nextInt(proteins) + "C");
+            String protein2 = new String("4932.YAL" + random.nextInt(proteins) + "W");
+            pairs.add(new String[]{protein1, protein2});
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testEquality() {
+        Protein p1 = new Protein(new String("P12345"), ProteinIdentifierType.UNIPROT_ACCESSION);
+        Protein p2 = new Protein(new String("Q99999"), ProteinIdentifierType.UNIPROT_ACCESSION);
+        Protein p1Copy = new Protein(new String("P12345"), ProteinIdentifierType.UNIPROT_ACCESSION);
+        assertEquals(p1, p1Copy);
+        assertEquals(p1.hashCode(), p1Copy.hashCode());
+        assertFalse(p1.equals(new Protein("P12345", ProteinIdentifierType.STRINGDB)));
+        ProteinIdInterner interner = new ProteinIdInterner();
+        ProteinProteinInteraction ppi = new ProteinProteinInteraction(p1, p2, interner);
+        ProteinProteinInteraction reversed = new ProteinProteinInteraction(p2, p1Copy, interner);
+        assertEquals(2, interner.size());
+        assertEquals(ppi, reversed);
+        assertEquals(ppi.hashCode(), reversed.hashCode());
+        assertEquals("P12345\tQ99999", reversed.toString());
+        assertEquals(0, ppi.compareTo(reversed));
+        // Identifier types are not used for PPIs
+        ProteinProteinInteraction other = new ProteinProteinInteraction(new Protein("Q99999", ProteinIdentifierType.STRINGDB),
+                                                                        new Protein("P12345", ProteinIdentifierType.STRINGDB),
+                                                                        new ProteinIdInterner());
+        assertEquals(ppi, other);
+        assertEquals(ppi.hashCode(), other.hashCode());
+        assertFalse(ppi.equals(new ProteinProteinInteraction(p1, p1, interner)));
+        assertFalse(ppi.equals(new ProteinProteinInteraction(p1, new Protein("Q99998", null), new ProteinIdInterner())));
+        // Getters follow the canonical order
+        assertTrue(reversed.getProtein1() == p1);
+        assertEquals(p2, reversed.getProtein2());
+        interner.clear();
+        assertEquals(0, interner.size());
+    }
+
+    @Test
+    public void testSetAndOrder() {
+        List<String[]> pairs = generatePairs(20000, 300, 17);
+        Set<StringPPI> expected = new HashSet<>();
+        Set<ProteinProteinInteraction> actual = new HashSet<>();
+        ProteinIdInterner interner = new ProteinIdInterner();
+        for (String[] pair : pairs) {
+            expected.add(new StringPPI(pair[0], pair[1]));
+            actual.add(new ProteinProteinInteraction(new Protein(pair[0], ProteinIdentifierType.STRINGDB),
+                                                     new Protein(pair[1], ProteinIdentifierType.STRINGDB),
+                                                     interner));
+        }
+        assertEquals(expected.size(), actual.size());
+        // The same set from another interner
+        ProteinIdInterner other = new ProteinIdInterner();
+        Set<ProteinProteinInteraction> copy = new HashSet<>();
+        for (int i = pairs.size() - 1; i >= 0; i--)
+            copy.add(new ProteinProteinInteraction(new Protein(pairs.get(i)[1], ProteinIdentifierType.STRINGDB),
+                                                   new Protein(pairs.get(i)[0], ProteinIdentifierType.STRINGDB),
+                                                   other));
+        assertEquals(actual, copy);
+        List<String> expectedTexts = new ArrayList<>();
+        expected.forEach(ppi -> expectedTexts.add(ppi.toString()));
+        expectedTexts.sort(null);
+        List<ProteinProteinInteraction> sorted = new ArrayList<>(actual);
+        sorted.sort(null);
+        List<String> actualTexts = new ArrayList<>();
+        sorted.forEach(ppi -> actualTexts.add(ppi.toString()));
+        assertEquals(expectedTexts, actualTexts);
+    }
+
+    /**
+     * Follow StringDBUtil: build a set of PPIs from the links file, and then keep PPIs from the actions file
+     * contained by the first set. Proteins are shared through a cache as StringDBUtil.getStringDBProtein().
+     */
+    @Test
+    public void benchmarkSetBuilding() {
+        String total = System.getProperty("benchmark.ppis");
+        if (total == null)
+            return; // Only run on demand
+        int size = Integer.parseInt(total);
+        List<String[]> links = generatePairs(size, 20000, 19);
+        // Half of the actions are in links
+        List<String[]> actions = new ArrayList<>(links.subList(0, size / 2));
+        actions.addAll(generatePairs(size / 2, 20000, 23));
+        for (int round = 0; round < 3; round++) {
+            long time1 = System.currentTimeMillis();
+            Map<String, String> idToString = new HashMap<>();
+            Set<StringPPI> stringLinks = new HashSet<>();
+            for (String[] pair : links)
+                stringLinks.add(new StringPPI(idToString.computeIfAbsent(pair[0], key -> key),
+                                              idToString.computeIfAbsent(pair[1], key -> key)));
+            Set<StringPPI> stringKept = new HashSet<>();
+            for (String[] pair : actions) {
+                StringPPI ppi = new StringPPI(idToString.computeIfAbsent(pair[0], key -> key),
+                                              idToString.computeIfAbsent(pair[1], key -> key));
+                if (stringLinks.contains(ppi))
+                    stringKept.add(ppi);
+            }
+            long time2 = System.currentTimeMillis();
+            Map<String, Protein> idToProtein = new HashMap<>();
+            ProteinIdInterner interner = new ProteinIdInterner();
+            Set<ProteinProteinInteraction> ppiLinks = new HashSet<>();
+            for (String[] pair : links)
+                ppiLinks.add(new ProteinProteinInteraction(getProtein(idToProtein, pair[0]), getProtein(idToProtein, pair[1]), interner));
+            Set<ProteinProteinInteraction> ppiKept = new HashSet<>();
+            for (String[] pair : actions) {
+                ProteinProteinInteraction ppi = new ProteinProteinInteraction(getProtein(idToProtein, pair[0]),
+                                                                              getProtein(idToProtein, pair[1]),
+                                                                              interner);
+                if (ppiLinks.contains(ppi))
+                    ppiKept.add(ppi);
+            }
+            long time3 = System.currentTimeMillis();
+            assertEquals(stringKept.size(), ppiKept.size());
+            System.out.println("Round " + round + " for " + links.size() + " links and " + actions.size() + " actions (" +
+                               ppiKept.size() + " kept): toString() hashing " + (time2 - time1) + " ms, " +
+                               "interned ids " + (time3 - time2) + " ms");
+        }
+    }
+
+    private Protein getProtein(Map<String, Protein> idToProtein, String id) {
+        return idToProtein.computeIfAbsent(id, key -> new Protein(key, ProteinIdentifierType.STRINGDB));
+    }
+
+}
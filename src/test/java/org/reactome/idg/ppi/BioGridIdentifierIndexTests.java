@@ -0,0 +1,106 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class BioGridIdentifierIndexTests {
+
+    public BioGridIdentifierIndexTests() {
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Random random = new Random(11);
+        String[] namespaces = {"SWISS-PROT", "ENTREZ_GENE", "SYSTEMATIC_NAME", "OFFICIAL_SYMBOL"};
+        File idFile = File.createTempFile("BIOGRID-IDENTIFIERS", ".tab.txt");
+        idFile.deleteOnExit();
+        // Expected values parsed as the original line-based loading
+        Map<String, Map<String, String>> namespaceToMap = new HashMap<>();
+        Map<String, List<String>> keyToValues = new HashMap<>();
+        Set<String> usedNamespaces = new LinkedHashSet<>();
+        try (PrintWriter pr = new PrintWriter(idFile, StandardCharsets.UTF_8.name())) {
+            pr.println("BIOGRID IDENTIFIERS");
+            pr.println("Some notes about the file");
+            pr.println("BIOGRID_ID\tIDENTIFIER_VALUE\tIDENTIFIER_TYPE\tORGANISM_OFFICIAL_NAME");
+            for (int i = 0; i < 5000; i++) {
+                String id = String.valueOf(random.nextInt(1000) + 1);
+                String namespace = namespaces[random.nextInt(namespaces.length)];
+                String value = namespace.charAt(0) + "" + random.nextInt(100000) + (i % 7 == 0 ? "-é" : "");
+                pr.println(id + "\t" + value + "\t" + namespace + "\tHomo sapiens");
+                namespaceToMap.computeIfAbsent(namespace, key -> new HashMap<>()).put(id, value);
+                keyToValues.computeIfAbsent(namespace + ":" + id, key -> new ArrayList<>()).add(value);
+                usedNamespaces.add(namespace);
+            }
+        }
+        File indexFile = File.createTempFile("BIOGRID-IDENTIFIERS", ".idx");
+        indexFile.deleteOnExit();
+        BioGridIdentifierIndex.build(idFile, indexFile);
+        BioGridIdentifierIndex index = BioGridIdentifierIndex.open(indexFile);
+        assertEquals(usedNamespaces, index.getNamespaces());
+        for (String namespace : namespaces)
+            assertEquals(namespaceToMap.get(namespace), index.getIdMap(namespace));
+        assertEquals(0, index.getIdMap("UNKNOWN").size());
+        for (String namespace : namespaces) {
+            for (int id = 0; id <= 1001; id++) {
+                List<String> expected = keyToValues.getOrDefault(namespace + ":" + id, new ArrayList<>());
+                assertEquals(expected, index.getValues(namespace, id));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidIndex() throws IOException {
+        File dir = Files.createTempDirectory("BioGridIdentifierIndex").toFile();
+        File idFile = new File(dir, "BIOGRID-IDENTIFIERS.tab.txt");
+        try (PrintWriter pr = new PrintWriter(idFile, StandardCharsets.UTF_8.name())) {
+            pr.println("BIOGRID_ID\tIDENTIFIER_VALUE\tIDENTIFIER_TYPE\tORGANISM_OFFICIAL_NAME");
+            for (int i = 0; i < 100; i++)
+                pr.println(i + "\tP" + i + "\tSWISS-PROT\tHomo sapiens");
+        }
+        File indexFile = new File(dir, "BIOGRID-IDENTIFIERS.idx");
+        BioGridIdentifierIndex.build(idFile, indexFile);
+        // Only the identifier file and the index are in the directory after the build
+        assertEquals(2, dir.listFiles().length);
+        byte[] content = Files.readAllBytes(indexFile.toPath());
+        // Truncated
+        Files.write(indexFile.toPath(), Arrays.copyOf(content, content.length - 1));
+        assertTrue(isInvalid(indexFile));
+        // A wrong number of namespaces
+        byte[] corrupted = content.clone();
+        corrupted[7] = 2;
+        Files.write(indexFile.toPath(), corrupted);
+        assertTrue(isInvalid(indexFile));
+        Files.write(indexFile.toPath(), content);
+        assertEquals("P10", BioGridIdentifierIndex.open(indexFile).getIdMap("SWISS-PROT").get("10"));
+        indexFile.delete();
+        idFile.delete();
+        dir.delete();
+    }
+
+    private boolean isInvalid(File indexFile) {
+        try {
+            BioGridIdentifierIndex.open(indexFile);
+            return false;
+        }
+        catch(IOException e) {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class EnsemblFamilyIndexTests {
+
+    public EnsemblFamilyIndexTests() {
+    }
+
+    private File generateFamilyFile(long seed) throws IOException {
+        Random random = new Random(seed);
+        String[] taxa = {"9606", "10090", "7227", "6239", "559292"};
+        File file = File.createTempFile("ProteinFamilies", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(file)) {
+            for (int i = 0; i < 8000; i++) {
+                String taxon = taxa[random.nextInt(taxa.length)];
+                pr.println("ENSFM" + random.nextInt(700) + "\t" + taxon + ":" + taxon.charAt(0) + random.nextInt(900));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The original implementation based on family to protein sets.
+     */
+    private Map<String, Set<String>> loadToHumanMap(File file, String taxonId) throws IOException {
+        Map<String, Set<String>> familyToProteins = new HashMap<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] tokens = line.split("\t");
+            familyToProteins.computeIfAbsent(tokens[0], key -> new HashSet<>()).add(tokens[1]);
+        }
+        Map<String, Set<String>> map = new HashMap<>();
+        for (Set<String> proteins : familyToProteins.values()) {
+            Set<String> humanIds = new HashSet<>();
+            Set<String> otherIds = new HashSet<>();
+            for (String protein : proteins) {
+                if (protein.startsWith("9606:"))
+                    humanIds.add(protein.substring(5));
+                else if (protein.startsWith(taxonId + ":"))
+                    otherIds.add(protein.substring(taxonId.length() + 1));
+            }
+            for (String otherId : otherIds)
+                map.computeIfAbsent(otherId, key -> new HashSet<>()).addAll(humanIds);
+        }
+        return map;
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        File file = generateFamilyFile(7);
+        EnsemblFamilyIndex index = EnsemblFamilyIndex.getIndex(file.getAbsolutePath());
+        assertTrue(index == EnsemblFamilyIndex.getIndex(file.getAbsolutePath()));
+        assertEquals(5, index.getTaxonIds().size());
+        for (String taxon : new String[]{"10090", "7227", "6239", "559292"}) {
+            Map<String, Set<String>> expected = loadToHumanMap(file, taxon);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, index.getToHumanMap(taxon));
+        }
+        assertEquals(0, index.getToHumanMap("4932").size());
+    }
+
+}
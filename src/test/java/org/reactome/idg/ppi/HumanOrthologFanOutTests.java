@@ -0,0 +1,90 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.reactome.fi.util.InteractionUtilities;
+
+public class HumanOrthologFanOutTests {
+
+    public HumanOrthologFanOutTests() {
+    }
+
+    /**
+     * The original nested mapping in MappedPPIDataHandler.
+     */
+    private Set<String> mapByLookup(Set<String> modPPIs,
+                                    Map<String, Set<String>> modIdToHumanUniProtMap,
+                                    Map<String, String> uniprotToGene,
+                                    boolean useUniProt) {
+        Set<String> humanPPIs = new HashSet<>();
+        for (String modPPI : modPPIs) {
+            String[] modIds = modPPI.split("\t");
+            Set<String> humanProt1 = modIdToHumanUniProtMap.get(modIds[0]);
+            Set<String> humanProt2 = modIdToHumanUniProtMap.get(modIds[1]);
+            if (humanProt1 == null || humanProt2 == null)
+                continue;
+            for (String hId1 : humanProt1) {
+                for (String hId2 : humanProt2) {
+                    String id1 = useUniProt ? hId1 : uniprotToGene.get(hId1);
+                    String id2 = useUniProt ? hId2 : uniprotToGene.get(hId2);
+                    if (id1 != null && id2 != null && !id1.equals(id2))
+                        humanPPIs.add(InteractionUtilities.generateFIFromGene(id1, id2));
+                }
+            }
+        }
+        return humanPPIs;
+    }
+
+    @Test
+    public void testMap() throws IOException {
+        Random random = new Random(41);
+        Map<String, Set<String>> modIdToHuman = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            Set<String> humanIds = new HashSet<>();
+            int total = random.nextInt(4); // Some MOD ids are mapped to nothing
+            for (int j = 0; j < total; j++)
+                humanIds.add("P" + random.nextInt(2000));
+            modIdToHuman.put("Y" + i, humanIds);
+        }
+        Map<String, String> uniprotToGene = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            if (random.nextInt(10) > 0) // Some UniProt ids don't have genes
+                uniprotToGene.put("P" + i, "GENE" + random.nextInt(1500)); // Some genes have several UniProt ids
+        }
+        Set<String> modPPIs = new HashSet<>();
+        for (int i = 0; i < 50000; i++)
+            modPPIs.add(InteractionUtilities.generateFIFromGene("Y" + random.nextInt(3500), "Y" + random.nextInt(3500)));
+        for (boolean useUniProt : new boolean[]{false, true}) {
+            Set<String> expected = mapByLookup(modPPIs, modIdToHuman, uniprotToGene, useUniProt);
+            HumanOrthologFanOut fanOut = new HumanOrthologFanOut(modIdToHuman, uniprotToGene, useUniProt);
+            fanOut.setThreads(4);
+            assertEquals(expected, fanOut.map(modPPIs));
+            fanOut.setThreads(1);
+            assertEquals(expected, fanOut.map(modPPIs));
+            // A shared executor is used but not shut down
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            fanOut.setExecutor(executor);
+            assertEquals(expected, fanOut.map(modPPIs));
+            assertEquals(expected, fanOut.map(modPPIs));
+            assertFalse(executor.isShutdown());
+            executor.shutdown();
+            fanOut.setExecutor(null);
+            Set<String> single = new HashSet<>();
+            for (String modPPI : modPPIs)
+                single.addAll(fanOut.map(modPPI));
+            assertEquals(expected, single);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntActHandlerTests {
+    private final List<String> TYPES = Arrays.asList("MI:0407", "MI:0915", "MI:0914");
+
+    public IntActHandlerTests() {
+    }
+
+    private Set<String> loadSample(int... taxa) throws IOException {
+        Set<String> ppis = new HashSet<>();
+        new IntActHandler().loadUniProtPPIs(getClass().getClassLoader().getResourceAsStream("intact_sample.txt"),
+                                            TYPES,
+                                            ppis,
+                                            taxa);
+        return ppis;
+    }
+
+    @Test
+    public void testLoadUniProtPPIs() throws IOException {
+        // Colocalization, self interactions, non-protein and cross-species interactions are excluded
+        assertEquals(new HashSet<>(Arrays.asList("P04637\tQ00987", "P00533\tP38398")), loadSample(9606));
+        assertEquals(new HashSet<>(Arrays.asList("P02340\tP23804")), loadSample(10090));
+        assertEquals(new HashSet<>(Arrays.asList("P32485\tQ03063", "P32485\tP38903")), loadSample(559292, 4932));
+        assertEquals(0, loadSample(7227).size());
+    }
+
+}
@@ -0,0 +1,116 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+import org.reactome.fi.util.InteractionUtilities;
+
+public class PairSnapshotTests {
+
+    public PairSnapshotTests() {
+    }
+
+    private Set<String> generatePairs(Random random, int total, int genes) {
+        Set<String> pairs = new HashSet<>();
+        while (pairs.size() < total) {
+            String gene1 = "G" + random.nextInt(genes);
+            String gene2 = "G" + random.nextInt(genes);
+            if (!gene1.equals(gene2))
+                pairs.add(InteractionUtilities.generateFIFromGene(gene1, gene2));
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testDiff() throws IOException {
+        Random random = new Random(29);
+        Set<String> previous = generatePairs(random, 5000, 400);
+        // A new release: some pairs are removed and some added, including pairs of new genes
+        Set<String> current = new HashSet<>();
+        for (String pair : previous) {
+            if (random.nextInt(10) > 0)
+                current.add(pair);
+        }
+        current.addAll(generatePairs(random, 800, 500));
+        File file = File.createTempFile("Previous", ".snapshot");
+        file.deleteOnExit();
+        PairSnapshot.create(previous).save(file);
+        PairSnapshot loaded = PairSnapshot.load(file);
+        assertEquals(previous, loaded.getPairs());
+        assertFalse(loaded.hasCounts());
+        PairSnapshot.Delta delta = PairSnapshot.diff(loaded, PairSnapshot.create(current));
+        Set<String> added = new HashSet<>(current);
+        added.removeAll(previous);
+        Set<String> removed = new HashSet<>(previous);
+        removed.removeAll(current);
+        assertEquals(added, new HashSet<>(delta.getAdded()));
+        assertEquals(added.size(), delta.getAdded().size());
+        assertEquals(removed, new HashSet<>(delta.getRemoved()));
+        assertEquals(removed.size(), delta.getRemoved().size());
+        // Nothing changed
+        delta = PairSnapshot.diff(PairSnapshot.create(current), PairSnapshot.create(current));
+        assertTrue(delta.getAdded().isEmpty() && delta.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        Random random = new Random(31);
+        Map<String, Integer> pairToCount = new HashMap<>();
+        for (String pair : generatePairs(random, 1000, 100))
+            pairToCount.put(pair, random.nextInt(5) + 1);
+        File file = File.createTempFile("Counts", ".snapshot");
+        file.deleteOnExit();
+        PairSnapshot.create(pairToCount, 17).save(file);
+        PairSnapshot loaded = PairSnapshot.load(file);
+        assertTrue(loaded.hasCounts());
+        assertEquals(17, loaded.getSignature());
+        assertEquals(pairToCount, loaded.getPairToCount());
+        assertEquals(pairToCount.size(), loaded.size());
+    }
+
+    @Test
+    public void testSnapshotsInOneFile() throws IOException {
+        Random random = new Random(37);
+        Set<String> source = generatePairs(random, 500, 80);
+        Map<String, Integer> pairToCount = new HashMap<>();
+        for (String pair : generatePairs(random, 300, 60))
+            pairToCount.put(pair, random.nextInt(3) + 1);
+        File dir = Files.createTempDirectory("PairSnapshot").toFile();
+        File file = new File(dir, "FlyPPI.snapshot");
+        PairSnapshot.save(file, Arrays.asList(PairSnapshot.create(source), PairSnapshot.create(pairToCount, 5)));
+        // No temporary file is left
+        assertEquals(1, dir.listFiles().length);
+        List<PairSnapshot> snapshots = PairSnapshot.loadAll(file);
+        assertEquals(2, snapshots.size());
+        assertEquals(source, snapshots.get(0).getPairs());
+        assertEquals(pairToCount, snapshots.get(1).getPairToCount());
+        assertEquals(5, snapshots.get(1).getSignature());
+        // A truncated file is reported
+        byte[] content = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length / 2));
+        boolean failed = false;
+        try {
+            PairSnapshot.loadAll(file);
+        }
+        catch(IOException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+        file.delete();
+        dir.delete();
+    }
+
+}
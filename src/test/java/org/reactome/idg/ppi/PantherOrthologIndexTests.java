@@ -0,0 +1,118 @@
+package org.reactome.idg.ppi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PantherOrthologIndexTests {
+
+    public PantherOrthologIndexTests() {
+    }
+
+    private File generateOrthologFile(long seed) throws IOException {
+        Random random = new Random(seed);
+        String[] species = {"YEAST|SGD=S%06d|UniProtKB=Y%05d",
+                            "DROME|FlyBase=FBgn%07d|UniProtKB=D%05d",
+                            "CAEEL|WormBase=WBGene%08d|UniProtKB=W%05d",
+                            "SCHPO|PomBase=SPAC%04d|UniProtKB=S%05d"};
+        File file = File.createTempFile("HUMAN_RefGenomeOrthologs", "");
+        file.deleteOnExit();
+        try (PrintWriter pr = new PrintWriter(file)) {
+            for (int i = 0; i < 5000; i++) {
+                int human = random.nextInt(800);
+                String humanToken = String.format("HUMAN|HGNC=%d|UniProtKB=P%05d", human, human);
+                int index = random.nextInt(species.length);
+                int mod = random.nextInt(600);
+                String modToken = String.format(species[index], mod, mod);
+                pr.println(humanToken + "\t" + modToken + "\tLDO\tEuarchontoglires\tPTHR" + random.nextInt(100));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The original implementation scanning the file for one species.
+     */
+    private Map<String, Set<String>> loadMODToHumanProtMap(File file, String speciesName) throws IOException {
+        Map<String, Set<String>> modToHuman = new HashMap<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] tokens = line.split("\t");
+            if (!tokens[1].startsWith(speciesName))
+                continue;
+            String humanId = tokens[0].split("\\|")[2].split("=")[1];
+            String modId = tokens[1].split("\\|")[2].split("=")[1];
+            modToHuman.computeIfAbsent(modId, key -> new HashSet<>()).add(humanId);
+        }
+        return modToHuman;
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        File file = generateOrthologFile(13);
+        File indexFile = File.createTempFile("HUMAN_RefGenomeOrthologs", ".idx");
+        indexFile.deleteOnExit();
+        PantherOrthologIndex.build(file, indexFile);
+        PantherOrthologIndex index = PantherOrthologIndex.open(indexFile);
+        assertEquals(4, index.getSpeciesNames().size());
+        for (String species : new String[]{"YEAST", "DROME", "CAEEL", "SCHPO"}) {
+            Map<String, Set<String>> expected = loadMODToHumanProtMap(file, species);
+            assertTrue(expected.size() > 0);
+            assertEquals(expected, index.getModIdToHumanIdMap(species));
+            for (String modId : expected.keySet()) {
+                Set<String> humanIds = new HashSet<>();
+                for (int humanIndex : index.getHumanIndices(species, modId))
+                    humanIds.add(index.getHumanId(humanIndex));
+                assertEquals(expected.get(modId), humanIds);
+            }
+        }
+        assertEquals(0, index.getModIdToHumanIdMap("MOUSE").size());
+        assertArrayEquals(new int[0], index.getHumanIndices("YEAST", "Unknown"));
+    }
+
+    @Test
+    public void testInvalidIndex() throws IOException {
+        File file = generateOrthologFile(17);
+        File dir = Files.createTempDirectory("PantherOrthologIndex").toFile();
+        File indexFile = new File(dir, "HUMAN_RefGenomeOrthologs.idx");
+        PantherOrthologIndex.build(file, indexFile);
+        // Only the index is in the directory after the build
+        assertEquals(1, dir.listFiles().length);
+        byte[] content = Files.readAllBytes(indexFile.toPath());
+        // Truncated
+        Files.write(indexFile.toPath(), Arrays.copyOf(content, content.length - 4));
+        assertTrue(isInvalid(indexFile));
+        // A wrong count in the header
+        byte[] corrupted = content.clone();
+        corrupted[8] = (byte) 0x7F;
+        Files.write(indexFile.toPath(), corrupted);
+        assertTrue(isInvalid(indexFile));
+        Files.write(indexFile.toPath(), content);
+        assertEquals(4, PantherOrthologIndex.open(indexFile).getSpeciesNames().size());
+        indexFile.delete();
+        dir.delete();
+    }
+
+    private boolean isInvalid(File indexFile) {
+        try {
+            PantherOrthologIndex.open(indexFile);
+            return false;
+        }
+        catch(IOException e) {
+            return true;
+        }
+    }
+
+}
@@ -1,12 +1,19 @@
 package org.reactome.idg.ppi;
 
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -21,6 +28,73 @@ public class StringDBHandlerTests extends PPIDataHandlerTests {
     public StringDBHandlerTests() {
     }
     
+    @Test
+    public void testParseChannels() {
+        Map<String, Integer> channelToThreshold = StringDBHandler.parseChannels(" database:0, textmining : 400,neighborhood,");
+        assertEquals(Arrays.asList("database", "textmining", "neighborhood"), new ArrayList<>(channelToThreshold.keySet()));
+        assertEquals(Arrays.asList(0, 400, 0), new ArrayList<>(channelToThreshold.values()));
+        assertEquals(0, StringDBHandler.parseChannels(null).size());
+        assertEquals(0, StringDBHandler.parseChannels("").size());
+    }
+    
+    @Test
+    public void testLoadPPIsBasedOnChannels() throws IOException {
+        File ppiFile = File.createTempFile("protein.links.full", ".txt");
+        File mapFile = File.createTempFile("name_2_string", ".tsv");
+        ppiFile.deleteOnExit();
+        mapFile.deleteOnExit();
+        Random random = new Random(13);
+        String[] header = ("protein1 protein2 neighborhood neighborhood_transferred fusion cooccurence homology " +
+                           "coexpression coexpression_transferred experiments experiments_transferred database " +
+                           "database_transferred textmining textmining_transferred combined_score").split(" ");
+        List<String[]> lines = new ArrayList<>();
+        try (PrintWriter pw = new PrintWriter(ppiFile)) {
+            pw.println(String.join(" ", header));
+            for (int i = 0; i < 5000; i++) {
+                String[] tokens = new String[header.length];
+                tokens[0] = "9606.ENSP" + random.nextInt(300);
+                tokens[1] = "9606.ENSP" + random.nextInt(300);
+                for (int j = 2; j < tokens.length; j++)
+                    tokens[j] = random.nextInt(3) == 0 ? "0" : random.nextInt(1000) + "";
+                lines.add(tokens);
+                pw.println(String.join(" ", tokens));
+            }
+        }
+        Map<String, String> idToGene = new HashMap<>();
+        try (PrintWriter pw = new PrintWriter(mapFile)) {
+            pw.println("# species\tgene\tstring_id");
+            for (int i = 0; i < 300; i++) {
+                if (i % 7 == 0)
+                    continue; // Not mapped
+                // Some genes have several ids
+                String gene = "GENE" + (i % 250);
+                idToGene.put("9606.ENSP" + i, gene);
+                pw.println("9606\t" + gene + "|ALIAS" + i + "\t9606.ENSP" + i);
+            }
+        }
+        List<String> channels = Arrays.asList("experiments", "database", "textmining", "experiments");
+        int[] thresholds = {0, 0, 400, 700};
+        List<Set<String>> channelPPIs = handler.loadPPIsBasedOnChannels(ppiFile.getAbsolutePath(),
+                                                                        mapFile.getAbsolutePath(),
+                                                                        channels,
+                                                                        thresholds);
+        assertEquals(channels.size(), channelPPIs.size());
+        // Compare with the one scan per channel
+        for (int i = 0; i < channels.size(); i++) {
+            int index = Arrays.asList(header).indexOf(channels.get(i));
+            Set<String> expected = new HashSet<>();
+            for (String[] tokens : lines) {
+                if (Integer.parseInt(tokens[index]) <= thresholds[i])
+                    continue;
+                String gene1 = idToGene.get(tokens[0]);
+                String gene2 = idToGene.get(tokens[1]);
+                if (gene1 != null && gene2 != null && !gene1.equals(gene2))
+                    expected.add(getPPI(gene1, gene2));
+            }
+            assertEquals(expected, channelPPIs.get(i));
+        }
+    }
+    
     @Test
     public void testGetMousePPIs() throws IOException {
         Set<String> ppis = handler.loadMousePPIs();
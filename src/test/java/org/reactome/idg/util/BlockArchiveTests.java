@@ -0,0 +1,160 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockArchiveTests {
+
+    public BlockArchiveTests() {
+    }
+
+    private File createFile(List<String> lines, boolean lastLineEnd) throws IOException {
+        File file = File.createTempFile("BlockArchive", ".txt");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            for (int i = 0; i < lines.size(); i++) {
+                os.write(lines.get(i).getBytes());
+                if (i < lines.size() - 1 || lastLineEnd)
+                    os.write('\n');
+            }
+        }
+        return file;
+    }
+
+    private List<String> generateLines(Random random, int total) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            StringBuilder builder = new StringBuilder("G" + i);
+            int size = random.nextInt(100);
+            for (int j = 0; j < size; j++)
+                builder.append("\t").append(random.nextDouble());
+            lines.add(builder.toString());
+        }
+        return lines;
+    }
+
+    @Test
+    public void testArchive() throws IOException {
+        Random random = new Random(17);
+        // Spanning many blocks
+        List<String> lines1 = generateLines(random, 20000);
+        // A line longer than a block
+        List<String> lines2 = generateLines(random, 10);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < BlockArchive.BLOCK_SIZE * 2.5)
+            builder.append(random.nextDouble()).append("\t");
+        lines2.set(5, builder.toString());
+        List<String> lines3 = Arrays.asList("single");
+        File file1 = createFile(lines1, true);
+        File file2 = createFile(lines2, false);
+        File file3 = createFile(lines3, true);
+        File empty = createFile(new ArrayList<>(), false);
+        File archiveFile = File.createTempFile("BlockArchive", ".rba");
+        archiveFile.deleteOnExit();
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(archiveFile, 4)) {
+            writer.addEntry("file1", file1);
+            writer.addEntry("file2", file2);
+            writer.addEntry("file3", file3);
+            writer.addEntry("empty", empty);
+        }
+        try (BlockArchive archive = BlockArchive.open(archiveFile)) {
+            assertEquals(Arrays.asList("file1", "file2", "file3", "empty"), archive.getEntryNames());
+            assertEquals(lines1.size(), archive.getNumberOfRows("file1"));
+            assertEquals(lines2.size(), archive.getNumberOfRows("file2"));
+            assertEquals(1, archive.getNumberOfRows("file3"));
+            assertEquals(0, archive.getNumberOfRows("empty"));
+            assertArrayEquals(Files.readAllBytes(file1.toPath()), readAll(archive.openEntry("file1")));
+            assertArrayEquals(Files.readAllBytes(file2.toPath()), readAll(archive.openEntry("file2")));
+            assertArrayEquals(Files.readAllBytes(file3.toPath()), readAll(archive.openEntry("file3")));
+            assertEquals(0, readAll(archive.openEntry("empty")).length);
+            // Slices
+            for (int i = 0; i < 50; i++) {
+                int from = random.nextInt(lines1.size());
+                int to = from + random.nextInt(Math.min(5000, lines1.size() - from + 1));
+                assertEquals(lines1.subList(from, to), archive.readRows("file1", from, to));
+            }
+            assertEquals(lines1.subList(lines1.size() - 3, lines1.size()),
+                         archive.readRows("file1", lines1.size() - 3, lines1.size()));
+            assertEquals(lines2.subList(4, 7), archive.readRows("file2", 4, 7));
+            assertEquals(lines2.subList(6, 10), archive.readRows("file2", 6, 10));
+            assertEquals(lines3, archive.readRows("file3", 0, 1));
+        }
+    }
+
+    @Test
+    public void testCorruptedBlock() throws IOException {
+        List<String> lines = generateLines(new Random(3), 1000);
+        File file = createFile(lines, true);
+        File archiveFile = File.createTempFile("BlockArchive", ".rba");
+        archiveFile.deleteOnExit();
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(archiveFile, 2)) {
+            writer.addEntry("file", file);
+        }
+        byte[] content = Files.readAllBytes(archiveFile.toPath());
+        content[100] ^= 0x5A;
+        Files.write(archiveFile.toPath(), content);
+        boolean failed = false;
+        try (BlockArchive archive = BlockArchive.open(archiveFile)) {
+            readAll(archive.openEntry("file"));
+        }
+        catch(IOException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+    @Test
+    public void testFailedEntry() throws IOException {
+        List<String> lines = generateLines(new Random(5), 1000);
+        File file = createFile(lines, true);
+        File dir = Files.createTempDirectory("BlockArchive").toFile();
+        File archiveFile = new File(dir, "test.rba");
+        InputStream failing = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ > 3 * BlockArchive.BLOCK_SIZE / 2)
+                    throw new IOException("Failed reading");
+                return 'a';
+            }
+        };
+        boolean failed = false;
+        try (BlockArchive.Writer writer = new BlockArchive.Writer(archiveFile, 2)) {
+            writer.addEntry("file", file);
+            writer.addEntry("failing", failing);
+        }
+        catch(IOException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+        // Neither a truncated archive nor its temporary file is left
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    private byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read = 0;
+        while ((read = is.read(buffer)) > 0)
+            bos.write(buffer, 0, read);
+        is.close();
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class BlockGzipTests {
+
+    public BlockGzipTests() {
+    }
+
+    @Test
+    public void testRecompress() throws IOException {
+        // Text-like content spanning many blocks
+        Random random = new Random(9);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < 3 * 1024 * 1024)
+            builder.append("G").append(random.nextInt(20000)).append("\t").append(random.nextDouble()).append("\n");
+        byte[] content = builder.toString().getBytes();
+        File gzip = File.createTempFile("BlockGzip", ".txt.gz");
+        gzip.deleteOnExit();
+        try (GZIPOutputStream os = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            os.write(content);
+        }
+        assertTrue(BlockGzip.isGzip(gzip));
+        assertFalse(BlockGzip.isBlockGzip(gzip));
+        File bgzf = File.createTempFile("BlockGzip", ".txt.bgz");
+        bgzf.deleteOnExit();
+        BlockGzip.compress(gzip, bgzf, 4);
+        assertTrue(BlockGzip.isBlockGzip(bgzf));
+        // Readable by a standard gzip reader
+        try (InputStream is = new GZIPInputStream(Files.newInputStream(bgzf.toPath()))) {
+            assertArrayEquals(content, readAll(is));
+        }
+        // Parallel decompression
+        File out = File.createTempFile("BlockGzip", ".txt");
+        out.deleteOnExit();
+        BlockGzip.decompress(bgzf, out, 4);
+        assertArrayEquals(content, Files.readAllBytes(out.toPath()));
+        try (InputStream is = DecompressingInputStream.openGzip(bgzf)) {
+            assertArrayEquals(content, readAll(is));
+        }
+    }
+
+    private byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read = 0;
+        while ((read = is.read(buffer)) > 0)
+            bos.write(buffer, 0, read);
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.junit.Test;
+
+public class ConcurrentLongSetTests {
+
+    public ConcurrentLongSetTests() {
+    }
+
+    @Test
+    public void testAdd() {
+        ConcurrentLongSet set = new ConcurrentLongSet(4);
+        Set<Long> expected = new TreeSet<>();
+        Random random = new Random(37);
+        for (int i = 0; i < 50000; i++) {
+            long value = random.nextInt(3) == 0 ? random.nextLong() : random.nextInt(20000) - 100;
+            assertEquals(expected.add(value), set.add(value));
+        }
+        assertEquals(expected.size(), set.size());
+        assertTrue(set.contains(0) == expected.contains(0L));
+        assertFalse(set.contains(Long.MIN_VALUE + 7));
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), set.toSortedArray());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws InterruptedException {
+        ConcurrentLongSet set = new ConcurrentLongSet();
+        Set<Long> expected = new ConcurrentSkipListSet<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 100000; i++) {
+                    // Values overlap between threads
+                    long value = ((long) random.nextInt(1000) << 32) | random.nextInt(1000);
+                    set.add(value);
+                    expected.add(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(expected.size(), set.size());
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).toArray(), set.toSortedArray());
+    }
+
+}
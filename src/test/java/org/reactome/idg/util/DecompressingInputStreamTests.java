@@ -0,0 +1,60 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class DecompressingInputStreamTests {
+
+    public DecompressingInputStreamTests() {
+    }
+
+    @Test
+    public void testGzipReader() throws IOException {
+        File plain = File.createTempFile("Decompressing", "_Spearman_Adj.csv");
+        plain.deleteOnExit();
+        File gzip = new File(plain.getAbsolutePath() + ".gz");
+        gzip.deleteOnExit();
+        Random random = new Random(6);
+        // Make sure more than one ring of chunks is used
+        int lines = 200000;
+        try (PrintWriter pr1 = new PrintWriter(plain);
+             PrintWriter pr2 = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(gzip)),
+                                                                      StandardCharsets.UTF_8))) {
+            for (int i = 0; i < lines; i++) {
+                String line = "G" + i + "," + random.nextDouble() + "," + random.nextDouble();
+                pr1.println(line);
+                pr2.println(line);
+            }
+        }
+        assertTrue(DecompressingInputStream.isCompressed(gzip.getName()));
+        assertEquals(plain.getName(), DecompressingInputStream.getUncompressedName(gzip.getName()));
+        try (BufferedReader reader1 = DecompressingInputStream.openReader(plain);
+             BufferedReader reader2 = DecompressingInputStream.openReader(gzip)) {
+            String line = null;
+            int c = 0;
+            while ((line = reader1.readLine()) != null) {
+                assertEquals(line, reader2.readLine());
+                c ++;
+            }
+            assertEquals(null, reader2.readLine());
+            assertEquals(lines, c);
+        }
+        // Close before reaching the end should not block
+        try (BufferedReader reader = DecompressingInputStream.openReader(gzip)) {
+            assertEquals("G0", reader.readLine().split(",")[0]);
+        }
+    }
+
+}
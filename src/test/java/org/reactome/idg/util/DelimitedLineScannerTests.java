@@ -0,0 +1,119 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DelimitedLineScannerTests {
+
+    public DelimitedLineScannerTests() {
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        Random random = new Random(8);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble() * 2.0d - 1.0d;
+            switch (i % 5) {
+                case 0 : values.add(value + ""); break;
+                case 1 : values.add(String.format("%.3f", value)); break;
+                case 2 : values.add(String.format("%.6e", value)); break;
+                case 3 : values.add(String.format("%.12f", value * 100)); break;
+                default : values.add((float) value + "");
+            }
+        }
+        values.add("-0.0");
+        values.add("1");
+        values.add("0.000000000000000000001234");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            builder.append("G").append(i).append("\t\t").append(values.get(i));
+            builder.append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        DelimitedLineScanner scanner = new DelimitedLineScanner(new ByteArrayInputStream(builder.toString().getBytes(StandardCharsets.UTF_8)),
+                                                                '\t');
+        for (int i = 0; i < values.size(); i++) {
+            assertTrue(scanner.nextLine());
+            assertTrue(scanner.nextField());
+            assertEquals("G" + i, scanner.getField());
+            assertTrue(scanner.nextField());
+            assertTrue(scanner.isFieldEmpty());
+            assertTrue(scanner.nextField());
+            String value = values.get(i);
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                         Double.doubleToLongBits(scanner.getFieldAsDouble()));
+            assertFalse(scanner.nextField());
+        }
+        assertFalse(scanner.nextLine());
+        scanner.close();
+    }
+
+    @Test
+    public void testAbsoluteValueThreshold() throws IOException {
+        Random random = new Random(9);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble() * 2.0d - 1.0d;
+            switch (i % 4) {
+                case 0 : values.add(value + ""); break;
+                case 1 : values.add(String.format("%.3f", value)); break;
+                case 2 : values.add(String.format("%.6e", value)); break;
+                default : values.add(String.format("%.25f", value));
+            }
+        }
+        values.add("0.49999999999999999999");
+        values.add("-0.50000000000000000001");
+        values.add("0.4999999999999999");
+        values.add("0.5");
+        values.add("-0.0");
+        values.add("12345678901234567890.5");
+        values.add("NaN");
+        values.add("4.9999999999999999999e-1");
+        values.add("5e-1");
+        values.add("5.0E-1");
+        values.add("1.234E-5");
+        values.add("-3.0e-30");
+        values.add("3.0e+30");
+        values.add("0.00000000000000000000000000000000001");
+        values.add("1e");
+        StringBuilder builder = new StringBuilder();
+        for (String value : values)
+            builder.append(value).append("\n");
+        double[] thresholds = {0.5d, 0.3d, 1.0E-5d, 1.0E-9d, 0.0d};
+        for (double threshold : thresholds) {
+            DelimitedLineScanner scanner = new DelimitedLineScanner(new ByteArrayInputStream(builder.toString().getBytes(StandardCharsets.UTF_8)),
+                                                                    '\t');
+            for (String value : values) {
+                assertTrue(scanner.nextLine());
+                assertTrue(scanner.nextField());
+                if (value.equals("1e")) {
+                    try {
+                        scanner.isFieldAbsoluteValueAtLeast(threshold);
+                        fail("1e is not a number");
+                    }
+                    catch(NumberFormatException e) {
+                        // Expected
+                    }
+                    continue;
+                }
+                assertEquals(value + " " + threshold,
+                             Math.abs(Double.parseDouble(value)) >= threshold,
+                             scanner.isFieldAbsoluteValueAtLeast(threshold));
+                assertEquals(value.startsWith("-"), scanner.isFieldNegative());
+            }
+            scanner.close();
+        }
+    }
+
+}
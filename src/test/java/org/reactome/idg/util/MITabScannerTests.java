@@ -0,0 +1,55 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MITabScannerTests {
+
+    public MITabScannerTests() {
+    }
+
+    @Test
+    public void testExtract() {
+        assertEquals("P04637", MITabScanner.extractUniProt("uniprotkb:P04637"));
+        assertEquals("Q00987", MITabScanner.extractUniProt("uniprotkb:Q00987-2"));
+        assertEquals("P38398", MITabScanner.extractUniProt("intact:EBI-1234|uniprotkb:P38398"));
+        assertNull(MITabScanner.extractUniProt("chebi:\"CHEBI:15422\""));
+        assertNull(MITabScanner.extractUniProt("-"));
+        assertEquals(9606, MITabScanner.extractTaxon("taxid:9606(human)|taxid:9606(Homo sapiens)"));
+        assertEquals(-1, MITabScanner.extractTaxon("taxid:-1(in vitro)"));
+        assertEquals(-1, MITabScanner.extractTaxon("-"));
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        InputStream is = getClass().getClassLoader().getResourceAsStream("intact_sample.txt");
+        try (MITabScanner scanner = new MITabScanner(is)) {
+            assertTrue(scanner.nextLine());
+            assertEquals("P04637", scanner.getUniProtA());
+            assertEquals("Q00987", scanner.getUniProtB());
+            assertEquals(9606, scanner.getTaxonA());
+            assertEquals(9606, scanner.getTaxonB());
+            assertEquals(Arrays.asList("MI:0915"), scanner.getInteractionTypes());
+            assertTrue(scanner.hasInteractionType(Arrays.asList("MI:0407", "MI:0915")));
+            assertFalse(scanner.hasInteractionType(Arrays.asList("MI:0407")));
+            int lines = 1;
+            while (scanner.nextLine()) {
+                lines ++;
+                if (lines == 8)
+                    assertEquals(Arrays.asList("MI:0403", "MI:0914"), scanner.getInteractionTypes());
+                if (lines == 12)
+                    assertFalse(scanner.hasInteractionType(Arrays.asList("MI:0407")));
+            }
+            assertEquals(12, lines);
+        }
+    }
+
+}
@@ -0,0 +1,142 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class QuantizedPairMatrixTests {
+
+    public QuantizedPairMatrixTests() {
+    }
+
+    @Test
+    public void testCodecError() {
+        for (int bits : new int[] {8, 16}) {
+            FixedPointCodec codec = FixedPointCodec.forCorrelation(bits);
+            Random random = new Random(1);
+            double maxError = 0.0d;
+            for (int i = 0; i < 100000; i++) {
+                double value = random.nextDouble() * 2.0d - 1.0d;
+                double decoded = codec.decode(codec.encode(value));
+                maxError = Math.max(maxError, Math.abs(decoded - value));
+            }
+            System.out.println(bits + " bits: max error " + maxError + " (documented: " + codec.getMaximumError() + ")");
+            assertTrue(maxError <= codec.getMaximumError() + 1.0e-12);
+            assertTrue(codec.isMissing(codec.encode(Double.NaN)));
+            assertEquals(1.0d, codec.decode(codec.encode(2.0d)), 1.0e-7);
+        }
+    }
+
+    @Test
+    public void testMatrixCache() throws IOException {
+        List<String> genes = Arrays.asList("A", "B", "C", "D", "E");
+        double[][] values = new double[genes.size()][genes.size()];
+        Random random = new Random(2);
+        List<Double> all = new ArrayList<>();
+        File file = File.createTempFile("QuantizedPairMatrix", ".q16");
+        file.deleteOnExit();
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(16);
+        try (QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(file, genes, codec, QuantizedPairMatrix.hashGenes(genes))) {
+            for (int i = 0; i < genes.size(); i++) {
+                for (int j = i + 1; j < genes.size(); j++) {
+                    if (i == 1 && j == 3)
+                        continue; // Missing
+                    values[i][j] = random.nextDouble() * 2.0d - 1.0d;
+                    writer.set(i, j, values[i][j]);
+                    all.add(Math.abs(codec.decode(codec.encode(values[i][j]))));
+                }
+            }
+            writer.finish();
+        }
+        QuantizedPairMatrix matrix = QuantizedPairMatrix.open(file);
+        assertEquals(genes, matrix.getGenes());
+        assertEquals(all.size(), matrix.getHistogram().getTotal());
+        int[] count = {0};
+        matrix.scan((row, col, code) -> {
+            assertEquals(values[row][col], codec.decode(code), codec.getMaximumError() + 1.0e-12);
+            count[0] ++;
+        });
+        assertEquals(all.size(), count[0]);
+        // Check the percentile cutoff against sorting
+        Collections.sort(all, Collections.reverseOrder());
+        double percentile = 0.3d;
+        double cutoff = matrix.getHistogram().getTopPercentileCutoff(percentile);
+        assertEquals(all.get((int) (all.size() * percentile)), cutoff, 1.0e-7);
+        Set<String> pairs = matrix.loadPairs(cutoff, false);
+        assertEquals((int) (all.size() * percentile), pairs.size());
+    }
+
+    @Test
+    public void testCacheValidation() throws IOException {
+        List<String> genes = Arrays.asList("A", "B", "C", "D");
+        long universe = QuantizedPairMatrix.hashGenes(genes);
+        assertEquals(universe, QuantizedPairMatrix.hashGenes(Arrays.asList("A", "B", "C", "D")));
+        // Sets are sorted first
+        assertEquals(universe, QuantizedPairMatrix.hashGenes(new HashSet<>(Arrays.asList("D", "C", "B", "A"))));
+        assertFalse(universe == QuantizedPairMatrix.hashGenes(Arrays.asList("A", "B", "C", "E")));
+        File dir = File.createTempFile("QuantizedPairMatrix", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        File file = new File(dir, "cache.q8");
+        file.deleteOnExit();
+        FixedPointCodec codec = FixedPointCodec.forCorrelation(8);
+        // Nothing is saved without finish()
+        try (QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(file, genes, codec, universe)) {
+            writer.set(0, 1, 0.5d);
+        }
+        assertFalse(file.exists());
+        assertEquals(0, dir.listFiles().length);
+        try (QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(file, genes, codec, universe)) {
+            writer.set(0, 1, 0.5d);
+            writer.finish();
+        }
+        assertNotNull(QuantizedPairMatrix.openCache(file, universe));
+        assertNull(QuantizedPairMatrix.openCache(file, universe + 1));
+        assertNull(QuantizedPairMatrix.openCache(new File(dir, "missing.q8"), universe));
+        // A truncated file should not be used
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        assertNull(QuantizedPairMatrix.openCache(file, universe));
+        file.delete();
+    }
+
+    @Test
+    public void testSameGenes() throws IOException {
+        List<String> genes = Arrays.asList("A", "B", "A");
+        File file = File.createTempFile("QuantizedPairMatrix", ".q16");
+        file.deleteOnExit();
+        try (QuantizedPairMatrix.Writer writer = new QuantizedPairMatrix.Writer(file,
+                                                                                genes,
+                                                                                FixedPointCodec.forCorrelation(16),
+                                                                                QuantizedPairMatrix.hashGenes(genes))) {
+            writer.set(0, 2, 0.9d);
+            writer.finish();
+        }
+        boolean failed = false;
+        try {
+            QuantizedPairMatrix.open(file).loadPairs(0.5d, false);
+        }
+        catch(IllegalStateException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+}
@@ -0,0 +1,66 @@
+package org.reactome.idg.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StringDBLinksScannerTests {
+    private final String HEADER = "protein1 protein2 neighborhood neighborhood_transferred fusion cooccurence homology " +
+                                  "coexpression coexpression_transferred experiments experiments_transferred database " +
+                                  "database_transferred textmining textmining_transferred combined_score";
+
+    public StringDBLinksScannerTests() {
+    }
+
+    @Test
+    public void testScan() throws IOException {
+        Random random = new Random(5);
+        StringBuilder builder = new StringBuilder(HEADER).append("\n");
+        int lines = 1000;
+        for (int i = 0; i < lines; i++) {
+            builder.append("9606.ENSP").append(random.nextInt(50)).append(" ");
+            builder.append("9606.ENSP").append(random.nextInt(50));
+            for (int j = 2; j < 16; j++)
+                builder.append(" ").append(random.nextInt(3) == 0 ? 0 : random.nextInt(1000));
+            builder.append(i % 10 == 0 ? "\r\n" : "\n");
+        }
+        builder.append("\n"); // An empty line at the end
+        String text = builder.toString();
+        String[] channels = {"experiments", "combined_score", "database", "experiments"};
+        int[] indices = {9, 15, 11, 9};
+        String[] textLines = text.split("\r?\n");
+        try (StringDBLinksScanner scanner = new StringDBLinksScanner(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)),
+                                                                     channels)) {
+            for (int i = 1; i <= lines; i++) {
+                assertTrue(scanner.nextLine());
+                String[] tokens = textLines[i].split(" ");
+                assertEquals(tokens[0], scanner.getProtein1());
+                assertEquals(tokens[1], scanner.getProtein2());
+                assertEquals(tokens[0].equals(tokens[1]), scanner.isSelfInteraction());
+                for (int j = 0; j < channels.length; j++)
+                    assertEquals(Integer.parseInt(tokens[indices[j]]), scanner.getScore(j));
+            }
+            assertFalse(scanner.nextLine());
+        }
+    }
+
+    @Test
+    public void testUnknownChannel() throws IOException {
+        boolean failed = false;
+        try {
+            new StringDBLinksScanner(new ByteArrayInputStream((HEADER + "\n").getBytes(StandardCharsets.UTF_8)), "unknown");
+        }
+        catch(IllegalArgumentException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+
+}